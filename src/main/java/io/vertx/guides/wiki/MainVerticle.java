@@ -1,23 +1,47 @@
 package io.vertx.guides.wiki;
 
+import io.reactivex.Single;
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Promise;
+import io.vertx.core.json.JsonArray;
 import io.vertx.guides.wiki.database.WikiDatabaseVerticle;
 import io.vertx.guides.wiki.http.AuthInitializerVerticle;
 import io.vertx.reactivex.core.AbstractVerticle;
 
 public class MainVerticle extends AbstractVerticle {
+
+	public static final String CONFIG_HTTP_SERVER_INSTANCES = "http.server.instances";
+	// subset of "database" and "http"; in clustered mode (-cluster) HTTP-only nodes reach the database
+	// service of another node over the clustered event bus
+	public static final String CONFIG_NODE_ROLES = "node.roles";
+
+	private static final String ROLE_DATABASE = "database";
+	private static final String ROLE_HTTP = "http";
+
 	@Override
 	public void start(Promise<Void> promise) throws Exception {
+		JsonArray roles = config().getJsonArray(CONFIG_NODE_ROLES, new JsonArray().add(ROLE_DATABASE).add(ROLE_HTTP));
 		
-		vertx.rxDeployVerticle(new WikiDatabaseVerticle())
-		.flatMap(id -> {
-			return vertx.rxDeployVerticle(new AuthInitializerVerticle());
-		}).flatMap(httpFuture -> {
+		Single<String> database = Single.just("");
+		if (roles.contains(ROLE_DATABASE)) {
+			database = vertx.rxDeployVerticle(new WikiDatabaseVerticle(), WikiDatabaseVerticle.deploymentOptions(config()))
+			.flatMap(id -> {
+				return vertx.rxDeployVerticle(new AuthInitializerVerticle(), WikiDatabaseVerticle.deploymentOptions(config()));
+			});
+		}
+		database.flatMap(httpFuture -> {
+			if (!roles.contains(ROLE_HTTP)) {
+				return Single.just(httpFuture);
+			}
 			return vertx.rxDeployVerticle("io.vertx.guides.wiki.http.HttpServerVerticle",
-									new DeploymentOptions().setInstances(2));
+									new DeploymentOptions().setConfig(config()).setInstances(httpServerInstances()));
 			
 		}).subscribe(id -> promise.complete(), promise::fail);
 		
 	}
+
+	// one instance per core: each instance is bound to an event loop, of which Vert.x starts two per core
+	private int httpServerInstances() {
+		return config().getInteger(CONFIG_HTTP_SERVER_INSTANCES, Runtime.getRuntime().availableProcessors());
+	}
 }
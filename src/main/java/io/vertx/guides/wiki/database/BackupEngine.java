@@ -0,0 +1,465 @@
+package io.vertx.guides.wiki.database;
+
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_BACKUP_DIRECTORY;
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_BACKUP_HTTP_HOST;
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_BACKUP_HTTP_PATH;
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_BACKUP_HTTP_PORT;
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_BACKUP_HTTP_SSL;
+import static io.vertx.guides.wiki.database.DatabaseConstants.DEFAULT_WIKIDB_BACKUP_DIRECTORY;
+import static io.vertx.guides.wiki.database.DatabaseConstants.DEFAULT_WIKIDB_BACKUP_HTTP_PATH;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.WriteStream;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.sql.SQLConnection;
+import io.vertx.ext.sql.SQLRowStream;
+
+/**
+ * Streams pages from a database cursor into gzip-compressed NDJSON, either in a local file or
+ * in a chunked HTTP POST. Only one job runs at a time, as a {@link Workload#BULK} operation of the
+ * scheduler. Rows are taken a hundred at a time: the stream pauses while a worker thread decodes,
+ * encodes and compresses them, then for as long as the target cannot keep up or the scheduler asks
+ * bulk work to give way to interactive operations, so memory use does not depend on the size of
+ * the wiki.
+ */
+class BackupEngine {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(BackupEngine.class);
+
+	private static final String STATE_FILE = "backup-state.json";
+	private static final int MAX_RETAINED_JOBS = 20;
+	private static final int PACING_INTERVAL = 100;
+	private static final DateTimeFormatter FILE_NAME_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS")
+			.withZone(ZoneOffset.UTC);
+
+	private final Vertx vertx;
+	private final JDBCClient dbClient;
+	private final Map<SqlQuery, String> sqlQueries;
+	private final JsonObject config;
+	private final WorkloadScheduler scheduler;
+	private final String directory;
+
+	private final Map<String, JsonObject> jobs = new LinkedHashMap<String, JsonObject>() {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, JsonObject> eldest) {
+			return size() > MAX_RETAINED_JOBS;
+		}
+	};
+	private JsonObject runningJob;
+	private HttpClient httpClient;
+
+	BackupEngine(Vertx vertx, JDBCClient dbClient, Map<SqlQuery, String> sqlQueries, JsonObject config,
+			WorkloadScheduler scheduler) {
+		this.vertx = vertx;
+		this.dbClient = dbClient;
+		this.sqlQueries = sqlQueries;
+		this.config = config;
+		this.scheduler = scheduler;
+		this.directory = config.getString(CONFIG_WIKIDB_BACKUP_DIRECTORY, DEFAULT_WIKIDB_BACKUP_DIRECTORY);
+	}
+
+	void start(JsonObject options, Handler<AsyncResult<JsonObject>> resultHandler) {
+		if (runningJob != null) {
+			resultHandler.handle(Future.failedFuture("backup " + runningJob.getString("id") + " is already running"));
+			return;
+		}
+		final boolean incremental = options.getBoolean("incremental", false);
+		final String target = options.getString("target", "file");
+		if (!"file".equals(target) && !"http".equals(target)) {
+			resultHandler.handle(Future.failedFuture("unknown backup target: " + target));
+			return;
+		}
+		if ("http".equals(target) && !config.containsKey(CONFIG_WIKIDB_BACKUP_HTTP_HOST)) {
+			resultHandler.handle(Future.failedFuture("no HTTP backup target configured"));
+			return;
+		}
+
+		final JsonObject job = new JsonObject().put("id", UUID.randomUUID().toString()).put("status", "running")
+				.put("incremental", incremental).put("target", target).put("pages", 0L).put("bytes", 0L)
+				.put("startedAt", System.currentTimeMillis());
+		jobs.put(job.getString("id"), job);
+		runningJob = job;
+		resultHandler.handle(Future.succeededFuture(job.copy()));
+
+		readSince(incremental).compose(since -> {
+			job.put("since", since);
+			return openSink(job);
+		}).compose(sink -> {
+			final Promise<Void> streamed = Promise.promise();
+			final boolean[] admitted = { false };
+			scheduler.<Void>execute(Workload.BULK, done -> {
+				admitted[0] = true;
+				streamPages(job, sink).setHandler(done);
+			}, ar -> {
+				if (ar.failed() && !admitted[0]) {
+					sink.abort();
+				}
+				streamed.handle(ar);
+			});
+			return streamed.future();
+		}).compose(v -> saveState(job)).setHandler(ar -> {
+			runningJob = null;
+			job.put("finishedAt", System.currentTimeMillis());
+			if (ar.succeeded()) {
+				job.put("status", "succeeded");
+				LOGGER.info("backup " + job.getString("id") + " wrote " + job.getLong("pages") + " pages to "
+						+ job.getString("location"));
+			} else {
+				job.put("status", "failed").put("error", String.valueOf(ar.cause().getMessage()));
+				LOGGER.error("backup " + job.getString("id") + " failed", ar.cause());
+			}
+		});
+	}
+
+	JsonObject status(String jobId) {
+		final JsonObject job = jobs.get(jobId);
+		if (job == null) {
+			return new JsonObject().put("found", false).put("id", jobId);
+		}
+		return job.copy().put("found", true);
+	}
+
+	private Future<Long> readSince(boolean incremental) {
+		if (!incremental) {
+			return Future.succeededFuture(0L);
+		}
+		final Promise<Long> promise = Promise.promise();
+		final String stateFile = Paths.get(directory, STATE_FILE).toString();
+		vertx.fileSystem().exists(stateFile, exists -> {
+			if (exists.failed()) {
+				promise.fail(exists.cause());
+			} else if (!exists.result()) {
+				LOGGER.info("no previous backup found, running a full backup");
+				promise.complete(0L);
+			} else {
+				vertx.fileSystem().readFile(stateFile, read -> {
+					if (read.succeeded()) {
+						promise.complete(read.result().toJsonObject().getLong("lastBackupStartedAt", 0L));
+					} else {
+						promise.fail(read.cause());
+					}
+				});
+			}
+		});
+		return promise.future();
+	}
+
+	private Future<BackupSink> openSink(JsonObject job) {
+		final String fileName = String.format("wiki-backup-%s-%s.ndjson.gz",
+				FILE_NAME_TIMESTAMP.format(Instant.ofEpochMilli(job.getLong("startedAt"))),
+				job.getBoolean("incremental") ? "incremental" : "full");
+
+		if ("http".equals(job.getString("target"))) {
+			final HttpSink sink = new HttpSink(httpClient(), config, fileName);
+			job.put("location", sink.location());
+			return Future.succeededFuture(sink);
+		}
+
+		final Promise<BackupSink> promise = Promise.promise();
+		final String path = Paths.get(directory, fileName).toString();
+		vertx.fileSystem().mkdirs(directory, mkdirs -> {
+			if (mkdirs.failed()) {
+				promise.fail(mkdirs.cause());
+				return;
+			}
+			vertx.fileSystem().open(path, new OpenOptions().setWrite(true).setCreateNew(true), open -> {
+				if (open.succeeded()) {
+					job.put("location", path);
+					promise.complete(new FileSink(vertx, open.result(), path));
+				} else {
+					promise.fail(open.cause());
+				}
+			});
+		});
+		return promise.future();
+	}
+
+	private Future<Void> streamPages(JsonObject job, BackupSink sink) {
+		final Promise<Void> promise = Promise.promise();
+		dbClient.getConnection(connectionResult -> {
+			if (connectionResult.failed()) {
+				sink.abort();
+				promise.fail(connectionResult.cause());
+				return;
+			}
+			final SQLConnection connection = connectionResult.result();
+			final JsonArray params = new JsonArray().add(job.getLong("since"));
+			connection.queryStreamWithParams(sqlQueries.get(SqlQuery.BACKUP_PAGES_SINCE), params, streamResult -> {
+				if (streamResult.failed()) {
+					connection.close();
+					sink.abort();
+					promise.fail(streamResult.cause());
+					return;
+				}
+				final SQLRowStream rows = streamResult.result();
+				final WriteStream<Buffer> out = sink.stream();
+				final GzipLineEncoder encoder = new GzipLineEncoder();
+				final List<JsonArray> batch = new ArrayList<>(PACING_INTERVAL);
+				// batches are encoded one after the other, rows delivered meanwhile going to the next
+				final Future<?>[] written = { Future.succeededFuture() };
+
+				final Handler<Throwable> failure = t -> {
+					if (promise.tryFail(t)) {
+						rows.close();
+						connection.close();
+						sink.abort();
+					}
+				};
+				out.exceptionHandler(failure);
+				rows.exceptionHandler(failure);
+
+				rows.handler(row -> {
+					batch.add(row);
+					if (batch.size() < PACING_INTERVAL) {
+						return;
+					}
+					rows.pause();
+					written[0] = writeBatch(job, out, encoder, takeAll(batch), false).setHandler(ar -> {
+						if (ar.failed()) {
+							failure.handle(ar.cause());
+						} else if (out.writeQueueFull()) {
+							out.drainHandler(v -> rows.resume());
+						} else {
+							final long delay = scheduler.pacingDelay(Workload.BULK);
+							if (delay > 0) {
+								job.put("pacedMillis", job.getLong("pacedMillis", 0L) + delay);
+								vertx.setTimer(delay, timer -> rows.resume());
+							} else {
+								rows.resume();
+							}
+						}
+					});
+				});
+
+				rows.endHandler(v -> {
+					connection.close();
+					written[0].compose(previous -> writeBatch(job, out, encoder, takeAll(batch), true))
+							.compose(last -> sink.finish()).setHandler(finished -> {
+								if (finished.succeeded()) {
+									promise.tryComplete();
+								} else {
+									failure.handle(finished.cause());
+								}
+							});
+				});
+			});
+		});
+		return promise.future();
+	}
+
+	private static List<JsonArray> takeAll(List<JsonArray> batch) {
+		final List<JsonArray> rows = new ArrayList<>(batch);
+		batch.clear();
+		return rows;
+	}
+
+	// rows: Id, Name, Content, Updated, ContentEncoding
+	private Future<Void> writeBatch(JsonObject job, WriteStream<Buffer> out, GzipLineEncoder encoder, List<JsonArray> rows,
+			boolean last) {
+		final Promise<Buffer> encoded = Promise.promise();
+		vertx.<Buffer>executeBlocking(promise -> {
+			final Buffer chunk = Buffer.buffer();
+			for (JsonArray row : rows) {
+				chunk.appendBuffer(encoder.encode(new JsonObject().put("id", row.getInteger(0)).put("name", row.getString(1))
+						.put("content", PageContentCodec.decode(row.getString(2), row.getString(4))).put("updated", row.getLong(3))));
+			}
+			if (last) {
+				chunk.appendBuffer(encoder.finish());
+			}
+			promise.complete(chunk);
+		}, false, encoded);
+		return encoded.future().map(chunk -> {
+			write(job, out, chunk);
+			job.put("pages", job.getLong("pages") + rows.size());
+			return null;
+		});
+	}
+
+	private void write(JsonObject job, WriteStream<Buffer> out, Buffer chunk) {
+		if (chunk.length() > 0) {
+			out.write(chunk);
+			job.put("bytes", job.getLong("bytes") + chunk.length());
+		}
+	}
+
+	private Future<Void> saveState(JsonObject job) {
+		final Promise<Void> promise = Promise.promise();
+		final JsonObject state = new JsonObject().put("lastBackupId", job.getString("id"))
+				.put("lastBackupStartedAt", job.getLong("startedAt")).put("lastBackupLocation", job.getString("location"));
+		vertx.fileSystem().mkdirs(directory, mkdirs -> {
+			if (mkdirs.succeeded()) {
+				vertx.fileSystem().writeFile(Paths.get(directory, STATE_FILE).toString(), state.toBuffer(), promise);
+			} else {
+				promise.fail(mkdirs.cause());
+			}
+		});
+		return promise.future();
+	}
+
+	private HttpClient httpClient() {
+		if (httpClient == null) {
+			httpClient = vertx.createHttpClient(
+					new HttpClientOptions().setSsl(config.getBoolean(CONFIG_WIKIDB_BACKUP_HTTP_SSL, false)));
+		}
+		return httpClient;
+	}
+
+	private interface BackupSink {
+		WriteStream<Buffer> stream();
+
+		Future<Void> finish();
+
+		void abort();
+	}
+
+	private static final class FileSink implements BackupSink {
+		private final Vertx vertx;
+		private final AsyncFile file;
+		private final String path;
+
+		FileSink(Vertx vertx, AsyncFile file, String path) {
+			this.vertx = vertx;
+			this.file = file;
+			this.path = path;
+		}
+
+		@Override
+		public WriteStream<Buffer> stream() {
+			return file;
+		}
+
+		@Override
+		public Future<Void> finish() {
+			final Promise<Void> promise = Promise.promise();
+			file.close(promise);
+			return promise.future();
+		}
+
+		@Override
+		public void abort() {
+			file.close(closed -> vertx.fileSystem().delete(path, deleted -> {
+			}));
+		}
+	}
+
+	private static final class HttpSink implements BackupSink {
+		private final HttpClientRequest request;
+		private final String location;
+		private final Promise<Void> response = Promise.promise();
+
+		HttpSink(HttpClient client, JsonObject config, String fileName) {
+			final String host = config.getString(CONFIG_WIKIDB_BACKUP_HTTP_HOST);
+			final boolean ssl = config.getBoolean(CONFIG_WIKIDB_BACKUP_HTTP_SSL, false);
+			final int port = config.getInteger(CONFIG_WIKIDB_BACKUP_HTTP_PORT, ssl ? 443 : 80);
+			final String path = config.getString(CONFIG_WIKIDB_BACKUP_HTTP_PATH, DEFAULT_WIKIDB_BACKUP_HTTP_PATH) + "/"
+					+ fileName;
+			location = (ssl ? "https://" : "http://") + host + ":" + port + path;
+
+			request = client.request(HttpMethod.POST, port, host, path);
+			request.setChunked(true).putHeader("Content-Type", "application/x-ndjson").putHeader("Content-Encoding",
+					"gzip");
+			request.handler(res -> res.bodyHandler(body -> {
+				if (res.statusCode() / 100 == 2) {
+					response.tryComplete();
+				} else {
+					response.tryFail("backup target answered " + res.statusCode() + " " + res.statusMessage());
+				}
+			}));
+			request.exceptionHandler(response::tryFail);
+		}
+
+		String location() {
+			return location;
+		}
+
+		@Override
+		public WriteStream<Buffer> stream() {
+			return request;
+		}
+
+		@Override
+		public Future<Void> finish() {
+			request.end();
+			return response.future();
+		}
+
+		@Override
+		public void abort() {
+			request.reset();
+		}
+	}
+
+	private static final class GzipLineEncoder {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+		private final GZIPOutputStream gzip;
+
+		GzipLineEncoder() {
+			try {
+				gzip = new GZIPOutputStream(bytes, 8192);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		Buffer encode(JsonObject record) {
+			try {
+				gzip.write(record.encode().getBytes(StandardCharsets.UTF_8));
+				gzip.write('\n');
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return drain();
+		}
+
+		Buffer finish() {
+			try {
+				gzip.finish();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return drain();
+		}
+
+		private Buffer drain() {
+			if (bytes.size() == 0) {
+				return Buffer.buffer();
+			}
+			final Buffer chunk = Buffer.buffer(bytes.toByteArray());
+			bytes.reset();
+			return chunk;
+		}
+	}
+}
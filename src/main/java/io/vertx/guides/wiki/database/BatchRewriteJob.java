@@ -0,0 +1,111 @@
+package io.vertx.guides.wiki.database;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.reactivex.Single;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.sql.ResultSet;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.ext.jdbc.JDBCClient;
+
+/**
+ * Rewrites, batch by batch, the Pages rows selected by a query until that query returns no row, or
+ * until none of the rows of a batch could be updated.
+ * Rows are transformed on a worker thread; updates are expected to be guarded by the row's Updated
+ * timestamp so that a page saved meanwhile keeps the values written by its own save. Each batch
+ * is scheduled as {@link Workload#MAINTENANCE} work.
+ */
+abstract class BatchRewriteJob {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(BatchRewriteJob.class);
+
+	private final Vertx vertx;
+	protected final JDBCClient dbClient;
+	protected final Map<SqlQuery, String> sqlQueries;
+	private final WorkloadScheduler scheduler;
+
+	private boolean running;
+	private boolean rerunRequested;
+	private long runs;
+	private long rewrittenRows;
+
+	BatchRewriteJob(Vertx vertx, JDBCClient dbClient, Map<SqlQuery, String> sqlQueries, WorkloadScheduler scheduler) {
+		this.vertx = vertx;
+		this.dbClient = dbClient;
+		this.sqlQueries = sqlQueries;
+		this.scheduler = scheduler;
+	}
+
+	protected abstract String selectQuery();
+
+	protected abstract JsonArray selectParams();
+
+	protected abstract String updateQuery();
+
+	protected abstract JsonArray rewrite(JsonArray row);
+
+	void start() {
+		if (running) {
+			rerunRequested = true;
+			return;
+		}
+		running = true;
+		runs++;
+		nextBatch();
+	}
+
+	private void nextBatch() {
+		scheduler.schedule(Workload.MAINTENANCE, dbClient.rxQueryWithParams(selectQuery(), selectParams())
+				.map(ResultSet::getResults)
+				.flatMap(rows -> rows.isEmpty() ? Single.just(-1) : rewriteAndStore(rows)))
+				.subscribe(count -> {
+					if (count > 0) {
+						rewrittenRows += count;
+						nextBatch();
+					} else {
+						// a batch left untouched by its guarded updates would be selected again and again
+						if (count == 0) {
+							LOGGER.warn("{} stopped: a batch of selected rows could not be updated", getClass().getSimpleName());
+						}
+						finish();
+					}
+				}, t -> {
+					LOGGER.error(getClass().getSimpleName() + " failed", t);
+					finish();
+				});
+	}
+
+	private Single<Integer> rewriteAndStore(List<JsonArray> rows) {
+		return vertx.<List<JsonArray>>rxExecuteBlocking(promise -> promise.complete(rows.stream()
+				.map(this::rewrite)
+				.collect(Collectors.toList())), false)
+				.toSingle()
+				.flatMap(this::store);
+	}
+
+	/** Stores the rewritten rows, returning the number of rows updated. */
+	protected Single<Integer> store(List<JsonArray> updates) {
+		return dbClient.rxGetConnection().flatMap(connection -> connection
+				.rxBatchWithParams(updateQuery(), updates)
+				.doFinally(connection::close))
+				.map(updateCounts -> updateCounts.stream().mapToInt(Integer::intValue).sum());
+	}
+
+	private void finish() {
+		running = false;
+		if (rerunRequested) {
+			rerunRequested = false;
+			start();
+		}
+	}
+
+	JsonObject metrics() {
+		return new JsonObject().put("running", running).put("runs", runs).put("rewrittenRows", rewrittenRows);
+	}
+}
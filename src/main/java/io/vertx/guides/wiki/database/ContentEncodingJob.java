@@ -0,0 +1,49 @@
+package io.vertx.guides.wiki.database;
+
+import java.util.Map;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.ext.jdbc.JDBCClient;
+
+/**
+ * Migrates the stored page bodies to the configured content encoding, compressing plain rows or
+ * decompressing rows when compression has been switched off.
+ */
+class ContentEncodingJob extends BatchRewriteJob {
+
+	private final String encoding;
+
+	ContentEncodingJob(Vertx vertx, JDBCClient dbClient, Map<SqlQuery, String> sqlQueries, WorkloadScheduler scheduler, String encoding) {
+		super(vertx, dbClient, sqlQueries, scheduler);
+		this.encoding = encoding;
+	}
+
+	@Override
+	protected String selectQuery() {
+		return sqlQueries.get(SqlQuery.MISENCODED_PAGES);
+	}
+
+	@Override
+	protected JsonArray selectParams() {
+		return new JsonArray().add(encoding);
+	}
+
+	@Override
+	protected String updateQuery() {
+		return sqlQueries.get(SqlQuery.UPDATE_PAGE_ENCODING);
+	}
+
+	@Override
+	protected JsonArray rewrite(JsonArray row) {
+		final String markdown = PageContentCodec.decode(row.getString(1), row.getString(2));
+		final JsonArray update = new JsonArray().add(PageContentCodec.encode(markdown, encoding));
+		final String storedEncoding = PageContentCodec.storedEncoding(encoding);
+		if (storedEncoding == null) {
+			update.addNull();
+		} else {
+			update.add(storedEncoding);
+		}
+		return update.add(row.getInteger(0)).add(row.getLong(3));
+	}
+}
@@ -3,13 +3,61 @@ package io.vertx.guides.wiki.database;
 public interface DatabaseConstants {
 
 	String CONFIG_WIKIDB_QUEUE = "wikidb.queue";
+	String WIKIDB_PAGE_EVENTS_ADDRESS = "wikidb.page.events";
+	String WIKIDB_PAGE_EVENTS_COUNTER = "wikidb.page.events.seq";
 	String CONFIG_WIKIDB_JDBC_URL = "wikidb.jdbc.url";
 	String CONFIG_WIKIDB_JDBC_DRIVER_CLASS = "wikidb.jdbc.driver_class";
 	String CONFIG_WIKIDB_JDBC_MAX_POOL_SIZE = "wikidb.jdbc.max_pool_size";
+	String CONFIG_WIKIDB_JDBC_EXECUTION = "wikidb.jdbc.execution";
+	String CONFIG_WIKIDB_JDBC_WORKER_POOL_SIZE = "wikidb.jdbc.worker_pool_size";
 	String CONFIG_WIKIDB_SQL_QUERIES_RESOURCE_FILE = "wikidb.sqlqueries.resource.file";
+	String CONFIG_WIKIDB_BACKUP_DIRECTORY = "wikidb.backup.directory";
+	String CONFIG_WIKIDB_BACKUP_HTTP_HOST = "wikidb.backup.http.host";
+	String CONFIG_WIKIDB_BACKUP_HTTP_PORT = "wikidb.backup.http.port";
+	String CONFIG_WIKIDB_BACKUP_HTTP_PATH = "wikidb.backup.http.path";
+	String CONFIG_WIKIDB_BACKUP_HTTP_SSL = "wikidb.backup.http.ssl";
+	String CONFIG_WIKIDB_IMPORT_BATCH_SIZE = "wikidb.import.batch_size";
+	String CONFIG_WIKIDB_IMPORT_PARALLELISM = "wikidb.import.parallelism";
+	String CONFIG_WIKIDB_IMPORT_DIRECTORY = "wikidb.import.directory";
+	String CONFIG_WIKIDB_EXPORT_DIRECTORY = "wikidb.export.directory";
+	String CONFIG_WIKIDB_EXPORT_PARALLELISM = "wikidb.export.parallelism";
+	String CONFIG_WIKIDB_EXPORT_MAX_PENDING = "wikidb.export.max_pending";
+	String CONFIG_WIKIDB_RENDER_ON_WRITE = "wikidb.render_on_write";
+	String CONFIG_WIKIDB_CONTENT_ENCODING = "wikidb.content_encoding";
+	String CONFIG_WIKIDB_REVISIONS_SNAPSHOT_INTERVAL = "wikidb.revisions.snapshot_interval";
+	String CONFIG_WIKIDB_STORAGE_PROFILE = "wikidb.storage.profile";
+	String CONFIG_WIKIDB_STORAGE_CACHE_SIZE = "wikidb.storage.cache_size";
+	String CONFIG_WIKIDB_STORAGE_WRITE_DELAY = "wikidb.storage.write_delay";
+	String CONFIG_WIKIDB_STORAGE_LOG_SIZE = "wikidb.storage.log_size";
+	String CONFIG_WIKIDB_SCHEDULING_INTERACTIVE_CONCURRENCY = "wikidb.scheduling.interactive.concurrency";
+	String CONFIG_WIKIDB_SCHEDULING_BULK_CONCURRENCY = "wikidb.scheduling.bulk.concurrency";
+	String CONFIG_WIKIDB_SCHEDULING_MAINTENANCE_CONCURRENCY = "wikidb.scheduling.maintenance.concurrency";
+	String CONFIG_WIKIDB_SCHEDULING_QUEUE_LIMIT = "wikidb.scheduling.queue_limit";
+	String CONFIG_WIKIDB_SCHEDULING_LATENCY_TARGET = "wikidb.scheduling.latency_target";
+	String CONFIG_WIKIDB_SHARDS = "wikidb.shards";
+	String CONFIG_WIKIDB_SHARD_INDEX = "wikidb.shard.index";
 	
 	String DEFAULT_WIKIDB_JDBC_URL = "jdbc:hsqldb:file:db/wiki";
 	int DEFAULT_JDBC_MAX_POOL_SIZE = 30;
 	String DEFAULT_WIKIDB_JDBC_DRIVER_CLASS = "org.hsqldb.jdbcDriver";
+	String JDBC_EXECUTION_SHARED = "shared";
+	String JDBC_EXECUTION_DEDICATED = "dedicated";
+	String DEFAULT_WIKIDB_JDBC_EXECUTION = JDBC_EXECUTION_SHARED;
+	String WIKIDB_JDBC_WORKER_POOL_NAME = "wikidb-jdbc";
+	String DEFAULT_WIKIDB_BACKUP_DIRECTORY = "backups";
+	String DEFAULT_WIKIDB_BACKUP_HTTP_PATH = "/backups";
+	int DEFAULT_WIKIDB_IMPORT_BATCH_SIZE = 500;
+	int DEFAULT_WIKIDB_IMPORT_PARALLELISM = 4;
+	String DEFAULT_WIKIDB_EXPORT_DIRECTORY = "site";
+	boolean DEFAULT_WIKIDB_RENDER_ON_WRITE = true;
+	String DEFAULT_WIKIDB_CONTENT_ENCODING = "none";
+	int DEFAULT_WIKIDB_REVISIONS_SNAPSHOT_INTERVAL = 16;
+	String DEFAULT_WIKIDB_STORAGE_PROFILE = "memory";
+	int DEFAULT_WIKIDB_STORAGE_CACHE_SIZE = 10_000;
+	int DEFAULT_WIKIDB_STORAGE_WRITE_DELAY = 500;
+	int DEFAULT_WIKIDB_STORAGE_LOG_SIZE = 50;
+	int DEFAULT_WIKIDB_SCHEDULING_QUEUE_LIMIT = 1000;
+	long DEFAULT_WIKIDB_SCHEDULING_LATENCY_TARGET = 50;
+	int DEFAULT_WIKIDB_SHARDS = 1;
 
 }
\ No newline at end of file
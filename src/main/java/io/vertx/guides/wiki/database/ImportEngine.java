@@ -0,0 +1,505 @@
+package io.vertx.guides.wiki.database;
+
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_BACKUP_DIRECTORY;
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_IMPORT_BATCH_SIZE;
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_IMPORT_DIRECTORY;
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_IMPORT_PARALLELISM;
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_SHARD_INDEX;
+import static io.vertx.guides.wiki.database.DatabaseConstants.DEFAULT_WIKIDB_BACKUP_DIRECTORY;
+import static io.vertx.guides.wiki.database.DatabaseConstants.DEFAULT_WIKIDB_IMPORT_BATCH_SIZE;
+import static io.vertx.guides.wiki.database.DatabaseConstants.DEFAULT_WIKIDB_IMPORT_PARALLELISM;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.reactivex.Completable;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.parsetools.RecordParser;
+import io.vertx.reactivex.ext.jdbc.JDBCClient;
+
+/**
+ * Restores gzip-compressed NDJSON dumps, as written by {@link BackupEngine}, into the Pages table.
+ * Records are upserted by page name in batches, with a bounded number of batches in flight; the
+ * dump file is paused whenever that bound is reached. Progress is checkpointed next to the dump so
+ * an interrupted import can resume without rewriting the pages it already committed. The engine of
+ * a shard imports the pages of the shard only, and keeps a checkpoint of its own.
+ */
+class ImportEngine {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ImportEngine.class);
+
+	private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+	private static final long CHECKPOINT_INTERVAL_MS = 1000;
+	private static final int MAX_RETAINED_JOBS = 20;
+
+	private final Vertx vertx;
+	private final JDBCClient dbClient;
+	private final Map<SqlQuery, String> sqlQueries;
+	private final Path directory;
+	private final int defaultBatchSize;
+	private final int defaultParallelism;
+	private final Supplier<Future<Void>> pagesChanged;
+	private final int shard;
+	private final int shards;
+	private final String checkpointSuffix;
+
+	private final Map<String, JsonObject> jobs = new LinkedHashMap<String, JsonObject>() {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, JsonObject> eldest) {
+			return size() > MAX_RETAINED_JOBS;
+		}
+	};
+	private JsonObject runningJob;
+
+	ImportEngine(Vertx vertx, JDBCClient dbClient, Map<SqlQuery, String> sqlQueries, JsonObject config,
+			Supplier<Future<Void>> pagesChanged) {
+		this.vertx = vertx;
+		this.dbClient = dbClient;
+		this.sqlQueries = sqlQueries;
+		this.directory = Paths.get(config.getString(CONFIG_WIKIDB_IMPORT_DIRECTORY,
+				config.getString(CONFIG_WIKIDB_BACKUP_DIRECTORY, DEFAULT_WIKIDB_BACKUP_DIRECTORY))).toAbsolutePath().normalize();
+		this.defaultBatchSize = config.getInteger(CONFIG_WIKIDB_IMPORT_BATCH_SIZE, DEFAULT_WIKIDB_IMPORT_BATCH_SIZE);
+		this.defaultParallelism = config.getInteger(CONFIG_WIKIDB_IMPORT_PARALLELISM, DEFAULT_WIKIDB_IMPORT_PARALLELISM);
+		this.pagesChanged = pagesChanged;
+		this.shard = config.getInteger(CONFIG_WIKIDB_SHARD_INDEX, 0);
+		this.shards = PageSharding.shards(config);
+		this.checkpointSuffix = PageSharding.isShard(config) ? ".shard-" + shard + CHECKPOINT_SUFFIX : CHECKPOINT_SUFFIX;
+	}
+
+	void start(JsonObject options, Handler<AsyncResult<JsonObject>> resultHandler) {
+		if (runningJob != null) {
+			resultHandler.handle(Future.failedFuture("import " + runningJob.getString("id") + " is already running"));
+			return;
+		}
+		final String fileName = options.getString("file");
+		if (fileName == null) {
+			resultHandler.handle(Future.failedFuture("no dump file specified"));
+			return;
+		}
+		final Path dump = directory.resolve(fileName).normalize();
+		if (!dump.startsWith(directory)) {
+			resultHandler.handle(Future.failedFuture("dump files must be located in " + directory));
+			return;
+		}
+		final int batchSize = options.getInteger("batchSize", defaultBatchSize);
+		final int parallelism = options.getInteger("parallelism", defaultParallelism);
+		if (batchSize < 1 || parallelism < 1) {
+			resultHandler.handle(Future.failedFuture("batchSize and parallelism must be positive"));
+			return;
+		}
+
+		final JsonObject job = new JsonObject().put("id", UUID.randomUUID().toString()).put("status", "running")
+				.put("file", dump.toString()).put("batchSize", batchSize).put("parallelism", parallelism)
+				.put("records", 0L).put("batches", 0L).put("skipped", 0L).put("rejected", 0L).put("otherShards", 0L).put("bytesRead", 0L)
+				.put("startedAt", System.currentTimeMillis());
+		jobs.put(job.getString("id"), job);
+		runningJob = job;
+		resultHandler.handle(Future.succeededFuture(job.copy()));
+
+		final String checkpointFile = dump.toString() + checkpointSuffix;
+		readCheckpoint(checkpointFile, options.getBoolean("resume", true)).compose(resumeFrom -> {
+			job.put("resumedFrom", resumeFrom);
+			final Promise<AsyncFile> opened = Promise.promise();
+			vertx.fileSystem().open(dump.toString(), new OpenOptions().setRead(true).setWrite(false), opened);
+			return opened.future().compose(file -> new ImportRun(job, file, checkpointFile, resumeFrom).run());
+		}).setHandler(ar -> pagesChanged.get().setHandler(refreshed -> {
+			runningJob = null;
+			job.put("finishedAt", System.currentTimeMillis());
+			if (ar.succeeded()) {
+				job.put("status", "succeeded");
+				LOGGER.info("import " + job.getString("id") + " finished: " + status(job.getString("id")).encode());
+			} else {
+				job.put("status", "failed").put("error", String.valueOf(ar.cause().getMessage()));
+				LOGGER.error("import " + job.getString("id") + " failed", ar.cause());
+			}
+		}));
+	}
+
+	JsonObject status(String jobId) {
+		final JsonObject job = jobs.get(jobId);
+		if (job == null) {
+			return new JsonObject().put("found", false).put("id", jobId);
+		}
+		final long elapsed = job.getLong("finishedAt", System.currentTimeMillis()) - job.getLong("startedAt");
+		return job.copy().put("found", true).put("elapsedMs", elapsed).put("recordsPerSecond",
+				elapsed == 0 ? 0L : job.getLong("records") * 1000 / elapsed);
+	}
+
+	private Future<Long> readCheckpoint(String checkpointFile, boolean resume) {
+		if (!resume) {
+			return Future.succeededFuture(0L);
+		}
+		final Promise<Long> promise = Promise.promise();
+		vertx.fileSystem().exists(checkpointFile, exists -> {
+			if (exists.failed()) {
+				promise.fail(exists.cause());
+			} else if (!exists.result()) {
+				promise.complete(0L);
+			} else {
+				vertx.fileSystem().readFile(checkpointFile, read -> {
+					if (read.failed()) {
+						promise.fail(read.cause());
+						return;
+					}
+					final JsonObject checkpoint = read.result().toJsonObject();
+					promise.complete(checkpoint.getBoolean("completed", false) ? 0L : checkpoint.getLong("lines", 0L));
+				});
+			}
+		});
+		return promise.future();
+	}
+
+	private static final class Batch {
+		private final long sequence;
+		private final List<JsonArray> rows;
+		private final long lastLine;
+
+		Batch(long sequence, List<JsonArray> rows, long lastLine) {
+			this.sequence = sequence;
+			this.rows = rows;
+			this.lastLine = lastLine;
+		}
+	}
+
+	private final class ImportRun {
+		private final JsonObject job;
+		private final AsyncFile file;
+		private final String checkpointFile;
+		private final long resumeFrom;
+		private final int batchSize;
+		private final int parallelism;
+
+		private final GzipInflater inflater = new GzipInflater();
+		private final RecordParser lines = RecordParser.newDelimited("\n", this::onLine);
+		private final Deque<Batch> queuedBatches = new ArrayDeque<>();
+		private final TreeMap<Long, Long> completedBatches = new TreeMap<>();
+		private final Promise<Void> promise = Promise.promise();
+
+		private List<JsonArray> currentBatch;
+		private long lineNumber;
+		private long nextBatchSequence;
+		private long nextCommittedSequence;
+		private long committedLines;
+		private long savedLines;
+		private int inFlight;
+		private boolean ended;
+		private boolean failed;
+		private long checkpointTimer;
+		private Future<Void> checkpointWrites = Future.succeededFuture();
+
+		ImportRun(JsonObject job, AsyncFile file, String checkpointFile, long resumeFrom) {
+			this.job = job;
+			this.file = file;
+			this.checkpointFile = checkpointFile;
+			this.resumeFrom = resumeFrom;
+			this.batchSize = job.getInteger("batchSize");
+			this.parallelism = job.getInteger("parallelism");
+			this.currentBatch = new ArrayList<>(batchSize);
+			this.committedLines = resumeFrom;
+			this.savedLines = resumeFrom;
+		}
+
+		Future<Void> run() {
+			checkpointTimer = vertx.setPeriodic(CHECKPOINT_INTERVAL_MS, timer -> {
+				if (committedLines != savedLines) {
+					saveCheckpoint(false);
+				}
+			});
+			file.exceptionHandler(this::fail);
+			file.handler(chunk -> {
+				if (failed) {
+					return;
+				}
+				job.put("bytesRead", job.getLong("bytesRead") + chunk.length());
+				try {
+					inflater.inflate(chunk, lines);
+				} catch (DataFormatException e) {
+					fail(e);
+				}
+			});
+			file.endHandler(v -> {
+				if (failed) {
+					return;
+				}
+				try {
+					inflater.finish();
+				} catch (DataFormatException e) {
+					fail(e);
+					return;
+				}
+				// flushes a last record that is not terminated by a newline
+				lines.handle(Buffer.buffer("\n"));
+				ended = true;
+				flushBatch();
+				maybeFinish();
+			});
+			return promise.future();
+		}
+
+		private void onLine(Buffer line) {
+			if (failed) {
+				return;
+			}
+			lineNumber++;
+			if (lineNumber <= resumeFrom) {
+				job.put("skipped", job.getLong("skipped") + 1);
+				return;
+			}
+			if (line.length() == 0) {
+				return;
+			}
+			try {
+				final JsonObject record = line.toJsonObject();
+				final String name = record.getString("name");
+				final String content = record.getString("content");
+				if (name == null || content == null) {
+					throw new DecodeException("missing name or content");
+				}
+				if (PageSharding.shardOf(name, shards) != shard) {
+					job.put("otherShards", job.getLong("otherShards") + 1);
+					return;
+				}
+				// rewrites are guarded by the Updated timestamp, which must never be null
+				final Long updated = record.getLong("updated");
+				currentBatch.add(new JsonArray().add(name).add(content)
+						.add(updated != null ? updated : System.currentTimeMillis()));
+			} catch (DecodeException | ClassCastException e) {
+				job.put("rejected", job.getLong("rejected") + 1);
+				LOGGER.warn("skipping malformed record at line " + lineNumber + ": " + e.getMessage());
+			}
+			if (currentBatch.size() >= batchSize) {
+				flushBatch();
+			}
+		}
+
+		private void flushBatch() {
+			queuedBatches.add(new Batch(nextBatchSequence++, currentBatch, lineNumber));
+			currentBatch = new ArrayList<>(batchSize);
+			drain();
+		}
+
+		private void drain() {
+			while (!failed && inFlight < parallelism && !queuedBatches.isEmpty()) {
+				inFlight++;
+				write(queuedBatches.poll());
+			}
+			if (ended || failed) {
+				return;
+			}
+			if (queuedBatches.isEmpty() && inFlight < parallelism) {
+				file.resume();
+			} else {
+				file.pause();
+			}
+		}
+
+		private void write(Batch batch) {
+			if (batch.rows.isEmpty()) {
+				vertx.runOnContext(v -> completed(batch));
+				return;
+			}
+			dbClient.rxGetConnection().flatMapCompletable(connection -> connection.rxSetAutoCommit(false)
+					.andThen(connection.rxBatchWithParams(sqlQueries.get(SqlQuery.UPSERT_PAGE), batch.rows))
+					.ignoreElement()
+					.andThen(connection.rxCommit())
+					.onErrorResumeNext(t -> connection.rxRollback().onErrorComplete().andThen(Completable.error(t)))
+					.doFinally(connection::close))
+					.subscribe(() -> completed(batch), this::fail);
+		}
+
+		private void completed(Batch batch) {
+			inFlight--;
+			if (!batch.rows.isEmpty()) {
+				job.put("records", job.getLong("records") + batch.rows.size());
+				job.put("batches", job.getLong("batches") + 1);
+			}
+			completedBatches.put(batch.sequence, batch.lastLine);
+			while (completedBatches.containsKey(nextCommittedSequence)) {
+				committedLines = completedBatches.remove(nextCommittedSequence++);
+			}
+			drain();
+			maybeFinish();
+		}
+
+		private void maybeFinish() {
+			if (!ended || failed || inFlight > 0 || !queuedBatches.isEmpty()) {
+				return;
+			}
+			vertx.cancelTimer(checkpointTimer);
+			file.close();
+			inflater.end();
+			saveCheckpoint(true).setHandler(promise);
+		}
+
+		private void fail(Throwable cause) {
+			if (failed) {
+				return;
+			}
+			failed = true;
+			vertx.cancelTimer(checkpointTimer);
+			file.close();
+			inflater.end();
+			saveCheckpoint(false).setHandler(saved -> promise.tryFail(cause));
+		}
+
+		private Future<Void> saveCheckpoint(boolean completed) {
+			savedLines = committedLines;
+			final Buffer checkpoint = new JsonObject().put("jobId", job.getString("id")).put("lines", committedLines)
+					.put("completed", completed).toBuffer();
+			checkpointWrites = checkpointWrites.recover(t -> Future.succeededFuture()).compose(v -> {
+				final Promise<Void> written = Promise.promise();
+				vertx.fileSystem().writeFile(checkpointFile, checkpoint, written);
+				return written.future();
+			});
+			return checkpointWrites;
+		}
+	}
+
+	/**
+	 * Incremental gzip decoder: {@link java.util.zip.GZIPInputStream} needs a blocking stream, whereas the
+	 * dump is read chunk by chunk from an {@link AsyncFile}. Members are decoded one after the other,
+	 * as concatenated gzip files are; the trailer of each is checked against the CRC-32 and size of
+	 * what it inflated to, and {@link #finish()} fails unless the input ends with a complete member.
+	 * The native memory of the inflater is freed by {@link #end()}.
+	 */
+	private static final class GzipInflater {
+		private static final int FHCRC = 2;
+		private static final int FEXTRA = 4;
+		private static final int FNAME = 8;
+		private static final int FCOMMENT = 16;
+		private static final int TRAILER_LENGTH = 8;
+
+		private enum State {
+			HEADER, BODY, TRAILER
+		}
+
+		private final Inflater inflater = new Inflater(true);
+		private final CRC32 crc = new CRC32();
+		private final byte[] output = new byte[64 * 1024];
+		// the header or trailer bytes received so far
+		private Buffer pending = Buffer.buffer();
+		private State state = State.HEADER;
+		private long members;
+
+		void inflate(Buffer chunk, Handler<Buffer> out) throws DataFormatException {
+			Buffer input = chunk;
+			while (input.length() > 0) {
+				switch (state) {
+				case HEADER:
+					pending.appendBuffer(input);
+					final int headerLength = headerLength(pending);
+					if (headerLength < 0) {
+						return;
+					}
+					input = pending.getBuffer(headerLength, pending.length());
+					pending = Buffer.buffer();
+					inflater.reset();
+					crc.reset();
+					state = State.BODY;
+					break;
+				case BODY:
+					final byte[] bytes = input.getBytes();
+					inflater.setInput(bytes);
+					int inflated;
+					while (!inflater.finished() && (inflated = inflater.inflate(output)) > 0) {
+						crc.update(output, 0, inflated);
+						out.handle(Buffer.buffer(inflated).appendBytes(output, 0, inflated));
+					}
+					if (!inflater.finished()) {
+						return;
+					}
+					input = input.getBuffer(bytes.length - inflater.getRemaining(), bytes.length);
+					state = State.TRAILER;
+					break;
+				case TRAILER:
+					pending.appendBuffer(input);
+					if (pending.length() < TRAILER_LENGTH) {
+						return;
+					}
+					if ((pending.getIntLE(0) & 0xffffffffL) != crc.getValue()
+							|| (pending.getIntLE(4) & 0xffffffffL) != (inflater.getBytesWritten() & 0xffffffffL)) {
+						throw new DataFormatException("corrupted gzip member " + (members + 1) + ": CRC or size mismatch");
+					}
+					members++;
+					input = pending.getBuffer(TRAILER_LENGTH, pending.length());
+					pending = Buffer.buffer();
+					state = State.HEADER;
+					break;
+				}
+			}
+		}
+
+		void finish() throws DataFormatException {
+			if (members == 0 || state != State.HEADER || pending.length() > 0) {
+				throw new DataFormatException("truncated gzip input");
+			}
+		}
+
+		void end() {
+			inflater.end();
+		}
+
+		private static int headerLength(Buffer header) throws DataFormatException {
+			if (header.length() < 10) {
+				return -1;
+			}
+			if ((header.getByte(0) & 0xff) != 0x1f || (header.getByte(1) & 0xff) != 0x8b) {
+				throw new DataFormatException("not a gzip file");
+			}
+			final int flags = header.getByte(3) & 0xff;
+			int position = 10;
+			if ((flags & FEXTRA) != 0) {
+				if (header.length() < position + 2) {
+					return -1;
+				}
+				position += 2 + ((header.getByte(position) & 0xff) | ((header.getByte(position + 1) & 0xff) << 8));
+			}
+			if ((flags & FNAME) != 0) {
+				position = skipZeroTerminated(header, position);
+			}
+			if (position >= 0 && (flags & FCOMMENT) != 0) {
+				position = skipZeroTerminated(header, position);
+			}
+			if (position >= 0 && (flags & FHCRC) != 0) {
+				position += 2;
+			}
+			return position >= 0 && header.length() >= position ? position : -1;
+		}
+
+		private static int skipZeroTerminated(Buffer header, int position) {
+			for (int i = position; i < header.length(); i++) {
+				if (header.getByte(i) == 0) {
+					return i + 1;
+				}
+			}
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package io.vertx.guides.wiki.database;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import io.reactivex.Observable;
+import io.reactivex.Single;
+import io.vertx.core.json.JsonArray;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.ext.jdbc.JDBCClient;
+import io.vertx.reactivex.ext.sql.SQLConnection;
+
+/**
+ * Maintains the PageLinks table. Page writes clear Pages.LinksIndexed; the links of the written page
+ * are then stored by {@link #index}, while the job catches up with the pages left behind (failed
+ * indexing, imports, pages written before the table existed).
+ */
+class LinkIndexJob extends BatchRewriteJob {
+
+	LinkIndexJob(Vertx vertx, JDBCClient dbClient, Map<SqlQuery, String> sqlQueries, WorkloadScheduler scheduler) {
+		super(vertx, dbClient, sqlQueries, scheduler);
+	}
+
+	@Override
+	protected String selectQuery() {
+		return sqlQueries.get(SqlQuery.UNINDEXED_LINK_PAGES);
+	}
+
+	@Override
+	protected JsonArray selectParams() {
+		return new JsonArray();
+	}
+
+	@Override
+	protected String updateQuery() {
+		return sqlQueries.get(SqlQuery.MARK_LINKS_INDEXED);
+	}
+
+	// row: Id, Content, ContentEncoding, Updated
+	@Override
+	protected JsonArray rewrite(JsonArray row) {
+		return links(row.getInteger(0), row.getLong(3), PageContentCodec.decode(row.getString(1), row.getString(2)));
+	}
+
+	Single<Integer> index(int id, long updated, String markdown) {
+		return store(Collections.singletonList(links(id, updated, markdown)));
+	}
+
+	private static JsonArray links(int id, long updated, String markdown) {
+		return new JsonArray().add(id).add(updated).add(new JsonArray(WikiLinks.extract(markdown).stream().collect(Collectors.toList())));
+	}
+
+	/*
+	 * Each page is marked as indexed, provided it was not written again meanwhile (in which case that
+	 * write indexes it), and its links are replaced, all in one transaction.
+	 */
+	@Override
+	protected Single<Integer> store(List<JsonArray> pages) {
+		return dbClient.rxGetConnection().flatMap(connection -> connection.rxSetAutoCommit(false)
+				.andThen(Observable.fromIterable(pages).concatMapSingle(page -> replaceLinks(connection, page))
+						.reduce(0, Integer::sum))
+				.flatMap(count -> connection.rxCommit().toSingleDefault(count))
+				.onErrorResumeNext(t -> connection.rxRollback().onErrorComplete().andThen(Single.error(t)))
+				.doFinally(connection::close));
+	}
+
+	private Single<Integer> replaceLinks(SQLConnection connection, JsonArray page) {
+		final int id = page.getInteger(0);
+		return connection.rxUpdateWithParams(updateQuery(), new JsonArray().add(id).add(page.getLong(1)))
+				.flatMap(marked -> {
+					if (marked.getUpdated() == 0) {
+						return Single.just(0);
+					}
+					final List<JsonArray> links = page.getJsonArray(2).stream()
+							.map(target -> new JsonArray().add(id).add(target)).collect(Collectors.toList());
+					final Single<Integer> deleted = connection
+							.rxUpdateWithParams(sqlQueries.get(SqlQuery.DELETE_PAGE_LINKS), new JsonArray().add(id))
+							.map(result -> 1);
+					return links.isEmpty() ? deleted : deleted.flatMap(count -> connection
+							.rxBatchWithParams(sqlQueries.get(SqlQuery.INSERT_PAGE_LINK), links).map(inserted -> 1));
+				});
+	}
+}
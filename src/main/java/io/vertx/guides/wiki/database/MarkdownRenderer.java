@@ -0,0 +1,21 @@
+package io.vertx.guides.wiki.database;
+
+import com.github.rjeschke.txtmark.Processor;
+
+/**
+ * The Markdown renderer of the wiki, shared by the render-on-write HTML, the site exports and the
+ * HTTP verticles, so that they all produce the same HTML for the same {@link #VERSION}.
+ */
+public final class MarkdownRenderer {
+
+	// stored alongside the rendered HTML: bump it whenever txtmark or its configuration changes
+	public static final int VERSION = 1;
+
+	private MarkdownRenderer() {
+	}
+
+	/** Renders the given Markdown, a missing one as an empty page. */
+	public static String render(String markdown) {
+		return markdown == null ? "" : Processor.process(markdown);
+	}
+}
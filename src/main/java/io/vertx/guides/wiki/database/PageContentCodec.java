@@ -0,0 +1,78 @@
+package io.vertx.guides.wiki.database;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes page bodies for storage in the Pages.Content CLOB. The encoding of a row is recorded in
+ * Pages.ContentEncoding: {@code null} for plain Markdown, {@code "deflate"} for Base64-encoded
+ * Deflate output (the JDBC client exchanges parameters as JSON, which has no binary type).
+ */
+final class PageContentCodec {
+
+	static final String NONE = "none";
+	static final String DEFLATE = "deflate";
+
+	private PageContentCodec() {
+	}
+
+	static boolean isSupported(String encoding) {
+		return NONE.equals(encoding) || DEFLATE.equals(encoding);
+	}
+
+	static String storedEncoding(String encoding) {
+		return NONE.equals(encoding) ? null : encoding;
+	}
+
+	static String encode(String markdown, String encoding) {
+		if (markdown == null || !DEFLATE.equals(encoding)) {
+			return markdown;
+		}
+		final byte[] input = markdown.getBytes(StandardCharsets.UTF_8);
+		final Deflater deflater = new Deflater();
+		try {
+			deflater.setInput(input);
+			deflater.finish();
+			final ByteArrayOutputStream output = new ByteArrayOutputStream(input.length / 2 + 16);
+			final byte[] buffer = new byte[8192];
+			while (!deflater.finished()) {
+				output.write(buffer, 0, deflater.deflate(buffer));
+			}
+			return Base64.getEncoder().encodeToString(output.toByteArray());
+		} finally {
+			deflater.end();
+		}
+	}
+
+	static String decode(String stored, String encoding) {
+		if (stored == null || encoding == null || NONE.equals(encoding)) {
+			return stored;
+		}
+		if (!DEFLATE.equals(encoding)) {
+			throw new IllegalStateException("Unknown page content encoding: " + encoding);
+		}
+		final byte[] input = Base64.getDecoder().decode(stored);
+		final Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(input);
+			final ByteArrayOutputStream output = new ByteArrayOutputStream(input.length * 4);
+			final byte[] buffer = new byte[8192];
+			while (!inflater.finished()) {
+				final int inflated = inflater.inflate(buffer);
+				if (inflated == 0 && inflater.needsInput()) {
+					throw new IllegalStateException("Truncated page content");
+				}
+				output.write(buffer, 0, inflated);
+			}
+			return new String(output.toByteArray(), StandardCharsets.UTF_8);
+		} catch (DataFormatException e) {
+			throw new IllegalStateException("Corrupted page content", e);
+		} finally {
+			inflater.end();
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package io.vertx.guides.wiki.database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.vertx.core.json.JsonArray;
+
+/**
+ * Line-based deltas between two versions of a page. A delta is a JSON array of operations applied
+ * in order to the lines of the base version: a positive number copies that many lines, a negative
+ * number skips that many, and a string inserts a line. The lines common to both versions are found
+ * by a longest common subsequence of the changed region; past {@link #MAX_DIFF_CELLS}, the whole
+ * changed region is replaced instead, which keeps the delta correct, only larger.
+ */
+final class PageDelta {
+
+	private static final long MAX_DIFF_CELLS = 1_000_000;
+
+	private static final char EQUAL = '=';
+	private static final char DELETE = '-';
+	private static final char INSERT = '+';
+
+	private PageDelta() {
+	}
+
+	static JsonArray diff(String from, String to) {
+		final String[] a = lines(from);
+		final String[] b = lines(to);
+		final JsonArray delta = new JsonArray();
+		int run = 0;
+		int j = 0;
+		for (char edit : script(a, b)) {
+			if (edit == INSERT) {
+				run = flush(delta, run);
+				delta.add(b[j++]);
+			} else if (edit == EQUAL) {
+				run = run < 0 ? flush(delta, run) + 1 : run + 1;
+				j++;
+			} else {
+				run = run > 0 ? flush(delta, run) - 1 : run - 1;
+			}
+		}
+		flush(delta, run);
+		return delta;
+	}
+
+	/**
+	 * Applies a delta to its base version.
+	 *
+	 * @throws IllegalArgumentException if the delta has an unknown operation or does not cover
+	 *                                  exactly the lines of the base version
+	 */
+	static String apply(String base, JsonArray delta) {
+		final String[] a = lines(base);
+		final List<String> result = new ArrayList<>();
+		int i = 0;
+		for (Object operation : delta) {
+			if (operation instanceof String) {
+				result.add((String) operation);
+			} else if (!(operation instanceof Number)) {
+				throw new IllegalArgumentException("Unsupported delta operation: " + operation);
+			} else {
+				final int count = ((Number) operation).intValue();
+				if (i + Math.abs(count) > a.length) {
+					throw new IllegalArgumentException("Delta goes past line " + a.length + " of its base");
+				}
+				for (int k = 0; k < Math.abs(count); k++, i++) {
+					if (count > 0) {
+						result.add(a[i]);
+					}
+				}
+			}
+		}
+		if (i != a.length) {
+			throw new IllegalArgumentException("Delta stops at line " + i + " of its base, which has " + a.length);
+		}
+		return String.join("\n", result);
+	}
+
+	/** The lines of both versions, prefixed by {@code ' '}, {@code '-'} or {@code '+'} as in a unified diff. */
+	static JsonArray unified(String from, String to) {
+		final String[] a = lines(from);
+		final String[] b = lines(to);
+		final JsonArray lines = new JsonArray();
+		int i = 0;
+		int j = 0;
+		for (char edit : script(a, b)) {
+			if (edit == EQUAL) {
+				lines.add(" " + a[i++]);
+				j++;
+			} else if (edit == DELETE) {
+				lines.add("-" + a[i++]);
+			} else {
+				lines.add("+" + b[j++]);
+			}
+		}
+		return lines;
+	}
+
+	private static String[] lines(String text) {
+		return text == null ? new String[] { "" } : text.split("\n", -1);
+	}
+
+	private static int flush(JsonArray delta, int run) {
+		if (run != 0) {
+			delta.add(run);
+		}
+		return 0;
+	}
+
+	private static List<Character> script(String[] a, String[] b) {
+		int prefix = 0;
+		while (prefix < a.length && prefix < b.length && a[prefix].equals(b[prefix])) {
+			prefix++;
+		}
+		int suffix = 0;
+		while (suffix < a.length - prefix && suffix < b.length - prefix
+				&& a[a.length - 1 - suffix].equals(b[b.length - 1 - suffix])) {
+			suffix++;
+		}
+		final int n = a.length - prefix - suffix;
+		final int m = b.length - prefix - suffix;
+		final List<Character> script = new ArrayList<>(prefix + n + m + suffix);
+		repeat(script, EQUAL, prefix);
+		if ((long) n * m > MAX_DIFF_CELLS) {
+			repeat(script, DELETE, n);
+			repeat(script, INSERT, m);
+		} else {
+			// common[i][j]: length of the longest common subsequence of the changed lines from i and j on
+			final int[][] common = new int[n + 1][m + 1];
+			for (int i = n - 1; i >= 0; i--) {
+				for (int j = m - 1; j >= 0; j--) {
+					common[i][j] = a[prefix + i].equals(b[prefix + j]) ? common[i + 1][j + 1] + 1
+							: Math.max(common[i + 1][j], common[i][j + 1]);
+				}
+			}
+			int i = 0;
+			int j = 0;
+			while (i < n && j < m) {
+				if (a[prefix + i].equals(b[prefix + j])) {
+					script.add(EQUAL);
+					i++;
+					j++;
+				} else if (common[i + 1][j] >= common[i][j + 1]) {
+					script.add(DELETE);
+					i++;
+				} else {
+					script.add(INSERT);
+					j++;
+				}
+			}
+			repeat(script, DELETE, n - i);
+			repeat(script, INSERT, m - j);
+		}
+		repeat(script, EQUAL, suffix);
+		return script;
+	}
+
+	private static void repeat(List<Character> script, char edit, int count) {
+		for (int k = 0; k < count; k++) {
+			script.add(edit);
+		}
+	}
+}
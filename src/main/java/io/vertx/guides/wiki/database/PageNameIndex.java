@@ -0,0 +1,56 @@
+package io.vertx.guides.wiki.database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import io.vertx.core.json.JsonArray;
+
+/**
+ * Sorted in-memory view of the page names, kept in sync by {@link WikiDatabaseServiceImpl}
+ * so that listings and prefix lookups never hit the database.
+ */
+class PageNameIndex {
+
+	private final ConcurrentSkipListMap<String, Integer> idsByName = new ConcurrentSkipListMap<>();
+	private final ConcurrentHashMap<Integer, String> namesById = new ConcurrentHashMap<>();
+
+	void put(int id, String name) {
+		final String previousName = namesById.put(id, name);
+		if (previousName != null && !previousName.equals(name)) {
+			idsByName.remove(previousName, id);
+		}
+		idsByName.put(name, id);
+	}
+
+	void remove(int id) {
+		final String name = namesById.remove(id);
+		if (name != null) {
+			idsByName.remove(name, id);
+		}
+	}
+
+	String nameOf(int id) {
+		return namesById.get(id);
+	}
+
+	int size() {
+		return idsByName.size();
+	}
+
+	JsonArray names() {
+		return new JsonArray(new ArrayList<>(idsByName.keySet()));
+	}
+
+	JsonArray namesWithPrefix(String prefix, int limit) {
+		final List<String> names = new ArrayList<>(Math.max(0, Math.min(limit, 64)));
+		for (String name : idsByName.tailMap(prefix, true).keySet()) {
+			if (names.size() >= limit || !name.startsWith(prefix)) {
+				break;
+			}
+			names.add(name);
+		}
+		return new JsonArray(names);
+	}
+}
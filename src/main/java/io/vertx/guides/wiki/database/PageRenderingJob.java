@@ -0,0 +1,40 @@
+package io.vertx.guides.wiki.database;
+
+import java.util.Map;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.ext.jdbc.JDBCClient;
+
+/**
+ * Re-renders the pages whose stored HTML was produced by another {@link MarkdownRenderer#VERSION}
+ * (or was never produced, e.g. after an import).
+ */
+class PageRenderingJob extends BatchRewriteJob {
+
+	PageRenderingJob(Vertx vertx, JDBCClient dbClient, Map<SqlQuery, String> sqlQueries, WorkloadScheduler scheduler) {
+		super(vertx, dbClient, sqlQueries, scheduler);
+	}
+
+	@Override
+	protected String selectQuery() {
+		return sqlQueries.get(SqlQuery.STALE_RENDERED_PAGES);
+	}
+
+	@Override
+	protected JsonArray selectParams() {
+		return new JsonArray().add(MarkdownRenderer.VERSION);
+	}
+
+	@Override
+	protected String updateQuery() {
+		return sqlQueries.get(SqlQuery.UPDATE_RENDERED_PAGE);
+	}
+
+	@Override
+	protected JsonArray rewrite(JsonArray row) {
+		final String markdown = PageContentCodec.decode(row.getString(1), row.getString(3));
+		return new JsonArray().add(MarkdownRenderer.render(markdown)).add(MarkdownRenderer.VERSION)
+				.add(row.getInteger(0)).add(row.getLong(2));
+	}
+}
@@ -0,0 +1,216 @@
+package io.vertx.guides.wiki.database;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import io.reactivex.Completable;
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.ext.jdbc.JDBCClient;
+
+/**
+ * Revision history of the pages, kept in the PageRevisions table while Pages keeps the current
+ * content in full. Each revision is stored as a {@link PageDelta} against the previous one, except
+ * that a full snapshot is taken every {@code snapshotInterval} revisions, so that rebuilding any
+ * revision applies fewer deltas than that. Each row records the snapshot its chain starts from.
+ * A snapshot is also taken when the current content is not the latest revision, e.g. after an
+ * import, since a delta would then have the wrong base. The writes of a page run one at a time, each
+ * numbering its revision after the one before; deltas are computed and contents encoded on a
+ * worker thread. Instances are confined to the context of the database service.
+ */
+class PageRevisions {
+
+	private final Vertx vertx;
+	private final JDBCClient dbClient;
+	private final Map<SqlQuery, String> sqlQueries;
+	private final int snapshotInterval;
+	private final String contentEncoding;
+
+	private long snapshots;
+	private long deltas;
+	private long storedChars;
+	private long rebuilds;
+	private long appliedDeltas;
+
+	private final Map<Integer, Queue<Runnable>> pageWrites = new HashMap<>();
+
+	PageRevisions(Vertx vertx, JDBCClient dbClient, Map<SqlQuery, String> sqlQueries, int snapshotInterval, String contentEncoding) {
+		if (snapshotInterval < 1) {
+			throw new IllegalArgumentException("The revision snapshot interval must be positive: " + snapshotInterval);
+		}
+		this.vertx = vertx;
+		this.dbClient = dbClient;
+		this.sqlQueries = sqlQueries;
+		this.snapshotInterval = snapshotInterval;
+		this.contentEncoding = contentEncoding;
+	}
+
+	/** Records the first revision of a created page. */
+	Completable created(int id, long updated, String markdown) {
+		return storedRevision(id, 1, 1, updated, () -> markdown)
+				.flatMap(revision -> dbClient.rxUpdateWithParams(sqlQueries.get(SqlQuery.INSERT_PAGE_REVISION), revision))
+				.ignoreElement();
+	}
+
+	/**
+	 * Saves a page with the given save-page parameters and records the new revision, in one
+	 * transaction so that the delta is computed against the content it replaces.
+	 */
+	Completable save(int id, long updated, String markdown, JsonArray pageColumns) {
+		final JsonArray idParam = new JsonArray().add(id);
+		return serialized(id, dbClient.rxGetConnection().flatMapCompletable(connection -> connection.rxSetAutoCommit(false)
+				.andThen(connection.rxQueryWithParams(sqlQueries.get(SqlQuery.PAGE_CONTENT_BY_ID), idParam))
+				.flatMap(current -> connection.rxQueryWithParams(sqlQueries.get(SqlQuery.LATEST_PAGE_REVISION), idParam)
+						.flatMap(latest -> nextRevision(id, updated, markdown, null, current.getResults(), latest.getResults())))
+				.flatMapCompletable(revision -> connection.rxUpdateWithParams(sqlQueries.get(SqlQuery.SAVE_PAGE), pageColumns)
+						.flatMapCompletable(saved -> saved.getUpdated() == 0 ? Completable.complete()
+								: connection.rxUpdateWithParams(sqlQueries.get(SqlQuery.INSERT_PAGE_REVISION), revision).ignoreElement()))
+				.andThen(connection.rxCommit())
+				.onErrorResumeNext(t -> connection.rxRollback().onErrorComplete().andThen(Completable.error(t)))
+				.doFinally(connection::close)).toSingleDefault(Boolean.TRUE)).ignoreElement();
+	}
+
+	/**
+	 * Applies a delta to the content of a page, provided the page was last updated at {@code base},
+	 * and saves the result with the save parameters built from it, in one transaction. The delta is
+	 * recorded as is as the new revision, unless a snapshot is due. The status of the result is
+	 * {@code patched} (the patched content being under {@code markdown}), {@code not-found},
+	 * {@code conflict} (with the current update time when known) or {@code invalid}.
+	 */
+	Single<JsonObject> patch(int id, long base, long updated, JsonArray delta, Function<String, Single<JsonArray>> saveParams) {
+		final JsonArray idParam = new JsonArray().add(id);
+		return serialized(id, dbClient.rxGetConnection().flatMap(connection -> connection.rxSetAutoCommit(false)
+				.andThen(connection.rxQueryWithParams(sqlQueries.get(SqlQuery.PAGE_CONTENT_BY_ID), idParam))
+				.flatMap(current -> {
+					if (current.getResults().isEmpty()) {
+						return Single.just(new JsonObject().put("status", "not-found"));
+					}
+					final JsonArray page = current.getResults().get(0);
+					if (page.getLong(2) != base) {
+						return Single.just(new JsonObject().put("status", "conflict").put("updated", page.getLong(2)));
+					}
+					final String markdown;
+					try {
+						markdown = PageDelta.apply(PageContentCodec.decode(page.getString(3), page.getString(4)), delta);
+					} catch (IllegalArgumentException e) {
+						return Single.just(new JsonObject().put("status", "invalid").put("error", e.getMessage()));
+					}
+					// the update is conditional too, should the page change between the read and the write
+					return connection.rxQueryWithParams(sqlQueries.get(SqlQuery.LATEST_PAGE_REVISION), idParam)
+							.flatMap(latest -> nextRevision(id, updated, markdown, delta, current.getResults(), latest.getResults()))
+							.flatMap(revision -> saveParams.apply(markdown)
+									.flatMap(params -> connection.rxUpdateWithParams(sqlQueries.get(SqlQuery.PATCH_PAGE), params.add(base)))
+									.flatMap(saved -> saved.getUpdated() == 0 ? Single.just(new JsonObject().put("status", "conflict"))
+											: connection.rxUpdateWithParams(sqlQueries.get(SqlQuery.INSERT_PAGE_REVISION), revision)
+													.map(inserted -> new JsonObject().put("status", "patched").put("updated", updated)
+															.put("markdown", markdown))));
+				})
+				.flatMap(result -> connection.rxCommit().toSingleDefault(result))
+				.onErrorResumeNext(t -> connection.rxRollback().onErrorComplete().andThen(Single.error(t)))
+				.doFinally(connection::close)));
+	}
+
+	// concurrent writes would both number their revision after the same latest one
+	private <T> Single<T> serialized(int id, Single<T> write) {
+		return Single.create(emitter -> {
+			final Queue<Runnable> writes = pageWrites.computeIfAbsent(id, key -> new ArrayDeque<>());
+			writes.add(() -> write.doFinally(() -> nextWrite(id)).subscribe(emitter::onSuccess, emitter::onError));
+			if (writes.size() == 1) {
+				writes.peek().run();
+			}
+		});
+	}
+
+	private void nextWrite(int id) {
+		final Queue<Runnable> writes = pageWrites.get(id);
+		writes.poll();
+		if (writes.isEmpty()) {
+			pageWrites.remove(id);
+		} else {
+			writes.peek().run();
+		}
+	}
+
+	// current: Id, Name, Updated, Content, ContentEncoding; latest: Revision, Base, Updated
+	private Single<JsonArray> nextRevision(int id, long updated, String markdown, JsonArray delta, List<JsonArray> current,
+			List<JsonArray> latest) {
+		if (current.isEmpty() || latest.isEmpty() || !latest.get(0).getLong(2).equals(current.get(0).getLong(2))
+				|| latest.get(0).getInteger(0) + 1 - latest.get(0).getInteger(1) >= snapshotInterval) {
+			final int revision = latest.isEmpty() ? 1 : latest.get(0).getInteger(0) + 1;
+			return storedRevision(id, revision, revision, updated, () -> markdown);
+		}
+		final JsonArray page = current.get(0);
+		return storedRevision(id, latest.get(0).getInteger(0) + 1, latest.get(0).getInteger(1), updated,
+				() -> (delta != null ? delta : PageDelta.diff(PageContentCodec.decode(page.getString(3), page.getString(4)), markdown))
+						.encode());
+	}
+
+	// a revision starting its chain is a snapshot; the content is computed and encoded on a worker thread
+	private Single<JsonArray> storedRevision(int id, int revision, int base, long updated, Supplier<String> content) {
+		return vertx.<String>rxExecuteBlocking(promise -> promise.complete(PageContentCodec.encode(content.get(), contentEncoding)), false)
+				.toSingle()
+				.map(encoded -> {
+					if (revision == base) {
+						snapshots++;
+					} else {
+						deltas++;
+					}
+					storedChars += encoded.length();
+					final JsonArray row = new JsonArray().add(id).add(revision).add(base).add(updated).add(encoded);
+					final String storedEncoding = PageContentCodec.storedEncoding(contentEncoding);
+					return storedEncoding == null ? row.addNull() : row.add(storedEncoding);
+				});
+	}
+
+	/** Revision, updated time, whether it is a snapshot and stored size of each revision, latest first. */
+	Single<JsonArray> history(int id) {
+		return dbClient.rxQueryWithParams(sqlQueries.get(SqlQuery.PAGE_REVISIONS), new JsonArray().add(id))
+				.map(result -> new JsonArray(result.getResults().stream()
+						.map(row -> new JsonObject().put("revision", row.getInteger(0)).put("updated", row.getLong(2))
+								.put("snapshot", row.getInteger(0).equals(row.getInteger(1))).put("size", row.getLong(3)))
+						.collect(Collectors.toList())));
+	}
+
+	/** The content of a revision, rebuilt on a worker thread from the snapshot its chain starts from. */
+	Maybe<JsonObject> revision(int id, int revision) {
+		final JsonArray params = new JsonArray().add(id).add(revision).add(id).add(revision);
+		return dbClient.rxQueryWithParams(sqlQueries.get(SqlQuery.PAGE_REVISION_CHAIN), params)
+				.filter(result -> !result.getResults().isEmpty())
+				.flatMap(result -> {
+					// chain: Revision, Updated, Content, ContentEncoding, from the snapshot on
+					final List<JsonArray> chain = result.getResults();
+					return vertx.<String>rxExecuteBlocking(promise -> {
+						String markdown = PageContentCodec.decode(chain.get(0).getString(2), chain.get(0).getString(3));
+						for (JsonArray row : chain.subList(1, chain.size())) {
+							markdown = PageDelta.apply(markdown, new JsonArray(PageContentCodec.decode(row.getString(2), row.getString(3))));
+						}
+						promise.complete(markdown);
+					}, false).map(markdown -> {
+						rebuilds++;
+						appliedDeltas += chain.size() - 1;
+						final JsonArray last = chain.get(chain.size() - 1);
+						return new JsonObject().put("revision", last.getInteger(0)).put("updated", last.getLong(1))
+								.put("markdown", markdown);
+					});
+				});
+	}
+
+	Completable delete(int id) {
+		return dbClient.rxUpdateWithParams(sqlQueries.get(SqlQuery.DELETE_PAGE_REVISIONS), new JsonArray().add(id))
+				.ignoreElement();
+	}
+
+	JsonObject metrics() {
+		return new JsonObject().put("snapshotInterval", snapshotInterval).put("snapshots", snapshots).put("deltas", deltas)
+				.put("storedChars", storedChars).put("rebuilds", rebuilds).put("appliedDeltas", appliedDeltas);
+	}
+}
@@ -0,0 +1,83 @@
+package io.vertx.guides.wiki.database;
+
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_BACKUP_DIRECTORY;
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_IMPORT_DIRECTORY;
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_JDBC_URL;
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_SHARDS;
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_SHARD_INDEX;
+import static io.vertx.guides.wiki.database.DatabaseConstants.DEFAULT_WIKIDB_BACKUP_DIRECTORY;
+import static io.vertx.guides.wiki.database.DatabaseConstants.DEFAULT_WIKIDB_JDBC_URL;
+import static io.vertx.guides.wiki.database.DatabaseConstants.DEFAULT_WIKIDB_SHARDS;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Layout of sharded page storage: pages are spread over {@code wikidb.shards} databases by the hash
+ * of their name, shard {@code i} living at the configured JDBC URL suffixed with {@code -shard-i}.
+ * Each shard allocates the ids congruent to its index modulo the shard count, so that ids stay
+ * unique across shards and give the shard of a page without any lookup.
+ * <p>
+ * Changing the shard count reshards through a dump: back the wiki up, restart with the new count
+ * and import the dump of each former shard, every shard keeping the pages that now belong to it.
+ */
+final class PageSharding {
+
+	private PageSharding() {
+	}
+
+	static int shards(JsonObject config) {
+		final int shards = config.getInteger(CONFIG_WIKIDB_SHARDS, DEFAULT_WIKIDB_SHARDS);
+		if (shards < 1) {
+			throw new IllegalArgumentException("The shard count must be positive: " + shards);
+		}
+		return shards;
+	}
+
+	/** Whether the configuration is the one of a shard, as made by {@link #shardConfig}. */
+	static boolean isShard(JsonObject config) {
+		return config.containsKey(CONFIG_WIKIDB_SHARD_INDEX);
+	}
+
+	static int shardOf(String name, int shards) {
+		return Math.floorMod(name.hashCode(), shards);
+	}
+
+	static int shardOf(int id, int shards) {
+		return Math.floorMod(id, shards);
+	}
+
+	// the suffix goes to the database name, before any connection properties
+	static String shardUrl(String url, int shard) {
+		final int properties = url.indexOf(';');
+		return properties < 0 ? url + "-shard-" + shard
+				: url.substring(0, properties) + "-shard-" + shard + url.substring(properties);
+	}
+
+	/**
+	 * The configuration of a shard: its own database and backup directory, while imports read
+	 * the dumps of the whole wiki, each shard keeping its own pages.
+	 */
+	static JsonObject shardConfig(JsonObject config, int shard) {
+		final String backupDirectory = config.getString(CONFIG_WIKIDB_BACKUP_DIRECTORY, DEFAULT_WIKIDB_BACKUP_DIRECTORY);
+		return config.copy().put(CONFIG_WIKIDB_SHARD_INDEX, shard)
+				.put(CONFIG_WIKIDB_JDBC_URL, shardUrl(config.getString(CONFIG_WIKIDB_JDBC_URL, DEFAULT_WIKIDB_JDBC_URL), shard))
+				.put(CONFIG_WIKIDB_BACKUP_DIRECTORY, Paths.get(backupDirectory, "shard-" + shard).toString())
+				.put(CONFIG_WIKIDB_IMPORT_DIRECTORY, config.getString(CONFIG_WIKIDB_IMPORT_DIRECTORY, backupDirectory));
+	}
+
+	/** The smallest id above {@code maxId} belonging to the shard. */
+	static int nextId(int maxId, int shard, int shards) {
+		final int candidate = maxId + 1;
+		return candidate + Math.floorMod(shard - candidate, shards);
+	}
+
+	/** Statements making the Pages identity allocate the ids of the shard from {@code nextId} on. */
+	static List<String> identitySettings(int nextId, int shards) {
+		return Arrays.asList("alter table Pages alter column Id set increment by " + shards,
+				"alter table Pages alter column Id restart with " + nextId);
+	}
+}
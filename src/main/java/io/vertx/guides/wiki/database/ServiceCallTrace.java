@@ -0,0 +1,77 @@
+package io.vertx.guides.wiki.database;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.Context;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Spans of a sampled service call, on the database side: the event bus hop, then, for each
+ * operation the call submits to the {@link WorkloadScheduler}, its wait for a slot and the time it
+ * held the slot running its queries. The trace is current while the call is dispatched to the
+ * service, and exported through the {@code TRACES} logger once the operations submitted meanwhile
+ * have completed. Traces are confined to the context of the database verticle.
+ */
+final class ServiceCallTrace {
+
+	private static final Logger TRACES = LoggerFactory.getLogger("io.vertx.guides.wiki.traces");
+
+	private static final ThreadLocal<ServiceCallTrace> CURRENT = new ThreadLocal<>();
+
+	private final JsonObject trace;
+	private final JsonArray spans = new JsonArray();
+	private int pendingOperations;
+	private boolean dispatched;
+	private boolean exported;
+
+	private ServiceCallTrace(String traceId, String parentSpanId, String name) {
+		this.trace = new JsonObject().put("traceId", traceId).put("parentSpanId", parentSpanId).put("name", name)
+				.put("spans", spans);
+	}
+
+	/** Makes a trace current until the end of the dispatch of the call, on the given context. */
+	static void begin(Context context, String traceId, String parentSpanId, String name, long eventBusMillis) {
+		final ServiceCallTrace trace = new ServiceCallTrace(traceId, parentSpanId, name);
+		trace.span("eventbus", eventBusMillis);
+		CURRENT.set(trace);
+		context.runOnContext(v -> {
+			if (CURRENT.get() == trace) {
+				CURRENT.remove();
+			}
+			trace.dispatched = true;
+			trace.exportWhenDone();
+		});
+	}
+
+	/** Ends the trace of the previous call, should the call now dispatched not be sampled. */
+	static void clear() {
+		CURRENT.remove();
+	}
+
+	/** The trace of the call being dispatched, if sampled, or null. */
+	static ServiceCallTrace current() {
+		return CURRENT.get();
+	}
+
+	void span(String name, long durationMillis) {
+		spans.add(new JsonObject().put("name", name).put("durationMs", durationMillis));
+	}
+
+	void operationStarted() {
+		pendingOperations++;
+	}
+
+	void operationCompleted() {
+		pendingOperations--;
+		exportWhenDone();
+	}
+
+	private void exportWhenDone() {
+		if (dispatched && pendingOperations == 0 && !exported) {
+			exported = true;
+			TRACES.info(trace.encode());
+		}
+	}
+}
@@ -0,0 +1,383 @@
+package io.vertx.guides.wiki.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.ext.jdbc.JDBCClient;
+
+/**
+ * The database service over sharded storage (see {@link PageSharding}): one service per shard, each
+ * with its own database and connection pool, behind this one. Calls about a page go to the shard
+ * given by its name or id; listings, scans and jobs are scattered to every shard and their results
+ * gathered. Backup and import jobs get an id of their own, standing for the jobs of the shards.
+ * Instances are confined to the context of the database verticle.
+ */
+class ShardedWikiDatabaseService implements WikiDatabaseService {
+
+	private static final int MAX_RETAINED_JOBS = 20;
+	private static final List<String> JOB_TOTALS = Arrays.asList("pages", "bytes", "records", "batches", "skipped", "bytesRead",
+			"rejected", "otherShards");
+
+	private final List<WikiDatabaseServiceImpl> shards;
+	private final Map<String, List<JsonObject>> backups = retainedJobs();
+	private final Map<String, List<JsonObject>> imports = retainedJobs();
+
+	private ShardedWikiDatabaseService(List<WikiDatabaseServiceImpl> shards) {
+		this.shards = shards;
+	}
+
+	/** Starts the service of each shard, with the client of its database. */
+	static void create(Vertx vertx, List<JDBCClient> dbClients, Map<SqlQuery, String> sqlQueries, JsonObject config,
+			Handler<AsyncResult<WikiDatabaseService>> readyHandler) {
+		final String instanceId = UUID.randomUUID().toString();
+		final List<WikiDatabaseServiceImpl> shards = new ArrayList<>();
+		final List<Future> ready = new ArrayList<>();
+		for (int shard = 0; shard < dbClients.size(); shard++) {
+			final Promise<WikiDatabaseService> promise = Promise.promise();
+			shards.add(new WikiDatabaseServiceImpl(vertx, dbClients.get(shard), sqlQueries, PageSharding.shardConfig(config, shard),
+					instanceId, promise));
+			ready.add(promise.future());
+		}
+		CompositeFuture.all(ready).setHandler(ar -> {
+			if (ar.succeeded()) {
+				readyHandler.handle(Future.succeededFuture(new ShardedWikiDatabaseService(shards)));
+			} else {
+				readyHandler.handle(Future.failedFuture(ar.cause()));
+			}
+		});
+	}
+
+	private WikiDatabaseServiceImpl shardOf(String name) {
+		return shards.get(PageSharding.shardOf(name, shards.size()));
+	}
+
+	private WikiDatabaseServiceImpl shardOf(int id) {
+		return shards.get(PageSharding.shardOf(id, shards.size()));
+	}
+
+	/** Calls every shard, giving the results in the order of the shards. */
+	private <T> void scatter(BiConsumer<? super WikiDatabaseServiceImpl, Handler<AsyncResult<T>>> call, Handler<AsyncResult<List<T>>> resultHandler) {
+		scatter(shards, call, resultHandler);
+	}
+
+	private static <S, T> void scatter(Collection<S> targets, BiConsumer<? super S, Handler<AsyncResult<T>>> call,
+			Handler<AsyncResult<List<T>>> resultHandler) {
+		final List<Future> results = new ArrayList<>();
+		for (S target : targets) {
+			final Promise<T> promise = Promise.promise();
+			call.accept(target, promise);
+			results.add(promise.future());
+		}
+		CompositeFuture.all(results).setHandler(ar -> {
+			if (ar.succeeded()) {
+				resultHandler.handle(Future.succeededFuture(ar.result().list()));
+			} else {
+				resultHandler.handle(Future.failedFuture(ar.cause()));
+			}
+		});
+	}
+
+	private static <T, R> Handler<AsyncResult<T>> mapped(Handler<AsyncResult<R>> resultHandler, Function<T, R> mapper) {
+		return ar -> resultHandler.handle(ar.map(mapper));
+	}
+
+	private static JsonArray sortedNames(List<JsonArray> names) {
+		return new JsonArray(names.stream().flatMap(JsonArray::stream).map(String.class::cast).sorted()
+				.collect(Collectors.toList()));
+	}
+
+	@Override
+	public WikiDatabaseService fetchAllPages(Handler<AsyncResult<JsonArray>> resultHandler) {
+		this.<JsonArray>scatter(WikiDatabaseService::fetchAllPages, mapped(resultHandler, ShardedWikiDatabaseService::sortedNames));
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService fetchPageNames(String prefix, int limit, Handler<AsyncResult<JsonArray>> resultHandler) {
+		this.<JsonArray>scatter((shard, handler) -> shard.fetchPageNames(prefix, limit, handler), mapped(resultHandler, names -> {
+			final JsonArray sorted = sortedNames(names);
+			return new JsonArray(sorted.getList().subList(0, Math.max(0, Math.min(limit, sorted.size()))));
+		}));
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService fetchAllPagesData(Handler<AsyncResult<List<JsonObject>>> resultHandler) {
+		this.<List<JsonObject>>scatter(WikiDatabaseService::fetchAllPagesData,
+				mapped(resultHandler, pages -> pages.stream().flatMap(List::stream).collect(Collectors.toList())));
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService fetchPagesFields(List<String> fields, Handler<AsyncResult<List<JsonObject>>> resultHandler) {
+		this.<List<JsonObject>>scatter((shard, handler) -> shard.fetchPagesFields(fields, handler),
+				mapped(resultHandler, pages -> pages.stream().flatMap(List::stream).collect(Collectors.toList())));
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService fetchPageFields(int id, List<String> fields, Handler<AsyncResult<JsonObject>> resultHandler) {
+		shardOf(id).fetchPageFields(id, fields, resultHandler);
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService fetchPagesByIds(List<Integer> ids, List<String> fields, Handler<AsyncResult<JsonObject>> resultHandler) {
+		final List<Integer> distinctIds = ids.stream().distinct().collect(Collectors.toList());
+		final Map<Integer, List<Integer>> idsByShard = distinctIds.stream()
+				.collect(Collectors.groupingBy(id -> PageSharding.shardOf(id, shards.size())));
+		// the pages of the shards are put back in order by id
+		final List<String> shardFields = new ArrayList<>(fields);
+		if (!fields.contains("id")) {
+			shardFields.add("id");
+		}
+		ShardedWikiDatabaseService.<Map.Entry<Integer, List<Integer>>, JsonObject>scatter(idsByShard.entrySet(),
+				(entry, handler) -> shards.get(entry.getKey()).fetchPagesByIds(entry.getValue(), shardFields, handler),
+				mapped(resultHandler, results -> {
+					final Map<Integer, JsonObject> pagesById = results.stream()
+							.flatMap(result -> result.getJsonArray("pages").stream()).map(JsonObject.class::cast)
+							.collect(Collectors.toMap(page -> page.getInteger("id"), page -> page));
+					final JsonArray pages = new JsonArray();
+					final JsonArray missing = new JsonArray();
+					for (Integer id : distinctIds) {
+						final JsonObject page = pagesById.get(id);
+						if (page == null) {
+							missing.add(id);
+						} else {
+							if (!fields.contains("id")) {
+								page.remove("id");
+							}
+							pages.add(page);
+						}
+					}
+					return new JsonObject().put("pages", pages).put("missing", missing);
+				}));
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService fetchPage(String name, Handler<AsyncResult<JsonObject>> resultHandler) {
+		shardOf(name).fetchPage(name, resultHandler);
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService fetchPageById(int id, Handler<AsyncResult<JsonObject>> resultHandler) {
+		shardOf(id).fetchPageById(id, resultHandler);
+		return this;
+	}
+
+	// links are stored with their source page, on any shard
+	@Override
+	public WikiDatabaseService fetchBacklinks(String name, Handler<AsyncResult<JsonArray>> resultHandler) {
+		this.<JsonArray>scatter((shard, handler) -> shard.fetchBacklinks(name, handler), mapped(resultHandler, ShardedWikiDatabaseService::sortedNames));
+		return this;
+	}
+
+	/*
+	 * A shard only knows the pages it holds that none of its own pages links to: each of these
+	 * candidates is an orphan unless a page of another shard links to it, which one query per shard
+	 * tells for all of them.
+	 */
+	@Override
+	public WikiDatabaseService fetchOrphanPages(Handler<AsyncResult<JsonArray>> resultHandler) {
+		this.<JsonArray>scatter(WikiDatabaseService::fetchOrphanPages, candidatesResult -> {
+			if (candidatesResult.failed()) {
+				resultHandler.handle(Future.failedFuture(candidatesResult.cause()));
+				return;
+			}
+			final List<String> candidates = candidatesResult.result().stream().flatMap(JsonArray::stream)
+					.map(String.class::cast).sorted().collect(Collectors.toList());
+			this.<JsonArray>scatter((shard, handler) -> shard.fetchLinkedTargets(candidates, handler), mapped(resultHandler, linked -> {
+				final Set<Object> targets = linked.stream().flatMap(JsonArray::stream).collect(Collectors.toSet());
+				return new JsonArray(candidates.stream().filter(name -> !targets.contains(name)).collect(Collectors.toList()));
+			}));
+		});
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService fetchPageHistory(int id, Handler<AsyncResult<JsonArray>> resultHandler) {
+		shardOf(id).fetchPageHistory(id, resultHandler);
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService fetchPageRevision(int id, int revision, Handler<AsyncResult<JsonObject>> resultHandler) {
+		shardOf(id).fetchPageRevision(id, revision, resultHandler);
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService fetchPageDiff(int id, int fromRevision, int toRevision, Handler<AsyncResult<JsonObject>> resultHandler) {
+		shardOf(id).fetchPageDiff(id, fromRevision, toRevision, resultHandler);
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService createPage(String title, String markdown, Handler<AsyncResult<Void>> resultHandler) {
+		shardOf(title).createPage(title, markdown, resultHandler);
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService savePage(int id, String markdown, Handler<AsyncResult<Void>> resultHandler) {
+		shardOf(id).savePage(id, markdown, resultHandler);
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService patchPage(int id, long base, JsonArray delta, Handler<AsyncResult<JsonObject>> resultHandler) {
+		shardOf(id).patchPage(id, base, delta, resultHandler);
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService deletePage(int id, Handler<AsyncResult<Void>> resultHandler) {
+		shardOf(id).deletePage(id, resultHandler);
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService startBackup(JsonObject options, Handler<AsyncResult<JsonObject>> resultHandler) {
+		startJobs(backups, (shard, handler) -> shard.startBackup(options, handler), resultHandler);
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService fetchBackupStatus(String jobId, Handler<AsyncResult<JsonObject>> resultHandler) {
+		jobStatus(backups, jobId, WikiDatabaseService::fetchBackupStatus, resultHandler);
+		return this;
+	}
+
+	/** Imports a dump into every shard, each keeping the pages it holds. */
+	@Override
+	public WikiDatabaseService startImport(JsonObject options, Handler<AsyncResult<JsonObject>> resultHandler) {
+		startJobs(imports, (shard, handler) -> shard.startImport(options, handler), resultHandler);
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService fetchImportStatus(String jobId, Handler<AsyncResult<JsonObject>> resultHandler) {
+		jobStatus(imports, jobId, WikiDatabaseService::fetchImportStatus, resultHandler);
+		return this;
+	}
+
+	// each shard would render the index of its own pages and remove the files of the others
+	@Override
+	public WikiDatabaseService startExport(JsonObject options, Handler<AsyncResult<JsonObject>> resultHandler) {
+		resultHandler.handle(Future.failedFuture("static exports are not supported over sharded storage"));
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService fetchExportStatus(String jobId, Handler<AsyncResult<JsonObject>> resultHandler) {
+		resultHandler.handle(Future.succeededFuture(new JsonObject().put("found", false).put("id", jobId)));
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService fetchStatistics(Handler<AsyncResult<JsonObject>> resultHandler) {
+		this.<JsonObject>scatter(WikiDatabaseService::fetchStatistics, mapped(resultHandler, statistics -> new JsonObject()
+				.put("pages", statistics.stream().mapToInt(shard -> shard.getInteger("pages")).sum())
+				.put("shards", new JsonArray(statistics))));
+		return this;
+	}
+
+	/*
+	 * Jobs started by some shards run on when others refuse theirs: unless every shard refused, they
+	 * are recorded under the combined id, which is returned with the refusals of the other shards
+	 * (the combined status is then failed), so that their progress can still be followed.
+	 */
+	private void startJobs(Map<String, List<JsonObject>> jobs, BiConsumer<WikiDatabaseService, Handler<AsyncResult<JsonObject>>> start,
+			Handler<AsyncResult<JsonObject>> resultHandler) {
+		final List<Future> started = new ArrayList<>();
+		for (WikiDatabaseServiceImpl shard : shards) {
+			final Promise<JsonObject> promise = Promise.promise();
+			start.accept(shard, promise);
+			started.add(promise.future());
+		}
+		CompositeFuture.join(started).setHandler(ar -> {
+			if (started.stream().allMatch(Future::failed)) {
+				resultHandler.handle(Future.failedFuture(started.get(0).cause()));
+				return;
+			}
+			final List<JsonObject> shardJobs = started.stream()
+					.map(job -> job.succeeded() ? (JsonObject) job.result() : refused(job.cause()))
+					.collect(Collectors.toList());
+			final String id = UUID.randomUUID().toString();
+			jobs.put(id, shardJobs);
+			resultHandler.handle(Future.succeededFuture(combined(id, shardJobs)));
+		});
+	}
+
+	private static JsonObject refused(Throwable cause) {
+		return new JsonObject().put("found", true).put("status", "failed").put("error", cause.getMessage());
+	}
+
+	private void jobStatus(Map<String, List<JsonObject>> jobs, String jobId, ShardJobStatus status,
+			Handler<AsyncResult<JsonObject>> resultHandler) {
+		final List<JsonObject> shardJobs = jobs.get(jobId);
+		if (shardJobs == null) {
+			resultHandler.handle(Future.succeededFuture(new JsonObject().put("found", false).put("id", jobId)));
+			return;
+		}
+		ShardedWikiDatabaseService.<Integer, JsonObject>scatter(IntStream.range(0, shards.size()).boxed().collect(Collectors.toList()),
+				(shard, handler) -> {
+					final String shardJobId = shardJobs.get(shard).getString("id");
+					if (shardJobId == null) {
+						handler.handle(Future.succeededFuture(shardJobs.get(shard)));
+					} else {
+						status.fetch(shards.get(shard), shardJobId, handler);
+					}
+				},
+				mapped(resultHandler, statuses -> combined(jobId, statuses)
+						.put("found", statuses.stream().allMatch(job -> job.getBoolean("found")))));
+	}
+
+	private static JsonObject combined(String id, List<JsonObject> shardJobs) {
+		final String status = shardJobs.stream().anyMatch(job -> "failed".equals(job.getString("status"))) ? "failed"
+				: shardJobs.stream().anyMatch(job -> "running".equals(job.getString("status"))) ? "running" : "succeeded";
+		final JsonObject job = new JsonObject().put("id", id).put("status", status);
+		for (String total : JOB_TOTALS) {
+			if (shardJobs.stream().anyMatch(shardJob -> shardJob.getValue(total) instanceof Number)) {
+				job.put(total, shardJobs.stream().mapToLong(shardJob -> shardJob.getLong(total, 0L)).sum());
+			}
+		}
+		return job.put("shards", new JsonArray(shardJobs));
+	}
+
+	private static Map<String, List<JsonObject>> retainedJobs() {
+		return new LinkedHashMap<String, List<JsonObject>>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, List<JsonObject>> eldest) {
+				return size() > MAX_RETAINED_JOBS;
+			}
+		};
+	}
+
+	@FunctionalInterface
+	private interface ShardJobStatus {
+		void fetch(WikiDatabaseService shard, String jobId, Handler<AsyncResult<JsonObject>> resultHandler);
+	}
+}
@@ -0,0 +1,69 @@
+package io.vertx.guides.wiki.database;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Coalesces concurrent lookups of the same key: while a query for a key is in flight, further
+ * requests for that key wait for its result instead of issuing their own query. Waiters of a shared
+ * query each get their own copy of the result, which their handlers may decorate. Instances are
+ * confined to the context of the database verticle.
+ */
+class SingleFlight<K, V> {
+
+	private final Map<K, List<Handler<AsyncResult<V>>>> inFlight = new HashMap<>();
+	private final UnaryOperator<V> copier;
+	private long executed;
+	private long coalesced;
+
+	SingleFlight(UnaryOperator<V> copier) {
+		this.copier = copier;
+	}
+
+	void execute(K key, Consumer<Handler<AsyncResult<V>>> query, Handler<AsyncResult<V>> resultHandler) {
+		final List<Handler<AsyncResult<V>>> pending = inFlight.get(key);
+		if (pending != null) {
+			coalesced++;
+			pending.add(resultHandler);
+			return;
+		}
+		final List<Handler<AsyncResult<V>>> waiters = new ArrayList<>();
+		waiters.add(resultHandler);
+		inFlight.put(key, waiters);
+		executed++;
+		query.accept(result -> {
+			inFlight.remove(key, waiters);
+			if (waiters.size() == 1 || result.failed() || result.result() == null) {
+				waiters.forEach(waiter -> waiter.handle(result));
+				return;
+			}
+			// copied before any handler runs, as handlers may change the value they get
+			final List<V> copies = new ArrayList<>(waiters.size());
+			waiters.forEach(waiter -> copies.add(copier.apply(result.result())));
+			for (int i = 0; i < waiters.size(); i++) {
+				waiters.get(i).handle(Future.succeededFuture(copies.get(i)));
+			}
+		});
+	}
+
+	/**
+	 * Lets the next lookup of the key start a fresh query, so that readers arriving after a write do
+	 * not join a query that may have read the previous value. Current waiters still get its result.
+	 */
+	void forget(K key) {
+		inFlight.remove(key);
+	}
+
+	JsonObject metrics() {
+		return new JsonObject().put("queries", executed).put("coalesced", coalesced).put("inFlight", inFlight.size());
+	}
+}
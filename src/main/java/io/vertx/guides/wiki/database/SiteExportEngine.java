@@ -0,0 +1,368 @@
+package io.vertx.guides.wiki.database;
+
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_EXPORT_DIRECTORY;
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_EXPORT_MAX_PENDING;
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_EXPORT_PARALLELISM;
+import static io.vertx.guides.wiki.database.DatabaseConstants.DEFAULT_WIKIDB_EXPORT_DIRECTORY;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.sql.SQLConnection;
+import io.vertx.ext.sql.SQLRowStream;
+
+/**
+ * Exports the wiki as a static HTML tree (index.html and wiki/&lt;page name&gt;.html, each with a
+ * precompressed .gz sibling) to be served by nginx or a CDN. Pages are streamed from a database
+ * cursor and rendered with the page templates in a fork-join pool; the cursor is paused while
+ * {@code maxPending} pages are being rendered, so memory use does not depend on the size of the
+ * wiki. An incremental export only renders the pages updated since the previous export started,
+ * and removes the files of deleted pages. Only one job runs at a time.
+ */
+class SiteExportEngine {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SiteExportEngine.class);
+
+	private static final String STATE_FILE = "export-state.json";
+	private static final String PAGES_DIRECTORY = "wiki";
+	private static final String PAGE_SUFFIX = ".html";
+	private static final int MAX_RETAINED_JOBS = 20;
+
+	private final Vertx vertx;
+	private final JDBCClient dbClient;
+	private final Map<SqlQuery, String> sqlQueries;
+	private final Path directory;
+	private final int parallelism;
+	private final int maxPending;
+	private final Configuration templates;
+
+	private final Map<String, JsonObject> jobs = new LinkedHashMap<String, JsonObject>() {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, JsonObject> eldest) {
+			return size() > MAX_RETAINED_JOBS;
+		}
+	};
+	private JsonObject runningJob;
+
+	SiteExportEngine(Vertx vertx, JDBCClient dbClient, Map<SqlQuery, String> sqlQueries, JsonObject config) {
+		this.vertx = vertx;
+		this.dbClient = dbClient;
+		this.sqlQueries = sqlQueries;
+		this.directory = Paths.get(config.getString(CONFIG_WIKIDB_EXPORT_DIRECTORY, DEFAULT_WIKIDB_EXPORT_DIRECTORY))
+				.toAbsolutePath().normalize();
+		this.parallelism = config.getInteger(CONFIG_WIKIDB_EXPORT_PARALLELISM, Runtime.getRuntime().availableProcessors());
+		this.maxPending = config.getInteger(CONFIG_WIKIDB_EXPORT_MAX_PENDING, 4 * parallelism);
+		this.templates = new Configuration(Configuration.VERSION_2_3_23);
+		templates.setClassLoaderForTemplateLoading(SiteExportEngine.class.getClassLoader(), "templates");
+		templates.setDefaultEncoding(StandardCharsets.UTF_8.name());
+	}
+
+	void start(JsonObject options, Handler<AsyncResult<JsonObject>> resultHandler) {
+		if (runningJob != null) {
+			resultHandler.handle(Future.failedFuture("export " + runningJob.getString("id") + " is already running"));
+			return;
+		}
+		final boolean incremental = options.getBoolean("incremental", false);
+		final JsonObject job = new JsonObject().put("id", UUID.randomUUID().toString()).put("status", "running")
+				.put("incremental", incremental).put("location", directory.toString()).put("pages", 0L)
+				.put("skipped", 0L).put("removed", 0L).put("bytes", 0L).put("startedAt", System.currentTimeMillis());
+		jobs.put(job.getString("id"), job);
+		runningJob = job;
+		resultHandler.handle(Future.succeededFuture(job.copy()));
+
+		final ForkJoinPool pool = new ForkJoinPool(parallelism);
+		readSince(incremental).compose(since -> {
+			job.put("since", since);
+			return exportPages(job, pool);
+		}).compose(v -> exportIndex(job, pool)).compose(v -> saveState(job)).setHandler(ar -> {
+			pool.shutdown();
+			runningJob = null;
+			job.put("finishedAt", System.currentTimeMillis());
+			if (ar.succeeded()) {
+				job.put("status", "succeeded");
+				LOGGER.info("export " + job.getString("id") + " wrote " + job.getLong("pages") + " pages to " + directory);
+			} else {
+				job.put("status", "failed").put("error", String.valueOf(ar.cause().getMessage()));
+				LOGGER.error("export " + job.getString("id") + " failed", ar.cause());
+			}
+		});
+	}
+
+	JsonObject status(String jobId) {
+		final JsonObject job = jobs.get(jobId);
+		if (job == null) {
+			return new JsonObject().put("found", false).put("id", jobId);
+		}
+		return job.copy().put("found", true);
+	}
+
+	private Future<Long> readSince(boolean incremental) {
+		if (!incremental) {
+			return Future.succeededFuture(0L);
+		}
+		final Promise<Long> promise = Promise.promise();
+		final String stateFile = directory.resolve(STATE_FILE).toString();
+		vertx.fileSystem().exists(stateFile, exists -> {
+			if (exists.failed()) {
+				promise.fail(exists.cause());
+			} else if (!exists.result()) {
+				LOGGER.info("no previous export found, running a full export");
+				promise.complete(0L);
+			} else {
+				vertx.fileSystem().readFile(stateFile, read -> {
+					if (read.succeeded()) {
+						promise.complete(read.result().toJsonObject().getLong("lastExportStartedAt", 0L));
+					} else {
+						promise.fail(read.cause());
+					}
+				});
+			}
+		});
+		return promise.future();
+	}
+
+	private Future<Void> exportPages(JsonObject job, ForkJoinPool pool) {
+		final Promise<Void> promise = Promise.promise();
+		final Context context = vertx.getOrCreateContext();
+		dbClient.getConnection(connectionResult -> {
+			if (connectionResult.failed()) {
+				promise.fail(connectionResult.cause());
+				return;
+			}
+			final SQLConnection connection = connectionResult.result();
+			final JsonArray params = new JsonArray().add(job.getLong("since"));
+			connection.queryStreamWithParams(sqlQueries.get(SqlQuery.EXPORT_PAGES_SINCE), params, streamResult -> {
+				if (streamResult.failed()) {
+					connection.close();
+					promise.fail(streamResult.cause());
+					return;
+				}
+				final SQLRowStream rows = streamResult.result();
+				// confined to the verticle context: rendering tasks report back with runOnContext
+				final int[] pending = { 0 };
+				final boolean[] ended = { false };
+
+				final Handler<Throwable> failure = t -> {
+					if (promise.tryFail(t)) {
+						rows.close();
+						connection.close();
+					}
+				};
+				rows.exceptionHandler(failure);
+
+				rows.handler(row -> {
+					final String name = row.getString(1);
+					if (!isExportable(name)) {
+						LOGGER.warn("page " + name + " has no valid file name, skipping it");
+						job.put("skipped", job.getLong("skipped") + 1);
+						return;
+					}
+					final String content = PageContentCodec.decode(row.getString(2), row.getString(3));
+					final String html = row.getInteger(6) != null && row.getInteger(6) == MarkdownRenderer.VERSION ? row.getString(5) : null;
+					pending[0]++;
+					if (pending[0] >= maxPending) {
+						rows.pause();
+					}
+					pool.execute(() -> {
+						long bytes;
+						Throwable error = null;
+						try {
+							bytes = writePage(name, content, html);
+						} catch (RuntimeException e) {
+							bytes = 0;
+							error = e;
+						}
+						final long written = bytes;
+						final Throwable cause = error;
+						context.runOnContext(v -> {
+							pending[0]--;
+							if (cause != null) {
+								failure.handle(cause);
+								return;
+							}
+							job.put("pages", job.getLong("pages") + 1).put("bytes", job.getLong("bytes") + written);
+							if (ended[0] && pending[0] == 0) {
+								promise.tryComplete();
+							} else if (pending[0] == maxPending / 2) {
+								rows.resume();
+							}
+						});
+					});
+				});
+
+				rows.endHandler(v -> {
+					connection.close();
+					ended[0] = true;
+					if (pending[0] == 0) {
+						promise.tryComplete();
+					}
+				});
+			});
+		});
+		return promise.future();
+	}
+
+	// page names become file names as is, as static servers map /wiki/<name> to the decoded path
+	private static boolean isExportable(String name) {
+		return !name.isEmpty() && !name.startsWith(".") && name.indexOf('/') < 0 && name.indexOf('\\') < 0
+				&& name.indexOf('\0') < 0;
+	}
+
+	private long writePage(String name, String markdown, String html) {
+		final Map<String, Object> data = new HashMap<>();
+		data.put("title", name);
+		data.put("content", html != null ? html : MarkdownRenderer.render(markdown));
+		data.put("timestamp", new Date().toString());
+		data.put("exported", true);
+		return write(directory.resolve(PAGES_DIRECTORY).resolve(name + PAGE_SUFFIX), render("page.ftl", data));
+	}
+
+	// the index lists every page, and pages no longer in the wiki are removed
+	private Future<Void> exportIndex(JsonObject job, ForkJoinPool pool) {
+		final Promise<Void> promise = Promise.promise();
+		final Context context = vertx.getOrCreateContext();
+		dbClient.query(sqlQueries.get(SqlQuery.ALL_PAGES), res -> {
+			if (res.failed()) {
+				promise.fail(res.cause());
+				return;
+			}
+			final List<String> names = res.result().getResults().stream().map(row -> row.getString(0)).sorted()
+					.collect(Collectors.toList());
+			pool.execute(() -> {
+				try {
+					final Map<String, Object> data = new HashMap<>();
+					data.put("title", "Wiki Home");
+					data.put("pages", names);
+					data.put("canCreatePage", false);
+					data.put("exported", true);
+					final long bytes = write(directory.resolve("index" + PAGE_SUFFIX), render("index.ftl", data));
+					final long removed = removeDeletedPages(names.stream().collect(Collectors.toSet()));
+					context.runOnContext(v -> {
+						job.put("bytes", job.getLong("bytes") + bytes).put("removed", removed);
+						promise.complete();
+					});
+				} catch (RuntimeException e) {
+					context.runOnContext(v -> promise.fail(e));
+				}
+			});
+		});
+		return promise.future();
+	}
+
+	private long removeDeletedPages(Set<String> names) {
+		long removed = 0;
+		final Path pages = directory.resolve(PAGES_DIRECTORY);
+		if (!Files.isDirectory(pages)) {
+			return removed;
+		}
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(pages, "*" + PAGE_SUFFIX)) {
+			for (Path file : files) {
+				final String fileName = file.getFileName().toString();
+				if (!names.contains(fileName.substring(0, fileName.length() - PAGE_SUFFIX.length()))) {
+					Files.deleteIfExists(file);
+					Files.deleteIfExists(gzipSibling(file));
+					removed++;
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return removed;
+	}
+
+	private String render(String template, Map<String, Object> data) {
+		try {
+			final Template compiled = templates.getTemplate(template);
+			final StringWriter html = new StringWriter();
+			compiled.process(data, html);
+			return html.toString();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (TemplateException e) {
+			throw new IllegalStateException("Could not render " + template, e);
+		}
+	}
+
+	// files are replaced atomically, so that a server never reads a partly written page
+	private static long write(Path file, String html) {
+		final byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
+		final ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 3 + 64);
+		try {
+			try (Writer gzip = new OutputStreamWriter(new GZIPOutputStream(compressed) {
+				{
+					def.setLevel(Deflater.BEST_COMPRESSION);
+				}
+			}, StandardCharsets.UTF_8)) {
+				gzip.write(html);
+			}
+			Files.createDirectories(file.getParent());
+			replace(file, bytes);
+			replace(gzipSibling(file), compressed.toByteArray());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.length + compressed.size();
+	}
+
+	private static void replace(Path file, byte[] bytes) throws IOException {
+		final Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		Files.write(temporary, bytes);
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static Path gzipSibling(Path file) {
+		return file.resolveSibling(file.getFileName() + ".gz");
+	}
+
+	private Future<Void> saveState(JsonObject job) {
+		final Promise<Void> promise = Promise.promise();
+		final JsonObject state = new JsonObject().put("lastExportId", job.getString("id"))
+				.put("lastExportStartedAt", job.getLong("startedAt"));
+		vertx.fileSystem().mkdirs(directory.toString(), mkdirs -> {
+			if (mkdirs.succeeded()) {
+				vertx.fileSystem().writeFile(directory.resolve(STATE_FILE).toString(), state.toBuffer(), promise);
+			} else {
+				promise.fail(mkdirs.cause());
+			}
+		});
+		return promise.future();
+	}
+}
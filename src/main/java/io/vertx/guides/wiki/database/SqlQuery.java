@@ -3,7 +3,22 @@ package io.vertx.guides.wiki.database;
 enum SqlQuery {
 
 	CREATE_PAGES_TABLE("create-pages-table"), ALL_PAGES("all-pages"), ALL_PAGES_DATA("all-pages-data"), GET_PAGE("get-page"), GET_PAGE_BY_ID("get-page-by-id"),
-	CREATE_PAGE("create-page"), SAVE_PAGE("save-page"), DELETE_PAGE("delete-page");
+	CREATE_PAGE("create-page"), SAVE_PAGE("save-page"), PATCH_PAGE("patch-page"), DELETE_PAGE("delete-page"), ALL_PAGES_IDS("all-pages-ids"),
+	PAGES_COLUMNS("pages-columns"), ADD_PAGES_UPDATED_COLUMN("add-pages-updated-column"), BACKUP_PAGES_SINCE("backup-pages-since"),
+	UPSERT_PAGE("upsert-page"), ADD_PAGES_HTML_COLUMN("add-pages-html-column"), ADD_PAGES_RENDERER_VERSION_COLUMN("add-pages-renderer-version-column"),
+	STALE_RENDERED_PAGES("stale-rendered-pages"), UPDATE_RENDERED_PAGE("update-rendered-page"),
+	ADD_PAGES_CONTENT_ENCODING_COLUMN("add-pages-content-encoding-column"), MISENCODED_PAGES("misencoded-pages"), UPDATE_PAGE_ENCODING("update-page-encoding"),
+	PAGES_SUMMARY("pages-summary"), PAGES_CONTENT("pages-content"), PAGES_RENDERED("pages-rendered"),
+	PAGE_SUMMARY_BY_ID("page-summary-by-id"), PAGE_CONTENT_BY_ID("page-content-by-id"), PAGE_RENDERED_BY_ID("page-rendered-by-id"),
+	PAGES_SUMMARY_BY_IDS("pages-summary-by-ids"), PAGES_CONTENT_BY_IDS("pages-content-by-ids"), PAGES_RENDERED_BY_IDS("pages-rendered-by-ids"),
+	PAGES_HTML("pages-html"), PAGE_HTML_BY_ID("page-html-by-id"), PAGES_HTML_BY_IDS("pages-html-by-ids"),
+	ADD_PAGES_LINKS_INDEXED_COLUMN("add-pages-links-indexed-column"), CREATE_PAGE_LINKS_TABLE("create-page-links-table"),
+	CREATE_PAGE_LINKS_TARGET_INDEX("create-page-links-target-index"), UNINDEXED_LINK_PAGES("unindexed-link-pages"),
+	MARK_LINKS_INDEXED("mark-links-indexed"), DELETE_PAGE_LINKS("delete-page-links"), INSERT_PAGE_LINK("insert-page-link"),
+	BACKLINKS("backlinks"), LINKED_TARGETS("linked-targets"), ORPHAN_PAGES("orphan-pages"), CREATE_PAGE_REVISIONS_TABLE("create-page-revisions-table"),
+	INSERT_PAGE_REVISION("insert-page-revision"), LATEST_PAGE_REVISION("latest-page-revision"),
+	PAGE_REVISIONS("page-revisions"), PAGE_REVISION_CHAIN("page-revision-chain"), DELETE_PAGE_REVISIONS("delete-page-revisions"),
+	TABLES_OF_OTHER_TYPE("tables-of-other-type"), PAGES_MAX_ID("pages-max-id"), EXPORT_PAGES_SINCE("export-pages-since");
 
 	private final String key;
 
@@ -0,0 +1,96 @@
+package io.vertx.guides.wiki.database;
+
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_STORAGE_CACHE_SIZE;
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_STORAGE_LOG_SIZE;
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_STORAGE_WRITE_DELAY;
+import static io.vertx.guides.wiki.database.DatabaseConstants.DEFAULT_WIKIDB_STORAGE_CACHE_SIZE;
+import static io.vertx.guides.wiki.database.DatabaseConstants.DEFAULT_WIKIDB_STORAGE_LOG_SIZE;
+import static io.vertx.guides.wiki.database.DatabaseConstants.DEFAULT_WIKIDB_STORAGE_WRITE_DELAY;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * HSQLDB storage layouts of a file database, selected with {@code wikidb.storage.profile}. In every
+ * profile, committed transactions are written to the .log file, which is synced every
+ * {@code wikidb.storage.write_delay} milliseconds: a crash loses at most that much of the latest
+ * commits, and 0 syncs each commit at the cost of write latency. The .log is folded into the
+ * database files by a checkpoint once it reaches {@code wikidb.storage.log_size} megabytes.
+ * The settings are persisted by HSQLDB and reapplied at each start, tables of another type being
+ * converted, which rewrites them once.
+ */
+enum StorageProfile {
+
+	/**
+	 * MEMORY tables, HSQLDB's default: every row lives on the heap, checkpoints rewrite the whole
+	 * .script file and startup replays it. Fast reads, but heap use and startup time grow with the
+	 * wiki. Page bodies are CLOBs, hence kept in the .lobs file whatever the profile.
+	 */
+	MEMORY("memory", "MEMORY", false),
+
+	/**
+	 * CACHED tables: rows live in the .data file with a cache of {@code wikidb.storage.cache_size}
+	 * kilobytes on the heap, checkpoints only write changed rows and defragment the file when a
+	 * fifth of it is wasted. Heap use and startup time stay flat, reads of uncached rows hit the disk.
+	 */
+	CACHED("cached", "CACHED", false),
+
+	/**
+	 * CACHED tables, with a LOB store of 1 kB units (instead of 32 kB, which wastes most of the space
+	 * taken by small pages) and compressed LOBs. HSQLDB only accepts these LOB settings while the
+	 * database holds no LOB, so they apply to new databases only.
+	 */
+	CACHED_WITH_LOB_STORE("cached-with-lob-store", "CACHED", true);
+
+	private static final int DEFRAG_PERCENT = 20;
+
+	private final String name;
+	private final String tableType;
+	private final boolean lobStore;
+
+	StorageProfile(String name, String tableType, boolean lobStore) {
+		this.name = name;
+		this.tableType = tableType;
+		this.lobStore = lobStore;
+	}
+
+	static StorageProfile of(String name) {
+		return Arrays.stream(values()).filter(profile -> profile.name.equals(name)).findFirst()
+				.orElseThrow(() -> new IllegalArgumentException("Unsupported storage profile: " + name));
+	}
+
+	String tableType() {
+		return tableType;
+	}
+
+	/** Statements applying the profile, to run before the tables are created. */
+	List<String> settings(JsonObject config) {
+		final List<String> settings = new ArrayList<>();
+		settings.add("set database default table type " + tableType);
+		settings.add("set files write delay " + config.getInteger(CONFIG_WIKIDB_STORAGE_WRITE_DELAY, DEFAULT_WIKIDB_STORAGE_WRITE_DELAY) + " millis");
+		settings.add("set files log size " + config.getInteger(CONFIG_WIKIDB_STORAGE_LOG_SIZE, DEFAULT_WIKIDB_STORAGE_LOG_SIZE));
+		if ("CACHED".equals(tableType)) {
+			settings.add("set files cache size " + config.getInteger(CONFIG_WIKIDB_STORAGE_CACHE_SIZE, DEFAULT_WIKIDB_STORAGE_CACHE_SIZE));
+			settings.add("set files defrag " + DEFRAG_PERCENT);
+		}
+		return settings;
+	}
+
+	/** LOB store statements, rejected by HSQLDB once the database holds LOBs. */
+	List<String> lobSettings() {
+		return lobStore ? Arrays.asList("set files lob scale 1", "set files lob compressed true") : Collections.emptyList();
+	}
+
+	String convertTable(String table) {
+		return "set table \"" + table + "\" type " + tableType;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -10,6 +10,7 @@ import io.vertx.codegen.annotations.VertxGen;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.reactivex.ext.jdbc.JDBCClient;
@@ -20,27 +21,98 @@ public interface WikiDatabaseService {
 	@Fluent
 	WikiDatabaseService fetchAllPages(Handler<AsyncResult<JsonArray>> resultHandler);
 
+	@Fluent
+	WikiDatabaseService fetchPageNames(String prefix, int limit, Handler<AsyncResult<JsonArray>> resultHandler);
+
 	@Fluent
 	WikiDatabaseService fetchAllPagesData(Handler<AsyncResult<List<JsonObject>>> resultHandler);
 	
+	/**
+	 * Pages restricted to the given fields among {@code id}, {@code name}, {@code updated},
+	 * {@code markdown} and {@code html}; only the columns these fields need are read.
+	 */
+	@Fluent
+	WikiDatabaseService fetchPagesFields(List<String> fields, Handler<AsyncResult<List<JsonObject>>> resultHandler);
+
+	@Fluent
+	WikiDatabaseService fetchPageFields(int id, List<String> fields, Handler<AsyncResult<JsonObject>> resultHandler);
+
+	/**
+	 * Pages of the given ids, restricted to the given fields, read with a single query: {@code pages}
+	 * holds them in the order of the ids (duplicates removed) and {@code missing} the unknown ids.
+	 */
+	@Fluent
+	WikiDatabaseService fetchPagesByIds(List<Integer> ids, List<String> fields, Handler<AsyncResult<JsonObject>> resultHandler);
+
 	@Fluent
 	WikiDatabaseService fetchPage(String name, Handler<AsyncResult<JsonObject>> resultHandler);
 
 	@Fluent
 	WikiDatabaseService fetchPageById(int id, Handler<AsyncResult<JsonObject>> resultHandler);
 	
+	/** Names of the pages linking to the named page. */
+	@Fluent
+	WikiDatabaseService fetchBacklinks(String name, Handler<AsyncResult<JsonArray>> resultHandler);
+
+	/** Names of the pages no page links to. */
+	@Fluent
+	WikiDatabaseService fetchOrphanPages(Handler<AsyncResult<JsonArray>> resultHandler);
+
+	/** Revisions of a page, latest first, without their content. */
+	@Fluent
+	WikiDatabaseService fetchPageHistory(int id, Handler<AsyncResult<JsonArray>> resultHandler);
+
+	@Fluent
+	WikiDatabaseService fetchPageRevision(int id, int revision, Handler<AsyncResult<JsonObject>> resultHandler);
+
+	/** Line diff between two revisions of a page, as a unified diff without hunk headers. */
+	@Fluent
+	WikiDatabaseService fetchPageDiff(int id, int fromRevision, int toRevision, Handler<AsyncResult<JsonObject>> resultHandler);
+
 	@Fluent
 	WikiDatabaseService createPage(String title, String markdown, Handler<AsyncResult<Void>> resultHandler);
 
 	@Fluent
 	WikiDatabaseService savePage(int id, String markdown, Handler<AsyncResult<Void>> resultHandler);
 
+	/**
+	 * Applies a line delta to a page last updated at {@code base}: an array of operations, a
+	 * positive number copying that many lines, a negative one skipping them and a string inserting
+	 * a line. The {@code status} of the result is {@code patched} (with the new {@code updated}
+	 * time), {@code not-found}, {@code conflict} when the page was updated since, or
+	 * {@code invalid} (with an {@code error}).
+	 */
+	@Fluent
+	WikiDatabaseService patchPage(int id, long base, JsonArray delta, Handler<AsyncResult<JsonObject>> resultHandler);
+
 	@Fluent
 	WikiDatabaseService deletePage(int id, Handler<AsyncResult<Void>> resultHandler);
 
+	@Fluent
+	WikiDatabaseService startBackup(JsonObject options, Handler<AsyncResult<JsonObject>> resultHandler);
+
+	@Fluent
+	WikiDatabaseService fetchBackupStatus(String jobId, Handler<AsyncResult<JsonObject>> resultHandler);
+
+	@Fluent
+	WikiDatabaseService startImport(JsonObject options, Handler<AsyncResult<JsonObject>> resultHandler);
+
+	@Fluent
+	WikiDatabaseService fetchImportStatus(String jobId, Handler<AsyncResult<JsonObject>> resultHandler);
+
+	/** Starts a static HTML export of the wiki, incremental when the options say so. */
+	@Fluent
+	WikiDatabaseService startExport(JsonObject options, Handler<AsyncResult<JsonObject>> resultHandler);
+
+	@Fluent
+	WikiDatabaseService fetchExportStatus(String jobId, Handler<AsyncResult<JsonObject>> resultHandler);
+
+	@Fluent
+	WikiDatabaseService fetchStatistics(Handler<AsyncResult<JsonObject>> resultHandler);
+
 	@GenIgnore
-	static WikiDatabaseService create(JDBCClient dbClient, Map<SqlQuery, String> sqlQueries, Handler<AsyncResult<WikiDatabaseService>> readyHandler) {
-	  return new WikiDatabaseServiceImpl(dbClient, sqlQueries, readyHandler);
+	static WikiDatabaseService create(io.vertx.reactivex.core.Vertx vertx, JDBCClient dbClient, Map<SqlQuery, String> sqlQueries, JsonObject config, Handler<AsyncResult<WikiDatabaseService>> readyHandler) {
+	  return new WikiDatabaseServiceImpl(vertx, dbClient, sqlQueries, config, readyHandler);
 	}
 	
 	
@@ -48,4 +120,9 @@ public interface WikiDatabaseService {
 	static WikiDatabaseService createProxy(Vertx vertx, String address) {
 		return new WikiDatabaseServiceVertxEBProxy(vertx, address);
 	}
+
+	@GenIgnore
+	static WikiDatabaseService createProxy(Vertx vertx, String address, DeliveryOptions options) {
+		return new WikiDatabaseServiceVertxEBProxy(vertx, address, options);
+	}
 }
@@ -1,47 +1,140 @@
 package io.vertx.guides.wiki.database;
 
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_CONTENT_ENCODING;
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_JDBC_URL;
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_RENDER_ON_WRITE;
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_REVISIONS_SNAPSHOT_INTERVAL;
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_SHARD_INDEX;
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_STORAGE_PROFILE;
+import static io.vertx.guides.wiki.database.DatabaseConstants.DEFAULT_WIKIDB_CONTENT_ENCODING;
+import static io.vertx.guides.wiki.database.DatabaseConstants.DEFAULT_WIKIDB_JDBC_URL;
+import static io.vertx.guides.wiki.database.DatabaseConstants.DEFAULT_WIKIDB_RENDER_ON_WRITE;
+import static io.vertx.guides.wiki.database.DatabaseConstants.DEFAULT_WIKIDB_REVISIONS_SNAPSHOT_INTERVAL;
+import static io.vertx.guides.wiki.database.DatabaseConstants.DEFAULT_WIKIDB_STORAGE_PROFILE;
+import static io.vertx.guides.wiki.database.DatabaseConstants.WIKIDB_PAGE_EVENTS_ADDRESS;
+import static io.vertx.guides.wiki.database.DatabaseConstants.WIKIDB_PAGE_EVENTS_COUNTER;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import io.reactivex.Flowable;
+import io.reactivex.Completable;
+import io.reactivex.Observable;
+import io.reactivex.Single;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.Promise;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.sql.ResultSet;
 import io.vertx.reactivex.SingleHelper;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.eventbus.Message;
+import io.vertx.reactivex.core.shareddata.Counter;
 import io.vertx.reactivex.ext.jdbc.JDBCClient;
 import io.vertx.reactivex.ext.sql.SQLConnection;
 
 public class WikiDatabaseServiceImpl implements WikiDatabaseService {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(WikiDatabaseServiceImpl.class);
+
+	private static final int MAX_LINKED_TARGETS_PER_QUERY = 500;
+	private static final int MAX_CONTENTS_PER_QUERY = 500;
+
+	// columns added after the first release, keyed by the column name reported by INFORMATION_SCHEMA
+	private static final Map<String, SqlQuery> PAGES_COLUMN_UPGRADES = new LinkedHashMap<>();
+	static {
+		PAGES_COLUMN_UPGRADES.put("UPDATED", SqlQuery.ADD_PAGES_UPDATED_COLUMN);
+		PAGES_COLUMN_UPGRADES.put("HTML", SqlQuery.ADD_PAGES_HTML_COLUMN);
+		PAGES_COLUMN_UPGRADES.put("RENDERERVERSION", SqlQuery.ADD_PAGES_RENDERER_VERSION_COLUMN);
+		PAGES_COLUMN_UPGRADES.put("CONTENTENCODING", SqlQuery.ADD_PAGES_CONTENT_ENCODING_COLUMN);
+		PAGES_COLUMN_UPGRADES.put("LINKSINDEXED", SqlQuery.ADD_PAGES_LINKS_INDEXED_COLUMN);
+	}
+
+	// tables and indexes added after the first release, created when missing
+	private static final List<SqlQuery> SCHEMA_ADDITIONS = Arrays.asList(SqlQuery.CREATE_PAGE_LINKS_TABLE,
+			SqlQuery.CREATE_PAGE_LINKS_TARGET_INDEX, SqlQuery.CREATE_PAGE_REVISIONS_TABLE);
 	
+	private final Vertx vertx;
+	private final String instanceId;
 	private final JDBCClient dbClient;
 	private final Map<SqlQuery, String> sqlQueries;
-
+	private final PageNameIndex pageNameIndex = new PageNameIndex();
+	private final SingleFlight<String, JsonObject> pageByNameLookups = new SingleFlight<>(JsonObject::copy);
+	private final SingleFlight<Integer, JsonObject> pageByIdLookups = new SingleFlight<>(JsonObject::copy);
+	private final WorkloadScheduler scheduler;
+	private final BackupEngine backupEngine;
+	private final ImportEngine importEngine;
+	private final SiteExportEngine exportEngine;
+	private final PageRenderingJob renderingJob;
+	private final boolean renderOnWrite;
+	private final String contentEncoding;
+	private final ContentEncodingJob contentEncodingJob;
+	private final LinkIndexJob linkIndexJob;
+	private final PageRevisions pageRevisions;
+	private final StorageProfile storageProfile;
+	private final boolean storageFiles;
+	private final boolean sharded;
+	private final int shard;
+	private final int shards;
 	
 	
-	public WikiDatabaseServiceImpl(JDBCClient dbClient, Map<SqlQuery, String> sqlQueries, Handler<AsyncResult<WikiDatabaseService>> readyHandler) {
+	public WikiDatabaseServiceImpl(Vertx vertx, JDBCClient dbClient, Map<SqlQuery, String> sqlQueries, JsonObject config, Handler<AsyncResult<WikiDatabaseService>> readyHandler) {
+		this(vertx, dbClient, sqlQueries, config, UUID.randomUUID().toString(), readyHandler);
+	}
+
+	/**
+	 * The shards of a wiki share the origin of their page events: they ignore the events of each other,
+	 * which are about other databases.
+	 */
+	WikiDatabaseServiceImpl(Vertx vertx, JDBCClient dbClient, Map<SqlQuery, String> sqlQueries, JsonObject config,
+			String instanceId, Handler<AsyncResult<WikiDatabaseService>> readyHandler) {
+		this.vertx = vertx;
+		this.instanceId = instanceId;
 		this.dbClient = dbClient;
 		this.sqlQueries = sqlQueries;
+		this.scheduler = new WorkloadScheduler(config);
+		this.backupEngine = new BackupEngine(vertx.getDelegate(), dbClient.getDelegate(), sqlQueries, config, scheduler);
+		this.importEngine = new ImportEngine(vertx.getDelegate(), dbClient, sqlQueries, config, this::afterImport);
+		this.exportEngine = new SiteExportEngine(vertx.getDelegate(), dbClient.getDelegate(), sqlQueries, config);
+		this.renderingJob = new PageRenderingJob(vertx, dbClient, sqlQueries, scheduler);
+		this.renderOnWrite = config.getBoolean(CONFIG_WIKIDB_RENDER_ON_WRITE, DEFAULT_WIKIDB_RENDER_ON_WRITE);
+		this.contentEncoding = config.getString(CONFIG_WIKIDB_CONTENT_ENCODING, DEFAULT_WIKIDB_CONTENT_ENCODING);
+		if (!PageContentCodec.isSupported(contentEncoding)) {
+			throw new IllegalArgumentException("Unsupported page content encoding: " + contentEncoding);
+		}
+		this.contentEncodingJob = new ContentEncodingJob(vertx, dbClient, sqlQueries, scheduler, contentEncoding);
+		this.linkIndexJob = new LinkIndexJob(vertx, dbClient, sqlQueries, scheduler);
+		this.pageRevisions = new PageRevisions(vertx, dbClient, sqlQueries,
+				config.getInteger(CONFIG_WIKIDB_REVISIONS_SNAPSHOT_INTERVAL, DEFAULT_WIKIDB_REVISIONS_SNAPSHOT_INTERVAL), contentEncoding);
+		this.storageProfile = StorageProfile.of(config.getString(CONFIG_WIKIDB_STORAGE_PROFILE, DEFAULT_WIKIDB_STORAGE_PROFILE));
+		final String url = config.getString(CONFIG_WIKIDB_JDBC_URL, DEFAULT_WIKIDB_JDBC_URL);
+		// in-memory and resource databases have no files to lay out
+		this.storageFiles = url.startsWith("jdbc:hsqldb:") && !url.startsWith("jdbc:hsqldb:mem:") && !url.startsWith("jdbc:hsqldb:res:");
+		this.sharded = PageSharding.isShard(config);
+		this.shard = config.getInteger(CONFIG_WIKIDB_SHARD_INDEX, 0);
+		this.shards = PageSharding.shards(config);
+		vertx.eventBus().<JsonObject>consumer(WIKIDB_PAGE_EVENTS_ADDRESS, this::onPageEvent);
 		
 		dbClient.getConnection(ar -> {
 			if(ar.succeeded()) {
 				SQLConnection sqlConnection = ar.result();
-				sqlConnection.execute(sqlQueries.get(SqlQuery.CREATE_PAGES_TABLE), createHandler -> {
+				applyStorageProfile(sqlConnection, config).subscribe(() -> createTables(sqlConnection, readyHandler), t -> {
 					sqlConnection.close();
-					if(createHandler.succeeded()) {
-						readyHandler.handle(Future.succeededFuture(this));
-					} else {
-						LOGGER.error("Database preparation error", createHandler.cause());
-						readyHandler.handle(Future.failedFuture(createHandler.cause()));
-					}
+					LOGGER.error("Could not apply the " + storageProfile + " storage profile", t);
+					readyHandler.handle(Future.failedFuture(t));
 				});
 			} else {
 				LOGGER.error("Could not open a database connection", ar.cause());
@@ -50,30 +143,202 @@ public class WikiDatabaseServiceImpl implements WikiDatabaseService {
 		});
 	}
 
+	private Completable applyStorageProfile(SQLConnection sqlConnection, JsonObject config) {
+		if (!storageFiles) {
+			return Completable.complete();
+		}
+		LOGGER.info("applying the " + storageProfile + " storage profile");
+		return sqlConnection.rxBatch(storageProfile.settings(config)).ignoreElement()
+				.andThen(Observable.fromIterable(storageProfile.lobSettings())
+						.concatMapCompletable(setting -> sqlConnection.rxExecute(setting)
+								.doOnError(t -> LOGGER.info("keeping the LOB store settings of the database: " + t.getMessage()))
+								.onErrorComplete()));
+	}
+
+	// tables created before the profile was selected
+	private Completable convertTables(SQLConnection sqlConnection) {
+		if (!storageFiles) {
+			return Completable.complete();
+		}
+		return sqlConnection.rxQueryWithParams(sqlQueries.get(SqlQuery.TABLES_OF_OTHER_TYPE), new JsonArray().add(storageProfile.tableType()))
+				.flatMapCompletable(tables -> Observable.fromIterable(tables.getResults())
+						.map(row -> row.getString(0))
+						.doOnNext(table -> LOGGER.info("converting table " + table + " to " + storageProfile.tableType()))
+						.concatMapCompletable(table -> sqlConnection.rxExecute(storageProfile.convertTable(table))));
+	}
+
+	// a shard allocates the ids congruent to its index, from above the largest id it holds
+	private Completable alignPageIds(SQLConnection sqlConnection) {
+		if (!sharded) {
+			return Completable.complete();
+		}
+		return sqlConnection.rxQuery(sqlQueries.get(SqlQuery.PAGES_MAX_ID))
+				.map(result -> {
+					final Integer maxId = result.getResults().get(0).getInteger(0);
+					return PageSharding.nextId(maxId == null ? 0 : maxId, shard, shards);
+				})
+				.flatMapCompletable(nextId -> sqlConnection.rxBatch(PageSharding.identitySettings(nextId, shards)).ignoreElement());
+	}
+
+	private void createTables(SQLConnection sqlConnection, Handler<AsyncResult<WikiDatabaseService>> readyHandler) {
+		sqlConnection.execute(sqlQueries.get(SqlQuery.CREATE_PAGES_TABLE), createHandler -> {
+			if(createHandler.succeeded()) {
+				upgradeSchema(sqlConnection, readyHandler);
+			} else {
+				sqlConnection.close();
+				LOGGER.error("Database preparation error", createHandler.cause());
+				readyHandler.handle(Future.failedFuture(createHandler.cause()));
+			}
+		});
+	}
+
+	private void upgradeSchema(SQLConnection sqlConnection, Handler<AsyncResult<WikiDatabaseService>> readyHandler) {
+		sqlConnection.query(sqlQueries.get(SqlQuery.PAGES_COLUMNS), columnsHandler -> {
+			if(columnsHandler.succeeded()) {
+				final Set<String> existingColumns = columnsHandler.result().getResults().stream()
+						.map(row -> row.getString(0)).collect(Collectors.toSet());
+				final List<String> upgrades = PAGES_COLUMN_UPGRADES.entrySet().stream()
+						.filter(upgrade -> !existingColumns.contains(upgrade.getKey()))
+						.map(upgrade -> sqlQueries.get(upgrade.getValue()))
+						.collect(Collectors.toCollection(ArrayList::new));
+				if(!upgrades.isEmpty()) {
+					LOGGER.info("upgrading Pages table with " + upgrades);
+				}
+				SCHEMA_ADDITIONS.forEach(addition -> upgrades.add(sqlQueries.get(addition)));
+				sqlConnection.batch(upgrades, upgradeHandler -> {
+					if(upgradeHandler.succeeded()) {
+						convertTables(sqlConnection).andThen(alignPageIds(sqlConnection)).subscribe(() -> loadPageNameIndex(sqlConnection, readyHandler), t -> {
+							sqlConnection.close();
+							LOGGER.error("Could not convert the tables to " + storageProfile.tableType() + " or align the page ids", t);
+							readyHandler.handle(Future.failedFuture(t));
+						});
+					} else {
+						sqlConnection.close();
+						LOGGER.error("Database upgrade error", upgradeHandler.cause());
+						readyHandler.handle(Future.failedFuture(upgradeHandler.cause()));
+					}
+				});
+			} else {
+				sqlConnection.close();
+				LOGGER.error("Could not read the Pages table columns", columnsHandler.cause());
+				readyHandler.handle(Future.failedFuture(columnsHandler.cause()));
+			}
+		});
+	}
+
+	private void loadPageNameIndex(SQLConnection sqlConnection, Handler<AsyncResult<WikiDatabaseService>> readyHandler) {
+		sqlConnection.query(sqlQueries.get(SqlQuery.ALL_PAGES_IDS), loadHandler -> {
+			sqlConnection.close();
+			if(loadHandler.succeeded()) {
+				loadHandler.result().getResults().forEach(row -> pageNameIndex.put(row.getInteger(0), row.getString(1)));
+				LOGGER.info("page name index loaded with " + pageNameIndex.size() + " pages");
+				startRewriteJobs();
+				readyHandler.handle(Future.succeededFuture(this));
+			} else {
+				LOGGER.error("Could not load the page name index", loadHandler.cause());
+				readyHandler.handle(Future.failedFuture(loadHandler.cause()));
+			}
+		});
+	}
+
+	private void startRewriteJobs() {
+		contentEncodingJob.start();
+		linkIndexJob.start();
+		if(renderOnWrite) {
+			renderingJob.start();
+		}
+	}
+
+	private Future<Void> afterImport() {
+		startRewriteJobs();
+		return refreshPageNameIndex().map(v -> {
+			publishPageEvent(new JsonObject().put("type", "imported"));
+			return v;
+		});
+	}
+
+	/*
+	 * Page changes are published to every node sharing the event bus (in clustered mode, possibly
+	 * several service instances over the same database) so that their name indexes and pending
+	 * lookups stay coherent, and to the HTTP change feeds, which resume clients from the sequence
+	 * number. Events published by this instance are ignored on reception. The sequence is drawn from
+	 * a shared counter, which is cluster-wide in clustered mode: every service instance numbers its
+	 * events in the same sequence, whichever node a client resumes from.
+	 */
+	private void publishPageEvent(JsonObject event) {
+		vertx.sharedData().rxGetCounter(WIKIDB_PAGE_EVENTS_COUNTER).flatMap(Counter::rxIncrementAndGet).subscribe(
+				seq -> vertx.eventBus().publish(WIKIDB_PAGE_EVENTS_ADDRESS, event.put("origin", instanceId).put("seq", seq)),
+				err -> LOGGER.error("Could not number the page event " + event.encode(), err));
+	}
+
+	private void publishPageEvent(String type, int id, String name) {
+		publishPageEvent(new JsonObject().put("type", type).put("id", id).put("name", name));
+	}
+
+	private void onPageEvent(Message<JsonObject> message) {
+		final JsonObject event = message.body();
+		if (instanceId.equals(event.getString("origin"))) {
+			return;
+		}
+		switch (event.getString("type")) {
+		case "created":
+			forgetLookups(event.getInteger("id"), event.getString("name"));
+			pageNameIndex.put(event.getInteger("id"), event.getString("name"));
+			break;
+		case "saved":
+			forgetLookups(event.getInteger("id"), event.getString("name"));
+			break;
+		case "deleted":
+			forgetLookups(event.getInteger("id"), event.getString("name"));
+			pageNameIndex.remove(event.getInteger("id"));
+			break;
+		case "imported":
+			refreshPageNameIndex();
+			break;
+		default:
+			LOGGER.warn("ignoring unknown page event " + event.encode());
+		}
+	}
+
+	private Future<Void> refreshPageNameIndex() {
+		Promise<Void> promise = Promise.promise();
+		dbClient.query(sqlQueries.get(SqlQuery.ALL_PAGES_IDS), res -> {
+			if(res.succeeded()) {
+				res.result().getResults().forEach(row -> pageNameIndex.put(row.getInteger(0), row.getString(1)));
+				promise.complete();
+			} else {
+				LOGGER.error("Could not refresh the page name index", res.cause());
+				promise.fail(res.cause());
+			}
+		});
+		return promise.future();
+	}
+
 	@Override
 	public WikiDatabaseService fetchAllPages(Handler<AsyncResult<JsonArray>> resultHandler) {
-		LOGGER.info("received request to fetch all pages");
-		
-		dbClient.rxQuery(sqlQueries.get(SqlQuery.ALL_PAGES))
-				.flatMapPublisher(res -> {
-					List<JsonArray> results = res.getResults();
-					return Flowable.fromIterable(results);
-				}).map(json -> json.getString(0))
-				.sorted()
-				.collect(JsonArray::new, JsonArray::add)
-				.subscribe(SingleHelper.toObserver(resultHandler));
-		
+		resultHandler.handle(Future.succeededFuture(pageNameIndex.names()));
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService fetchPageNames(String prefix, int limit, Handler<AsyncResult<JsonArray>> resultHandler) {
+		resultHandler.handle(Future.succeededFuture(pageNameIndex.namesWithPrefix(prefix == null ? "" : prefix, limit)));
 		return this;
 	}
 
 	@Override
 	public WikiDatabaseService fetchPage(String name, Handler<AsyncResult<JsonObject>> resultHandler) {
+		pageByNameLookups.execute(name, handler -> scheduler.execute(Workload.INTERACTIVE, slot -> queryPage(name, slot), handler), resultHandler);
+		return this;
+	}
+
+	private void queryPage(String name, Handler<AsyncResult<JsonObject>> resultHandler) {
 		final JsonArray queryParam = new JsonArray().add(name);
 		dbClient.queryWithParams(sqlQueries.get(SqlQuery.GET_PAGE), queryParam, res -> {
 			if (res.succeeded()) {
 				final JsonObject responseMessage = res.result().getResults().stream().findFirst()
-						.map(firstResult -> new JsonObject().put("found", true).put("id", firstResult.getInteger(0))
-								.put("rawContent", firstResult.getString(1)))
+						.map(firstResult -> withHtml(new JsonObject().put("found", true).put("id", firstResult.getInteger(0))
+								.put("rawContent", PageContentCodec.decode(firstResult.getString(1), firstResult.getString(4))), firstResult.getString(2), firstResult.getInteger(3)))
 						.orElse(new JsonObject().put("found", false));
 				resultHandler.handle(Future.succeededFuture(responseMessage));
 			} else {
@@ -81,71 +346,458 @@ public class WikiDatabaseServiceImpl implements WikiDatabaseService {
 				resultHandler.handle(Future.failedFuture(res.cause()));
 			}
 		});
-		return this;
+	}
+
+	private JsonObject withHtml(JsonObject page, String html, Integer rendererVersion) {
+		final String current = currentHtml(html, rendererVersion);
+		return current == null ? page : page.put("html", current);
+	}
+
+	// the stored HTML, unless rendered by another renderer version or not to be trusted
+	private String currentHtml(String html, Integer rendererVersion) {
+		return renderOnWrite && html != null && rendererVersion != null && rendererVersion == MarkdownRenderer.VERSION ? html : null;
+	}
+
+	/*
+	 * Content, Updated, Html, RendererVersion and ContentEncoding, in the order of create-page and
+	 * save-page. Rendering and encoding run on a worker thread: on the context of the service, a
+	 * large page would hold up every other call.
+	 */
+	private Single<JsonArray> pageColumns(JsonArray data, String markdown, long updated) {
+		return vertx.<JsonArray>rxExecuteBlocking(promise -> promise.complete(encodedColumns(data, markdown, updated)), false)
+				.toSingle();
+	}
+
+	private JsonArray encodedColumns(JsonArray data, String markdown, long updated) {
+		data.add(PageContentCodec.encode(markdown, contentEncoding)).add(updated);
+		if (renderOnWrite) {
+			data.add(MarkdownRenderer.render(markdown)).add(MarkdownRenderer.VERSION);
+		} else {
+			data.addNull().addNull();
+		}
+		final String storedEncoding = PageContentCodec.storedEncoding(contentEncoding);
+		return storedEncoding == null ? data.addNull() : data.add(storedEncoding);
+	}
+
+	// a failure leaves the page to the link index job, the page itself being saved
+	private void indexLinks(int id, long updated, String markdown, Handler<AsyncResult<Void>> resultHandler) {
+		linkIndexJob.index(id, updated, markdown).subscribe(count -> resultHandler.handle(Future.succeededFuture()), t -> {
+			LOGGER.error("Could not index the links of page " + id, t);
+			linkIndexJob.start();
+			resultHandler.handle(Future.succeededFuture());
+		});
+	}
+
+	private void forgetLookups(int id, String name) {
+		pageByIdLookups.forget(id);
+		if (name != null) {
+			pageByNameLookups.forget(name);
+		}
 	}
 
 	@Override
 	public WikiDatabaseService createPage(String title, String markdown, Handler<AsyncResult<Void>> resultHandler) {
-		JsonArray data = new JsonArray().add(title)
-				.add(markdown);
+		scheduler.execute(Workload.INTERACTIVE, handler -> insertPage(title, markdown, handler), resultHandler);
+		return this;
+	}
+
+	private void insertPage(String title, String markdown, Handler<AsyncResult<Void>> resultHandler) {
+		final long updated = System.currentTimeMillis();
+		pageColumns(new JsonArray().add(title), markdown, updated).subscribe(data -> storePage(title, markdown, updated, data, resultHandler), t -> {
+			LOGGER.error("Could not render created page " + title, t);
+			resultHandler.handle(Future.failedFuture(t));
+		});
+	}
+
+	private void storePage(String title, String markdown, long updated, JsonArray data, Handler<AsyncResult<Void>> resultHandler) {
 		dbClient.updateWithParams(sqlQueries.get(SqlQuery.CREATE_PAGE), data, res -> {
 			if (res.succeeded()) {
-				resultHandler.handle(Future.succeededFuture());
+				pageByNameLookups.forget(title);
+				final JsonArray keys = res.result().getKeys();
+				if (keys != null && !keys.isEmpty()) {
+					pageNameIndex.put(keys.getInteger(0), title);
+					publishPageEvent("created", keys.getInteger(0), title);
+					recordCreatedPage(keys.getInteger(0), updated, markdown, resultHandler);
+				} else {
+					indexCreatedPage(title, updated, markdown, resultHandler);
+				}
 			} else {
 				LOGGER.error("Database insert error", res.cause());
 				resultHandler.handle(Future.failedFuture(res.cause()));
 			}
 		});
-		return this;
 	}
 
-	@Override
-	public WikiDatabaseService savePage(int id, String markdown, Handler<AsyncResult<Void>> resultHandler) {
-		JsonArray data = new JsonArray().add(markdown).add(id);
-		dbClient.updateWithParams(sqlQueries.get(SqlQuery.SAVE_PAGE), data, res -> {
+	private void indexCreatedPage(String title, long updated, String markdown, Handler<AsyncResult<Void>> resultHandler) {
+		dbClient.queryWithParams(sqlQueries.get(SqlQuery.GET_PAGE), new JsonArray().add(title), res -> {
 			if (res.succeeded()) {
-				resultHandler.handle(Future.succeededFuture());
+				final Optional<JsonArray> created = res.result().getResults().stream().findFirst();
+				if (created.isPresent()) {
+					pageNameIndex.put(created.get().getInteger(0), title);
+					publishPageEvent("created", created.get().getInteger(0), title);
+					recordCreatedPage(created.get().getInteger(0), updated, markdown, resultHandler);
+				} else {
+					resultHandler.handle(Future.succeededFuture());
+				}
 			} else {
-				LOGGER.error("Database save page ", res.cause());
+				LOGGER.error("Could not index created page " + title, res.cause());
 				resultHandler.handle(Future.failedFuture(res.cause()));
 			}
 		});
+	}
+
+	private void recordCreatedPage(int id, long updated, String markdown, Handler<AsyncResult<Void>> resultHandler) {
+		pageRevisions.created(id, updated, markdown).subscribe(() -> indexLinks(id, updated, markdown, resultHandler), t -> {
+			// the next save starts the history of the page with a snapshot
+			LOGGER.error("Could not record the first revision of page " + id, t);
+			indexLinks(id, updated, markdown, resultHandler);
+		});
+	}
+
+	@Override
+	public WikiDatabaseService savePage(int id, String markdown, Handler<AsyncResult<Void>> resultHandler) {
+		scheduler.execute(Workload.INTERACTIVE, handler -> updatePage(id, markdown, handler), resultHandler);
+		return this;
+	}
+
+	private void updatePage(int id, String markdown, Handler<AsyncResult<Void>> resultHandler) {
+		final long updated = System.currentTimeMillis();
+		pageColumns(new JsonArray(), markdown, updated)
+				.flatMapCompletable(data -> pageRevisions.save(id, updated, markdown, data.add(id))).subscribe(() -> {
+			final String name = pageNameIndex.nameOf(id);
+			forgetLookups(id, name);
+			publishPageEvent("saved", id, name);
+			indexLinks(id, updated, markdown, resultHandler);
+		}, t -> {
+			LOGGER.error("Database save page ", t);
+			resultHandler.handle(Future.failedFuture(t));
+		});
+	}
+
+	@Override
+	public WikiDatabaseService patchPage(int id, long base, JsonArray delta, Handler<AsyncResult<JsonObject>> resultHandler) {
+		scheduler.execute(Workload.INTERACTIVE, handler -> applyPatch(id, base, delta, handler), resultHandler);
 		return this;
 	}
 
+	private void applyPatch(int id, long base, JsonArray delta, Handler<AsyncResult<JsonObject>> resultHandler) {
+		final long updated = System.currentTimeMillis();
+		pageRevisions.patch(id, base, updated, delta, markdown -> pageColumns(new JsonArray(), markdown, updated).map(data -> data.add(id)))
+				.subscribe(result -> {
+					final String markdown = (String) result.remove("markdown");
+					if (markdown == null) {
+						resultHandler.handle(Future.succeededFuture(result));
+						return;
+					}
+					final String name = pageNameIndex.nameOf(id);
+					forgetLookups(id, name);
+					publishPageEvent("saved", id, name);
+					indexLinks(id, updated, markdown, indexed -> resultHandler.handle(Future.succeededFuture(result)));
+				}, t -> {
+					LOGGER.error("Database patch page ", t);
+					resultHandler.handle(Future.failedFuture(t));
+				});
+	}
+
 	@Override
 	public WikiDatabaseService deletePage(int id, Handler<AsyncResult<Void>> resultHandler) {
+		scheduler.execute(Workload.INTERACTIVE, handler -> removePage(id, handler), resultHandler);
+		return this;
+	}
+
+	private void removePage(int id, Handler<AsyncResult<Void>> resultHandler) {
 		final JsonArray data = new JsonArray().add(id);
 		dbClient.updateWithParams(sqlQueries.get(SqlQuery.DELETE_PAGE), data, res -> {
 			if (res.succeeded()) {
-				resultHandler.handle(Future.succeededFuture());
+				final String name = pageNameIndex.nameOf(id);
+				forgetLookups(id, name);
+				pageNameIndex.remove(id);
+				publishPageEvent("deleted", id, name);
+				dbClient.rxUpdateWithParams(sqlQueries.get(SqlQuery.DELETE_PAGE_LINKS), data).ignoreElement()
+						.mergeWith(pageRevisions.delete(id))
+						.subscribe(() -> resultHandler.handle(Future.succeededFuture()), t -> {
+							// leftovers are unreachable: the link queries join the linking page, ids are not reused
+							LOGGER.warn("Could not delete the links or revisions of page " + id, t);
+							resultHandler.handle(Future.succeededFuture());
+						});
 			} else {
 				LOGGER.error("failed to delete message", res.cause());
 				resultHandler.handle(Future.failedFuture(res.cause()));
 			}
 		});
+	}
+
+	@Override
+	public WikiDatabaseService fetchPageHistory(int id, Handler<AsyncResult<JsonArray>> resultHandler) {
+		scheduler.schedule(Workload.INTERACTIVE, pageRevisions.history(id)).subscribe(SingleHelper.toObserver(resultHandler));
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService fetchPageRevision(int id, int revision, Handler<AsyncResult<JsonObject>> resultHandler) {
+		scheduler.schedule(Workload.INTERACTIVE, pageRevisions.revision(id, revision).map(found -> found.put("found", true).put("id", id))
+				.toSingle(new JsonObject().put("found", false).put("id", id)))
+				.subscribe(SingleHelper.toObserver(resultHandler));
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService fetchPageDiff(int id, int fromRevision, int toRevision, Handler<AsyncResult<JsonObject>> resultHandler) {
+		scheduler.schedule(Workload.INTERACTIVE, pageRevisions.revision(id, fromRevision)
+				.flatMap(from -> pageRevisions.revision(id, toRevision)
+						// the longest common subsequence of the two revisions is computed on a worker thread
+						.flatMap(to -> vertx.<JsonArray>rxExecuteBlocking(promise -> promise.complete(
+								PageDelta.unified(from.getString("markdown"), to.getString("markdown"))), false)))
+				.map(lines -> new JsonObject().put("found", true).put("id", id).put("from", fromRevision).put("to", toRevision)
+						.put("lines", lines))
+				.toSingle(new JsonObject().put("found", false).put("id", id)))
+				.subscribe(SingleHelper.toObserver(resultHandler));
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService fetchBacklinks(String name, Handler<AsyncResult<JsonArray>> resultHandler) {
+		scheduler.schedule(Workload.INTERACTIVE, dbClient.rxQueryWithParams(sqlQueries.get(SqlQuery.BACKLINKS), new JsonArray().add(name))
+				.map(result -> new JsonArray(result.getResults().stream().map(row -> row.getString(0)).collect(Collectors.toList()))))
+				.subscribe(SingleHelper.toObserver(resultHandler));
+		return this;
+	}
+
+	/**
+	 * The names, among the given ones, that pages of this database link to. Sharded storage asks
+	 * every shard about the orphan pages of each shard, pages linking to them possibly being
+	 * elsewhere.
+	 */
+	void fetchLinkedTargets(List<String> names, Handler<AsyncResult<JsonArray>> resultHandler) {
+		final String query = sqlQueries.get(SqlQuery.LINKED_TARGETS);
+		final List<List<String>> chunks = new ArrayList<>();
+		for (int from = 0; from < names.size(); from += MAX_LINKED_TARGETS_PER_QUERY) {
+			chunks.add(names.subList(from, Math.min(names.size(), from + MAX_LINKED_TARGETS_PER_QUERY)));
+		}
+		scheduler.schedule(Workload.BULK, Observable.fromIterable(chunks)
+				.concatMapSingle(chunk -> dbClient.rxQueryWithParams(inList(query, chunk.size()), new JsonArray(new ArrayList<>(chunk))))
+				.flatMapIterable(result -> result.getResults())
+				.map(row -> row.getString(0))
+				.collect(JsonArray::new, JsonArray::add))
+				.subscribe(SingleHelper.toObserver(resultHandler));
+	}
+
+	@Override
+	public WikiDatabaseService fetchOrphanPages(Handler<AsyncResult<JsonArray>> resultHandler) {
+		scheduler.schedule(Workload.BULK, dbClient.rxQuery(sqlQueries.get(SqlQuery.ORPHAN_PAGES))
+				.map(result -> new JsonArray(result.getResults().stream().map(row -> row.getString(0)).collect(Collectors.toList()))))
+				.subscribe(SingleHelper.toObserver(resultHandler));
 		return this;
 	}
 
 	@Override
 	public WikiDatabaseService fetchAllPagesData(Handler<AsyncResult<List<JsonObject>>> resultHandler) {
-		dbClient.rxQuery(sqlQueries.get(SqlQuery.ALL_PAGES_DATA))
+		scheduler.schedule(Workload.BULK, dbClient.rxQuery(sqlQueries.get(SqlQuery.ALL_PAGES_DATA))
 				.map(ResultSet::getRows)
+				.map(rows -> {
+					rows.forEach(row -> row.put("CONTENT", PageContentCodec.decode(row.getString("CONTENT"), row.getString("CONTENTENCODING"))));
+					return rows;
+				}))
+				.subscribe(SingleHelper.toObserver(resultHandler));
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService fetchPagesFields(List<String> fields, Handler<AsyncResult<List<JsonObject>>> resultHandler) {
+		scheduler.schedule(Workload.BULK, dbClient.rxQuery(sqlQueries.get(projection(fields, SqlQuery.PAGES_SUMMARY, SqlQuery.PAGES_CONTENT,
+				SqlQuery.PAGES_RENDERED, SqlQuery.PAGES_HTML)))
+				.flatMap(result -> project(result.getResults(), fields)))
+				.subscribe(SingleHelper.toObserver(resultHandler));
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService fetchPageFields(int id, List<String> fields, Handler<AsyncResult<JsonObject>> resultHandler) {
+		scheduler.schedule(Workload.INTERACTIVE, dbClient.rxQueryWithParams(sqlQueries.get(projection(fields, SqlQuery.PAGE_SUMMARY_BY_ID, SqlQuery.PAGE_CONTENT_BY_ID,
+				SqlQuery.PAGE_RENDERED_BY_ID, SqlQuery.PAGE_HTML_BY_ID)), new JsonArray().add(id))
+				.flatMap(result -> result.getResults().isEmpty() ? Single.just(new JsonObject().put("found", false).put("id", id))
+						: project(result.getResults(), fields).map(pages -> pages.get(0).put("found", true))))
 				.subscribe(SingleHelper.toObserver(resultHandler));
 		return this;
 	}
 
+	@Override
+	public WikiDatabaseService fetchPagesByIds(List<Integer> ids, List<String> fields, Handler<AsyncResult<JsonObject>> resultHandler) {
+		final List<Integer> distinctIds = ids.stream().distinct().collect(Collectors.toList());
+		if (distinctIds.isEmpty()) {
+			resultHandler.handle(Future.succeededFuture(new JsonObject().put("pages", new JsonArray()).put("missing", new JsonArray())));
+			return this;
+		}
+		final String query = sqlQueries.get(projection(fields, SqlQuery.PAGES_SUMMARY_BY_IDS, SqlQuery.PAGES_CONTENT_BY_IDS,
+				SqlQuery.PAGES_RENDERED_BY_IDS, SqlQuery.PAGES_HTML_BY_IDS));
+		scheduler.schedule(Workload.INTERACTIVE, dbClient.rxQueryWithParams(inList(query, distinctIds.size()), new JsonArray(new ArrayList<>(distinctIds)))
+				.flatMap(result -> {
+					final List<JsonArray> rows = result.getResults();
+					final List<Integer> found = rows.stream().map(row -> row.getInteger(0)).collect(Collectors.toList());
+					return project(rows, fields).map(projected -> {
+						final Map<Integer, JsonObject> pagesById = new HashMap<>();
+						for (int i = 0; i < found.size(); i++) {
+							pagesById.put(found.get(i), projected.get(i));
+						}
+						final JsonArray pages = new JsonArray();
+						final JsonArray missing = new JsonArray();
+						for (Integer id : distinctIds) {
+							if (pagesById.containsKey(id)) {
+								pages.add(pagesById.get(id));
+							} else {
+								missing.add(id);
+							}
+						}
+						return new JsonObject().put("pages", pages).put("missing", missing);
+					});
+				}))
+				.subscribe(SingleHelper.toObserver(resultHandler));
+		return this;
+	}
+
+	// expands the single placeholder of an "in (?)" query to one per value
+	private static String inList(String query, int count) {
+		return query.replace("in (?)", "in (" + String.join(", ", Collections.nCopies(count, "?")) + ")");
+	}
+
+	/*
+	 * The projections select Id, Name, Updated, then Content, ContentEncoding when the markdown is
+	 * asked for, then Html, RendererVersion when the HTML is.
+	 */
+	private static SqlQuery projection(List<String> fields, SqlQuery summary, SqlQuery content, SqlQuery rendered, SqlQuery html) {
+		if (fields.contains("html")) {
+			return fields.contains("markdown") ? rendered : html;
+		}
+		return fields.contains("markdown") ? content : summary;
+	}
+
+	/*
+	 * Projects the rows of a projection query. The content of the pages whose stored HTML is stale is
+	 * only read then, for them to be rendered; decoding and rendering run on a worker thread.
+	 */
+	private Single<List<JsonObject>> project(List<JsonArray> rows, List<String> fields) {
+		final boolean markdown = fields.contains("markdown");
+		final int htmlColumn = markdown ? 5 : 3;
+		final List<Integer> stale = !fields.contains("html") ? Collections.emptyList() : rows.stream()
+				.filter(row -> currentHtml(row.getString(htmlColumn), row.getInteger(htmlColumn + 1)) == null)
+				.map(row -> row.getInteger(0)).collect(Collectors.toList());
+		if (!markdown && stale.isEmpty()) {
+			return Single.just(rows.stream().map(row -> project(row, fields, Collections.emptyMap())).collect(Collectors.toList()));
+		}
+		return contents(markdown ? Collections.emptyList() : stale)
+				.flatMap(contents -> vertx.<List<JsonObject>>rxExecuteBlocking(promise -> promise.complete(rows.stream()
+						.map(row -> project(row, fields, contents)).collect(Collectors.toList())), false).toSingle());
+	}
+
+	// contents: Id, Name, Updated, Content, ContentEncoding by id, for the rows without markdown
+	private JsonObject project(JsonArray row, List<String> fields, Map<Integer, JsonArray> contents) {
+		final JsonObject page = new JsonObject();
+		if (fields.contains("id")) {
+			page.put("id", row.getInteger(0));
+		}
+		if (fields.contains("name")) {
+			page.put("name", row.getString(1));
+		}
+		if (fields.contains("updated")) {
+			page.put("updated", row.getLong(2));
+		}
+		final boolean markdown = fields.contains("markdown");
+		if (markdown) {
+			page.put("markdown", PageContentCodec.decode(row.getString(3), row.getString(4)));
+		}
+		if (fields.contains("html")) {
+			final int htmlColumn = markdown ? 5 : 3;
+			final String stored = currentHtml(row.getString(htmlColumn), row.getInteger(htmlColumn + 1));
+			if (stored != null) {
+				page.put("html", stored);
+			} else if (markdown) {
+				page.put("html", MarkdownRenderer.render(page.getString("markdown")));
+			} else {
+				// a page deleted since its row was read renders empty
+				final JsonArray content = contents.get(row.getInteger(0));
+				page.put("html", MarkdownRenderer.render(content == null ? "" : PageContentCodec.decode(content.getString(3), content.getString(4))));
+			}
+		}
+		return page;
+	}
+
+	private Single<Map<Integer, JsonArray>> contents(List<Integer> ids) {
+		final String query = sqlQueries.get(SqlQuery.PAGES_CONTENT_BY_IDS);
+		final List<List<Integer>> chunks = new ArrayList<>();
+		for (int from = 0; from < ids.size(); from += MAX_CONTENTS_PER_QUERY) {
+			chunks.add(ids.subList(from, Math.min(ids.size(), from + MAX_CONTENTS_PER_QUERY)));
+		}
+		return Observable.fromIterable(chunks)
+				.concatMapSingle(chunk -> dbClient.rxQueryWithParams(inList(query, chunk.size()), new JsonArray(new ArrayList<>(chunk))))
+				.flatMapIterable(result -> result.getResults())
+				.toMap(row -> row.getInteger(0));
+	}
+
+	@Override
+	public WikiDatabaseService startBackup(JsonObject options, Handler<AsyncResult<JsonObject>> resultHandler) {
+		backupEngine.start(options, resultHandler);
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService fetchBackupStatus(String jobId, Handler<AsyncResult<JsonObject>> resultHandler) {
+		resultHandler.handle(Future.succeededFuture(backupEngine.status(jobId)));
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService startImport(JsonObject options, Handler<AsyncResult<JsonObject>> resultHandler) {
+		importEngine.start(options, resultHandler);
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService fetchImportStatus(String jobId, Handler<AsyncResult<JsonObject>> resultHandler) {
+		resultHandler.handle(Future.succeededFuture(importEngine.status(jobId)));
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService startExport(JsonObject options, Handler<AsyncResult<JsonObject>> resultHandler) {
+		exportEngine.start(options, resultHandler);
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService fetchExportStatus(String jobId, Handler<AsyncResult<JsonObject>> resultHandler) {
+		resultHandler.handle(Future.succeededFuture(exportEngine.status(jobId)));
+		return this;
+	}
+
+	@Override
+	public WikiDatabaseService fetchStatistics(Handler<AsyncResult<JsonObject>> resultHandler) {
+		final JsonObject lookups = new JsonObject().put("pageByName", pageByNameLookups.metrics())
+				.put("pageById", pageByIdLookups.metrics());
+		resultHandler.handle(Future.succeededFuture(new JsonObject().put("pages", pageNameIndex.size())
+				.put("lookups", lookups).put("rendering", renderingJob.metrics().put("renderOnWrite", renderOnWrite))
+				.put("contentEncoding", contentEncodingJob.metrics().put("encoding", contentEncoding))
+				.put("linkIndex", linkIndexJob.metrics()).put("revisions", pageRevisions.metrics())
+				.put("storage", new JsonObject().put("profile", storageProfile.toString()).put("applied", storageFiles))
+				.put("scheduling", scheduler.metrics())));
+		return this;
+	}
+
 	@Override
 	public WikiDatabaseService fetchPageById(int id, Handler<AsyncResult<JsonObject>> resultHandler) {
+		pageByIdLookups.execute(id, handler -> scheduler.execute(Workload.INTERACTIVE, slot -> queryPageById(id, slot), handler), resultHandler);
+		return this;
+	}
+
+	private void queryPageById(int id, Handler<AsyncResult<JsonObject>> resultHandler) {
 		dbClient.rxQueryWithParams(sqlQueries.get(SqlQuery.GET_PAGE_BY_ID), new JsonArray().add(id))
 		.subscribe((result) -> {
 			final List<JsonObject> results = result.getRows();
 			final Optional<JsonObject> pageData = results.stream().findFirst();
-			final JsonObject payload = pageData.map(r -> new JsonObject()
+			final JsonObject payload = pageData.map(r -> withHtml(new JsonObject()
 														.put("found", true)
 														.put("id", r.getInteger("ID"))
 														.put("name", r.getString("NAME"))
-														.put("content", r.getString("CONTENT")))
+														.put("content", PageContentCodec.decode(r.getString("CONTENT"), r.getString("CONTENTENCODING"))), r.getString("HTML"), r.getInteger("RENDERERVERSION")))
 														.orElse(
 																new JsonObject()
 																	.put("found", false)
@@ -156,8 +808,6 @@ public class WikiDatabaseServiceImpl implements WikiDatabaseService {
 			LOGGER.error("could not fetch by id", exception);
 			resultHandler.handle(Future.failedFuture(exception));
 		});
-		
-		return this;
 	}
 
 }
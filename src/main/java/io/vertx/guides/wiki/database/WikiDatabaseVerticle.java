@@ -15,15 +15,22 @@ import java.io.InputStream;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.vertx.core.AsyncResult;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
 import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
@@ -53,28 +60,79 @@ public class WikiDatabaseVerticle extends AbstractVerticle {
 
 	private JDBCClient dbClient;
 
+	/**
+	 * Deployment options for the verticles issuing JDBC calls. The JDBC client runs statements as
+	 * blocking tasks of the calling context, so in {@code dedicated} execution mode they get a worker
+	 * pool of their own, sized to the connection pool, instead of competing for the shared one.
+	 */
+	public static DeploymentOptions deploymentOptions(JsonObject config) {
+		final DeploymentOptions options = new DeploymentOptions().setConfig(config);
+		final String execution = config.getString(CONFIG_WIKIDB_JDBC_EXECUTION, DEFAULT_WIKIDB_JDBC_EXECUTION);
+		if (JDBC_EXECUTION_DEDICATED.equals(execution)) {
+			final int poolSize = config.getInteger(CONFIG_WIKIDB_JDBC_WORKER_POOL_SIZE,
+					config.getInteger(CONFIG_WIKIDB_JDBC_MAX_POOL_SIZE, DEFAULT_JDBC_MAX_POOL_SIZE));
+			options.setWorkerPoolName(WIKIDB_JDBC_WORKER_POOL_NAME).setWorkerPoolSize(poolSize);
+		} else if (!JDBC_EXECUTION_SHARED.equals(execution)) {
+			throw new IllegalArgumentException("Unsupported JDBC execution mode: " + execution);
+		}
+		return options;
+	}
+
 	@Override
 	public void start(Promise<Void> promise) throws Exception {
 		loadSqlQueries();
 
-		dbClient = JDBCClient.createShared(vertx,
-				new JsonObject().put("url", config().getString(CONFIG_WIKIDB_JDBC_URL, DEFAULT_WIKIDB_JDBC_URL))
-						.put("driver_class",
-								config().getString(CONFIG_WIKIDB_JDBC_DRIVER_CLASS, DEFAULT_WIKIDB_JDBC_DRIVER_CLASS))
-						.put("max_pool_size", config().getInteger(CONFIG_WIKIDB_JDBC_MAX_POOL_SIZE, DEFAULT_JDBC_MAX_POOL_SIZE)));
-		WikiDatabaseService.create(dbClient, sqlQueries, ready -> {
+		final Handler<AsyncResult<WikiDatabaseService>> readyHandler = ready -> {
 			if(ready.succeeded()) {
 				ServiceBinder binder = new ServiceBinder(vertx.getDelegate());
 				binder
 				.setAddress(CONFIG_WIKIDB_QUEUE)
+				.addInterceptor(WikiDatabaseVerticle::traceReceivedCall)
 				.register(WikiDatabaseService.class, ready.result());
 				promise.complete();
 			} else {
 				LOGGER.error("impossible to initialize WikiDatabaseService", ready.cause());
 				promise.fail(ready.cause());
 			}
-		});
+		};
+		final int shards = PageSharding.shards(config());
+		if (shards == 1) {
+			dbClient = createClient(config(), io.vertx.ext.jdbc.JDBCClient.DEFAULT_DS_NAME);
+			WikiDatabaseService.create(vertx, dbClient, sqlQueries, config(), readyHandler);
+		} else {
+			LOGGER.info("Pages are sharded over {} databases", shards);
+			final List<JDBCClient> shardClients = IntStream.range(0, shards)
+					.mapToObj(shard -> createClient(PageSharding.shardConfig(config(), shard), "wikidb-shard-" + shard))
+					.collect(Collectors.toList());
+			ShardedWikiDatabaseService.create(vertx, shardClients, sqlQueries, config(), readyHandler);
+		}
+	}
 
+	private JDBCClient createClient(JsonObject config, String dataSourceName) {
+		return JDBCClient.createShared(vertx,
+				new JsonObject().put("url", config.getString(CONFIG_WIKIDB_JDBC_URL, DEFAULT_WIKIDB_JDBC_URL))
+						.put("driver_class",
+								config.getString(CONFIG_WIKIDB_JDBC_DRIVER_CLASS, DEFAULT_WIKIDB_JDBC_DRIVER_CLASS))
+						.put("max_pool_size", config.getInteger(CONFIG_WIKIDB_JDBC_MAX_POOL_SIZE, DEFAULT_JDBC_MAX_POOL_SIZE)),
+				dataSourceName);
+	}
+
+	/*
+	 * Starts, for sampled traces (see the W3C traceparent header set by the HTTP verticles), the
+	 * trace of the service call, from the time it spent between being sent and being received by
+	 * this verticle (see ServiceCallTrace).
+	 */
+	private static Future<Message<JsonObject>> traceReceivedCall(Message<JsonObject> message) {
+		final String traceparent = message.headers().get("traceparent");
+		final String sentAt = message.headers().get("trace-sent-at");
+		if (traceparent != null && traceparent.endsWith("-01") && sentAt != null) {
+			final String[] parts = traceparent.split("-");
+			ServiceCallTrace.begin(Vertx.currentContext(), parts[1], parts[2], "wikidb." + message.headers().get("action"),
+					System.currentTimeMillis() - Long.parseLong(sentAt));
+		} else {
+			ServiceCallTrace.clear();
+		}
+		return Future.succeededFuture(message);
 	}
 
 	private enum ActionsDispatcher {
@@ -102,16 +160,17 @@ public class WikiDatabaseVerticle extends AbstractVerticle {
 	}
 
 	public void onMessage(Message<JsonObject> message) {
-		LOGGER.info(String.format("message received for database with message %s and headers %s", message.body(), message.headers()));
+		LOGGER.debug("message received for database with message {} and headers {}", message.body(), message.headers());
 		if (!message.headers().contains("action")) {
 			LOGGER.error("No action specified in header");
 			message.fail(ErrorCodes.NO_ACTION_SPECIFIED.ordinal(), "No action header specified");
 		}
 
 		final String actionType = message.headers().get("action");
-		LOGGER.info("action dispatched is " + Arrays.stream(ActionsDispatcher.values()).filter(action -> actionType.equals(action.getAction())).findFirst());
-		Arrays.stream(ActionsDispatcher.values()).filter(action -> actionType.equals(action.getAction())).findFirst()
-				.ifPresentOrElse(a -> a.executeHandler(this, message), () -> this.badAction(message));
+		final Optional<ActionsDispatcher> dispatched = Arrays.stream(ActionsDispatcher.values())
+				.filter(action -> actionType.equals(action.getAction())).findFirst();
+		LOGGER.debug("action dispatched is {}", dispatched);
+		dispatched.ifPresentOrElse(a -> a.executeHandler(this, message), () -> this.badAction(message));
 
 	}
 
@@ -121,7 +180,6 @@ public class WikiDatabaseVerticle extends AbstractVerticle {
 	}
 
 	public void fetchAllPages(Message<JsonObject> message) {
-		LOGGER.info("received request to fetch all pages");
 		dbClient.query(sqlQueries.get(SqlQuery.ALL_PAGES), res -> {
 			if (res.succeeded()) {
 				final List<String> pageNamesFromDb = res.result().getResults().stream()
@@ -152,7 +210,7 @@ public class WikiDatabaseVerticle extends AbstractVerticle {
 
 	public void createPage(Message<JsonObject> message) {
 		JsonArray data = new JsonArray().add(message.body().getString("title"))
-				.add(message.body().getString("markdown"));
+				.add(message.body().getString("markdown")).add(System.currentTimeMillis()).addNull().addNull().addNull();
 		dbClient.updateWithParams(sqlQueries.get(SqlQuery.CREATE_PAGE), data, res -> {
 			if (res.succeeded()) {
 				message.reply("ok");
@@ -163,7 +221,8 @@ public class WikiDatabaseVerticle extends AbstractVerticle {
 	}
 
 	public void savePage(Message<JsonObject> message) {
-		JsonArray data = new JsonArray().add(message.body().getString("markdown")).add(message.body().getInteger("id"));
+		JsonArray data = new JsonArray().add(message.body().getString("markdown")).add(System.currentTimeMillis())
+				.addNull().addNull().addNull().add(message.body().getInteger("id"));
 		dbClient.updateWithParams(sqlQueries.get(SqlQuery.SAVE_PAGE), data, res -> {
 			if (res.succeeded()) {
 				message.reply("ok");
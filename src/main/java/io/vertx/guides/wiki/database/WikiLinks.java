@@ -0,0 +1,46 @@
+package io.vertx.guides.wiki.database;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts the names of the wiki pages a Markdown page links to, that is the targets of its inline
+ * ({@code [text](/wiki/Name)}) and reference ({@code [id]: /wiki/Name}) links.
+ */
+final class WikiLinks {
+
+	private static final Pattern INLINE_LINK = Pattern.compile("\\]\\(\\s*<?/wiki/([^)\\s>#?]+)");
+	private static final Pattern REFERENCE_LINK = Pattern.compile("^\\s{0,3}\\[[^\\]]+\\]:\\s*<?/wiki/([^\\s>#?]+)",
+			Pattern.MULTILINE);
+	private static final int MAX_NAME_LENGTH = 255;
+
+	private WikiLinks() {
+	}
+
+	static Set<String> extract(String markdown) {
+		final Set<String> targets = new TreeSet<>();
+		if (markdown != null) {
+			collect(INLINE_LINK.matcher(markdown), targets);
+			collect(REFERENCE_LINK.matcher(markdown), targets);
+		}
+		return targets;
+	}
+
+	private static void collect(Matcher matcher, Set<String> targets) {
+		while (matcher.find()) {
+			try {
+				final String name = URLDecoder.decode(matcher.group(1), StandardCharsets.UTF_8.name());
+				if (!name.isEmpty() && name.length() <= MAX_NAME_LENGTH) {
+					targets.add(name);
+				}
+			} catch (UnsupportedEncodingException | IllegalArgumentException e) {
+				// not a well-formed page name, hence not a wiki link
+			}
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package io.vertx.guides.wiki.database;
+
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_SCHEDULING_BULK_CONCURRENCY;
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_SCHEDULING_INTERACTIVE_CONCURRENCY;
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_SCHEDULING_MAINTENANCE_CONCURRENCY;
+
+/**
+ * Classes of database work, scheduled by {@link WorkloadScheduler}. Each class has a concurrency
+ * limit, set with its configuration key, and a weight giving its share of the freed slots when
+ * several classes have work waiting.
+ */
+enum Workload {
+
+	/** Single page reads and writes, with a user waiting for them. */
+	INTERACTIVE("interactive", CONFIG_WIKIDB_SCHEDULING_INTERACTIVE_CONCURRENCY, 16, 8),
+
+	/** Reads of the whole wiki: page listings and scans, backups. */
+	BULK("bulk", CONFIG_WIKIDB_SCHEDULING_BULK_CONCURRENCY, 2, 2),
+
+	/** Background rewrites of the pages (rendering, content encoding, link index). */
+	MAINTENANCE("maintenance", CONFIG_WIKIDB_SCHEDULING_MAINTENANCE_CONCURRENCY, 1, 1);
+
+	private final String name;
+	private final String concurrencyKey;
+	private final int defaultConcurrency;
+	private final int weight;
+
+	Workload(String name, String concurrencyKey, int defaultConcurrency, int weight) {
+		this.name = name;
+		this.concurrencyKey = concurrencyKey;
+		this.defaultConcurrency = defaultConcurrency;
+		this.weight = weight;
+	}
+
+	String concurrencyKey() {
+		return concurrencyKey;
+	}
+
+	int defaultConcurrency() {
+		return defaultConcurrency;
+	}
+
+	int weight() {
+		return weight;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
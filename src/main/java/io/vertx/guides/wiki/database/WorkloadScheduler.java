@@ -0,0 +1,213 @@
+package io.vertx.guides.wiki.database;
+
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_SCHEDULING_LATENCY_TARGET;
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_SCHEDULING_QUEUE_LIMIT;
+import static io.vertx.guides.wiki.database.DatabaseConstants.DEFAULT_WIKIDB_SCHEDULING_LATENCY_TARGET;
+import static io.vertx.guides.wiki.database.DatabaseConstants.DEFAULT_WIKIDB_SCHEDULING_QUEUE_LIMIT;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+import io.reactivex.Completable;
+import io.reactivex.Single;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.SingleHelper;
+
+/**
+ * Runs the database operations of the service by {@link Workload}, so that scans and background
+ * jobs cannot starve page lookups. Each class runs a bounded number of operations at a time, the
+ * others waiting in a bounded queue of their class; freed slots go to the waiting classes by
+ * smooth weighted round robin. Interactive latency, from submission to completion, is tracked as a
+ * moving average: while it is above the target, each slow interactive operation halves the slots
+ * of the other classes (down to one) and long scans are asked to pause; each fast one gives them
+ * a slot back. The wait and run times of the operations of sampled calls go to their
+ * {@link ServiceCallTrace}. Instances are confined to the context of the database service.
+ */
+class WorkloadScheduler {
+
+	private static final double LATENCY_SMOOTHING = 0.2;
+	private static final long MAX_PACING_DELAY = 100;
+	// without recent interactive operations, the latency average says nothing of the current load
+	private static final long LATENCY_VALIDITY = 1_000;
+
+	private final Map<Workload, Lane> lanes = new EnumMap<>(Workload.class);
+	private final int queueLimit;
+	private final long latencyTarget;
+
+	private double interactiveLatency;
+	private long lastInteractiveAt;
+	private long throttlings;
+	private boolean dispatching;
+
+	WorkloadScheduler(JsonObject config) {
+		for (Workload workload : Workload.values()) {
+			final int concurrency = config.getInteger(workload.concurrencyKey(), workload.defaultConcurrency());
+			if (concurrency < 1) {
+				throw new IllegalArgumentException("The " + workload + " concurrency must be positive: " + concurrency);
+			}
+			lanes.put(workload, new Lane(workload, concurrency));
+		}
+		this.queueLimit = config.getInteger(CONFIG_WIKIDB_SCHEDULING_QUEUE_LIMIT, DEFAULT_WIKIDB_SCHEDULING_QUEUE_LIMIT);
+		this.latencyTarget = config.getLong(CONFIG_WIKIDB_SCHEDULING_LATENCY_TARGET, DEFAULT_WIKIDB_SCHEDULING_LATENCY_TARGET);
+	}
+
+	/**
+	 * Runs the operation once a slot of its class is free, failing with a
+	 * {@link RejectedExecutionException} when the queue of the class is full. The slot is held until
+	 * the operation calls its handler.
+	 */
+	<T> void execute(Workload workload, Consumer<Handler<AsyncResult<T>>> operation, Handler<AsyncResult<T>> resultHandler) {
+		final Lane lane = lanes.get(workload);
+		if (lane.queue.size() >= queueLimit) {
+			lane.rejected++;
+			resultHandler.handle(Future.failedFuture(new RejectedExecutionException("Too many queued " + workload + " operations")));
+			return;
+		}
+		final long submittedAt = System.currentTimeMillis();
+		final ServiceCallTrace trace = ServiceCallTrace.current();
+		if (trace != null) {
+			trace.operationStarted();
+		}
+		lane.queue.add(() -> {
+			final long startedAt = System.currentTimeMillis();
+			lane.waitMillis += startedAt - submittedAt;
+			final boolean[] completed = { false };
+			operation.accept(result -> {
+				if (!completed[0]) {
+					completed[0] = true;
+					complete(lane, submittedAt);
+					if (trace != null) {
+						trace.span(workload + ".wait", startedAt - submittedAt);
+						trace.span(workload + ".query", System.currentTimeMillis() - startedAt);
+						trace.operationCompleted();
+					}
+				}
+				resultHandler.handle(result);
+			});
+		});
+		dispatch();
+	}
+
+	<T> Single<T> schedule(Workload workload, Single<T> operation) {
+		return SingleHelper.toSingle(handler -> execute(workload, slot -> operation.subscribe(SingleHelper.toObserver(slot)), handler));
+	}
+
+	Completable schedule(Workload workload, Completable operation) {
+		return schedule(workload, operation.toSingleDefault(Boolean.TRUE)).ignoreElement();
+	}
+
+	/** Milliseconds a long scan of the class should pause before reading on, 0 when not throttled. */
+	long pacingDelay(Workload workload) {
+		if (workload == Workload.INTERACTIVE || !congested()) {
+			return 0;
+		}
+		return Math.min(MAX_PACING_DELAY, Math.round(interactiveLatency - latencyTarget));
+	}
+
+	private boolean congested() {
+		return interactiveLatency > latencyTarget && System.currentTimeMillis() - lastInteractiveAt < LATENCY_VALIDITY;
+	}
+
+	private void complete(Lane lane, long submittedAt) {
+		lane.running--;
+		lane.completed++;
+		if (lane.workload == Workload.INTERACTIVE) {
+			final long now = System.currentTimeMillis();
+			final long latency = now - submittedAt;
+			interactiveLatency = lane.completed == 1 ? latency
+					: interactiveLatency + LATENCY_SMOOTHING * (latency - interactiveLatency);
+			lastInteractiveAt = now;
+			throttle(interactiveLatency > latencyTarget);
+		}
+		dispatch();
+	}
+
+	private void throttle(boolean slow) {
+		for (Lane lane : lanes.values()) {
+			if (lane.workload == Workload.INTERACTIVE) {
+				continue;
+			}
+			if (slow && lane.limit > 1) {
+				lane.limit = Math.max(1, lane.limit / 2);
+				throttlings++;
+			} else if (!slow && lane.limit < lane.maxLimit) {
+				lane.limit++;
+			}
+		}
+	}
+
+	private void dispatch() {
+		// operations completing synchronously call back into dispatch, which this loop covers
+		if (dispatching) {
+			return;
+		}
+		dispatching = true;
+		try {
+			if (!congested()) {
+				lanes.values().forEach(lane -> lane.limit = lane.maxLimit);
+			}
+			Lane lane;
+			while ((lane = next()) != null) {
+				lane.running++;
+				lane.queue.poll().run();
+			}
+		} finally {
+			dispatching = false;
+		}
+	}
+
+	// smooth weighted round robin among the classes having both waiting work and a free slot
+	private Lane next() {
+		Lane selected = null;
+		int totalWeight = 0;
+		for (Lane lane : lanes.values()) {
+			if (lane.queue.isEmpty() || lane.running >= lane.limit) {
+				continue;
+			}
+			lane.credit += lane.workload.weight();
+			totalWeight += lane.workload.weight();
+			if (selected == null || lane.credit > selected.credit) {
+				selected = lane;
+			}
+		}
+		if (selected != null) {
+			selected.credit -= totalWeight;
+		}
+		return selected;
+	}
+
+	JsonObject metrics() {
+		final JsonObject metrics = new JsonObject().put("interactiveLatencyMs", Math.round(interactiveLatency * 100) / 100.0)
+				.put("latencyTargetMs", latencyTarget).put("congested", congested()).put("throttlings", throttlings);
+		lanes.values().forEach(lane -> metrics.put(lane.workload.toString(), new JsonObject().put("limit", lane.limit)
+				.put("maxLimit", lane.maxLimit).put("running", lane.running).put("queued", lane.queue.size())
+				.put("completed", lane.completed).put("rejected", lane.rejected)
+				.put("avgWaitMs", lane.completed == 0 ? 0 : lane.waitMillis / lane.completed)));
+		return metrics;
+	}
+
+	private static final class Lane {
+		private final Workload workload;
+		private final int maxLimit;
+		private final Queue<Runnable> queue = new ArrayDeque<>();
+		private int limit;
+		private int running;
+		private int credit;
+		private long completed;
+		private long rejected;
+		private long waitMillis;
+
+		private Lane(Workload workload, int maxLimit) {
+			this.workload = workload;
+			this.maxLimit = maxLimit;
+			this.limit = maxLimit;
+		}
+	}
+}
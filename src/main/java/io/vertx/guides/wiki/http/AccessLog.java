@@ -0,0 +1,43 @@
+package io.vertx.guides.wiki.http;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.ext.web.RoutingContext;
+
+/**
+ * Sampled access log, written through the {@code ACCESS} logger. Requests are sampled by the route
+ * handling them (the names given to {@link RequestTrace#profiled}), each route having its rate or
+ * the default one; server errors are always logged. Messages are formatted by the logging
+ * framework, only for the requests that are logged.
+ */
+final class AccessLog {
+
+	static final Logger ACCESS = LoggerFactory.getLogger("io.vertx.guides.wiki.access");
+
+	private final double defaultRate;
+	private final Map<String, Double> routeRates = new HashMap<>();
+
+	AccessLog(double defaultRate, JsonObject routeRates) {
+		this.defaultRate = defaultRate;
+		routeRates.forEach(entry -> this.routeRates.put(entry.getKey(), ((Number) entry.getValue()).doubleValue()));
+	}
+
+	boolean enabled() {
+		return ACCESS.isInfoEnabled();
+	}
+
+	void log(RoutingContext context, String route, double durationMs) {
+		final int status = context.response().getStatusCode();
+		if (status < 500 && ThreadLocalRandom.current().nextDouble() >= routeRates.getOrDefault(route, defaultRate)) {
+			return;
+		}
+		ACCESS.info("{} {} {} {} {}ms {}", context.request().method(), context.request().path(), status, route,
+				durationMs, context.response().bytesWritten());
+	}
+}
@@ -0,0 +1,78 @@
+package io.vertx.guides.wiki.http;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.ext.web.RoutingContext;
+
+/**
+ * Caps the number of requests of each route class that an {@link HttpServerVerticle} instance
+ * has in flight towards the database service. A permit is held from routing until the response
+ * is written or the connection closes; requests that find no permit are answered with a 503.
+ * Instances are confined to the event loop of their verticle, hence the plain counters.
+ */
+class AdmissionController {
+
+	enum RouteClass {
+		READ, WRITE, BACKUP
+	}
+
+	private static final class Gate {
+		private final int limit;
+		private int inFlight;
+		private int peakInFlight;
+		private long admitted;
+		private long rejected;
+
+		Gate(int limit) {
+			this.limit = limit;
+		}
+
+		JsonObject toJson() {
+			return new JsonObject().put("limit", limit).put("inFlight", inFlight).put("peakInFlight", peakInFlight)
+					.put("admitted", admitted).put("rejected", rejected);
+		}
+	}
+
+	private final Map<RouteClass, Gate> gates = new EnumMap<>(RouteClass.class);
+	private final String retryAfterSeconds;
+
+	AdmissionController(Map<RouteClass, Integer> limits, int retryAfterSeconds) {
+		limits.forEach((routeClass, limit) -> gates.put(routeClass, new Gate(limit)));
+		this.retryAfterSeconds = String.valueOf(retryAfterSeconds);
+	}
+
+	Handler<RoutingContext> handler(RouteClass routeClass) {
+		final Gate gate = gates.get(routeClass);
+		return context -> {
+			if (gate.inFlight >= gate.limit) {
+				gate.rejected++;
+				context.response().setStatusCode(503).putHeader("Retry-After", retryAfterSeconds)
+						.putHeader("Content-Type", "application/json")
+						.end(new JsonObject().put("success", false).put("error", "Server overloaded, retry later").encode());
+				return;
+			}
+			gate.admitted++;
+			gate.inFlight++;
+			gate.peakInFlight = Math.max(gate.peakInFlight, gate.inFlight);
+
+			// called once the response is written or the connection closed, leaving the close handler of the response to others
+			final boolean[] released = { false };
+			context.addEndHandler(ended -> {
+				if (!released[0]) {
+					released[0] = true;
+					gate.inFlight--;
+				}
+			});
+			context.next();
+		};
+	}
+
+	JsonObject metrics() {
+		final JsonObject metrics = new JsonObject();
+		gates.forEach((routeClass, gate) -> metrics.put(routeClass.name().toLowerCase(), gate.toJson()));
+		return metrics;
+	}
+}
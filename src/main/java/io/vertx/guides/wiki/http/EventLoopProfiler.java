@@ -0,0 +1,183 @@
+package io.vertx.guides.wiki.http;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Measures how long route handlers and their callbacks keep the event loop busy. Time is attributed
+ * to the handler names given to {@link #run}; a sampler thread captures the stack of any handler
+ * that has been running for longer than the stall threshold, so that the top offenders come with
+ * the code they were stuck in. Event-loop utilization is the CPU time of each event-loop thread
+ * over the wall-clock time since the previous snapshot. Shared by all the HTTP verticles of a
+ * Vert.x instance, hence thread-safe.
+ */
+final class EventLoopProfiler {
+
+	private static final String EVENT_LOOP_THREAD_PREFIX = "vert.x-eventloop-thread-";
+	private static final int TOP_OFFENDERS = 10;
+	private static final int STACK_DEPTH = 20;
+
+	private static final class HandlerStats {
+		final LongAdder calls = new LongAdder();
+		final LongAdder busyNanos = new LongAdder();
+		final AtomicLong maxNanos = new AtomicLong();
+		final LongAdder stalls = new LongAdder();
+		final AtomicReference<String[]> lastStallStack = new AtomicReference<>();
+	}
+
+	private static final class Running {
+		final String name;
+		final long startNanos;
+		boolean sampled;
+
+		Running(String name, long startNanos) {
+			this.name = name;
+			this.startNanos = startNanos;
+		}
+	}
+
+	private final Map<String, HandlerStats> handlers = new ConcurrentHashMap<>();
+	private final Map<Thread, Running> running = new ConcurrentHashMap<>();
+	private final Map<String, LongAdder> busyNanosByThread = new ConcurrentHashMap<>();
+	private final long stallThresholdNanos;
+	private final ScheduledExecutorService sampler;
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	private Map<Long, Long> lastCpuNanos = new HashMap<>();
+	private Map<String, Long> lastBusyNanos = new HashMap<>();
+	private long lastSnapshotNanos = System.nanoTime();
+
+	EventLoopProfiler(long stallThresholdMillis) {
+		this.stallThresholdNanos = TimeUnit.MILLISECONDS.toNanos(stallThresholdMillis);
+		this.sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "wiki-event-loop-profiler");
+			thread.setDaemon(true);
+			return thread;
+		});
+		final long period = Math.max(1, stallThresholdMillis / 2);
+		sampler.scheduleAtFixedRate(this::sampleStalls, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	<T> void run(String name, Handler<T> handler, T event) {
+		final Thread thread = Thread.currentThread();
+		final Running current = new Running(name, System.nanoTime());
+		final Running outer = running.put(thread, current);
+		try {
+			handler.handle(event);
+		} finally {
+			final long elapsed = System.nanoTime() - current.startNanos;
+			if (outer != null) {
+				running.put(thread, outer);
+			} else {
+				running.remove(thread, current);
+			}
+			final HandlerStats stats = handlers.computeIfAbsent(name, key -> new HandlerStats());
+			stats.calls.increment();
+			stats.busyNanos.add(elapsed);
+			stats.maxNanos.accumulateAndGet(elapsed, Math::max);
+			if (outer == null) {
+				busyNanosByThread.computeIfAbsent(thread.getName(), key -> new LongAdder()).add(elapsed);
+			}
+		}
+	}
+
+	<T> Handler<T> wrap(String name, Handler<T> handler) {
+		return event -> run(name, handler, event);
+	}
+
+	private void sampleStalls() {
+		final long now = System.nanoTime();
+		running.forEach((thread, current) -> {
+			if (!current.sampled && now - current.startNanos > stallThresholdNanos) {
+				current.sampled = true;
+				final HandlerStats stats = handlers.computeIfAbsent(current.name, key -> new HandlerStats());
+				stats.stalls.increment();
+				stats.lastStallStack.set(Arrays.stream(thread.getStackTrace()).limit(STACK_DEPTH)
+						.map(StackTraceElement::toString).toArray(String[]::new));
+			}
+		});
+	}
+
+	synchronized JsonObject snapshot() {
+		final long now = System.nanoTime();
+		final long wallNanos = Math.max(1, now - lastSnapshotNanos);
+		final Map<Long, Long> cpuNanos = new HashMap<>();
+		final Map<String, Long> busyNanos = new HashMap<>();
+		final JsonArray eventLoops = new JsonArray();
+		Thread.getAllStackTraces().keySet().stream()
+				.filter(thread -> thread.getName().startsWith(EVENT_LOOP_THREAD_PREFIX))
+				.sorted(Comparator.comparing(Thread::getName))
+				.forEach(thread -> {
+					final long cpu = threads.isThreadCpuTimeSupported() ? threads.getThreadCpuTime(thread.getId()) : -1;
+					final LongAdder busy = busyNanosByThread.get(thread.getName());
+					final long handlersBusy = busy == null ? 0 : busy.sum();
+					cpuNanos.put(thread.getId(), cpu);
+					busyNanos.put(thread.getName(), handlersBusy);
+					final JsonObject eventLoop = new JsonObject().put("thread", thread.getName())
+							.put("handlersUtilization", percent(handlersBusy - lastBusyNanos.getOrDefault(thread.getName(), 0L), wallNanos));
+					if (cpu >= 0) {
+						eventLoop.put("cpuUtilization", percent(cpu - lastCpuNanos.getOrDefault(thread.getId(), 0L), wallNanos));
+					}
+					eventLoops.add(eventLoop);
+				});
+		lastCpuNanos = cpuNanos;
+		lastBusyNanos = busyNanos;
+		lastSnapshotNanos = now;
+
+		final JsonObject byHandler = new JsonObject();
+		final JsonObject byRoute = new JsonObject();
+		handlers.forEach((name, stats) -> {
+			byHandler.put(name, new JsonObject().put("calls", stats.calls.sum())
+					.put("busyMs", millis(stats.busyNanos.sum())).put("maxMs", millis(stats.maxNanos.get()))
+					.put("stalls", stats.stalls.sum()));
+			final String route = name.contains("/") ? name.substring(0, name.indexOf('/')) : name;
+			byRoute.put(route, byRoute.getDouble(route, 0.0) + millis(stats.busyNanos.sum()));
+		});
+
+		final JsonArray topOffenders = new JsonArray(handlers.entrySet().stream()
+				.sorted(Comparator.comparingLong((Map.Entry<String, HandlerStats> entry) -> entry.getValue().maxNanos.get()).reversed())
+				.limit(TOP_OFFENDERS)
+				.map(entry -> {
+					final JsonObject offender = new JsonObject().put("handler", entry.getKey())
+							.put("maxMs", millis(entry.getValue().maxNanos.get()));
+					final String[] stack = entry.getValue().lastStallStack.get();
+					if (stack != null) {
+						offender.put("stallStack", new JsonArray(Arrays.asList(stack)));
+					}
+					return offender;
+				})
+				.collect(Collectors.toList()));
+
+		return new JsonObject().put("windowMs", millis(wallNanos)).put("stallThresholdMs", millis(stallThresholdNanos))
+				.put("eventLoops", eventLoops).put("routesBusyMs", byRoute).put("handlers", byHandler)
+				.put("topOffenders", topOffenders);
+	}
+
+	void close() {
+		sampler.shutdownNow();
+	}
+
+	private static double percent(long busyNanos, long wallNanos) {
+		return Math.round(busyNanos * 10_000.0 / wallNanos) / 100.0;
+	}
+
+	private static double millis(long nanos) {
+		return Math.round(nanos / 10_000.0) / 100.0;
+	}
+}
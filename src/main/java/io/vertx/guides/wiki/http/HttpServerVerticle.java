@@ -1,47 +1,39 @@
 package io.vertx.guides.wiki.http;
 
-import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_JDBC_DRIVER_CLASS;
-import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_JDBC_MAX_POOL_SIZE;
-import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_JDBC_URL;
-import static io.vertx.guides.wiki.database.DatabaseConstants.DEFAULT_JDBC_MAX_POOL_SIZE;
-import static io.vertx.guides.wiki.database.DatabaseConstants.DEFAULT_WIKIDB_JDBC_DRIVER_CLASS;
-import static io.vertx.guides.wiki.database.DatabaseConstants.DEFAULT_WIKIDB_JDBC_URL;
+import static io.vertx.guides.wiki.database.DatabaseConstants.WIKIDB_PAGE_EVENTS_ADDRESS;
 
 import java.util.Arrays;
 import java.util.Date;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.github.rjeschke.txtmark.Processor;
-
-import io.netty.handler.codec.http.HttpStatusClass;
+import io.netty.handler.codec.http.QueryStringDecoder;
 import io.reactivex.Single;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Promise;
 import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.json.DecodeException;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.net.JksOptions;
-import io.vertx.ext.auth.PubSecKeyOptions;
-import io.vertx.ext.auth.jwt.JWTAuthOptions;
-import io.vertx.ext.web.client.WebClientOptions;
 import io.vertx.guides.wiki.database.WikiDatabaseService;
+import io.vertx.guides.wiki.http.AdmissionController.RouteClass;
+import io.vertx.guides.wiki.logging.AccountingAsyncAppender;
 import io.vertx.reactivex.core.AbstractVerticle;
 import io.vertx.reactivex.core.http.HttpServer;
+import io.vertx.reactivex.core.http.ServerWebSocket;
 import io.vertx.reactivex.ext.auth.User;
 import io.vertx.reactivex.ext.auth.jdbc.JDBCAuth;
 import io.vertx.reactivex.ext.auth.jwt.JWTAuth;
-import io.vertx.reactivex.ext.jdbc.JDBCClient;
 import io.vertx.reactivex.ext.web.Router;
 import io.vertx.reactivex.ext.web.RoutingContext;
-import io.vertx.reactivex.ext.web.client.HttpResponse;
-import io.vertx.reactivex.ext.web.client.WebClient;
-import io.vertx.reactivex.ext.web.codec.BodyCodec;
 import io.vertx.reactivex.ext.web.handler.AuthHandler;
 import io.vertx.reactivex.ext.web.handler.BodyHandler;
 import io.vertx.reactivex.ext.web.handler.FormLoginHandler;
@@ -49,7 +41,6 @@ import io.vertx.reactivex.ext.web.handler.JWTAuthHandler;
 import io.vertx.reactivex.ext.web.handler.RedirectAuthHandler;
 import io.vertx.reactivex.ext.web.handler.SessionHandler;
 import io.vertx.reactivex.ext.web.handler.UserSessionHandler;
-import io.vertx.reactivex.ext.web.sstore.LocalSessionStore;
 import io.vertx.reactivex.ext.web.templ.freemarker.FreeMarkerTemplateEngine;
 
 public class HttpServerVerticle extends AbstractVerticle {
@@ -57,27 +48,65 @@ public class HttpServerVerticle extends AbstractVerticle {
 
 	public static final String CONFIG_HTTP_SERVER_PORT = "http.server.port";
 	public static final String CONFIG_WIKI_DB_QUEUE = "wikidb.queue";
-
-	private String wikiDbQueue = "wikidb.queue";
-	private WikiDatabaseService dbService;
+	public static final String CONFIG_WIKI_DB_QUEUE_TIMEOUT = "wikidb.queue.timeout";
+	public static final String CONFIG_HTTP_ADMISSION_MAX_READS = "http.admission.max_inflight.read";
+	public static final String CONFIG_HTTP_ADMISSION_MAX_WRITES = "http.admission.max_inflight.write";
+	public static final String CONFIG_HTTP_ADMISSION_MAX_BACKUPS = "http.admission.max_inflight.backup";
+	public static final String CONFIG_HTTP_ADMISSION_RETRY_AFTER = "http.admission.retry_after";
+	public static final String CONFIG_HTTP_TRACING_SAMPLE_RATE = "http.tracing.sample_rate";
+	public static final String CONFIG_HTTP_ACCESS_LOG_SAMPLE_RATE = "http.access_log.sample_rate";
+	public static final String CONFIG_HTTP_ACCESS_LOG_ROUTE_SAMPLE_RATES = "http.access_log.route_sample_rates";
+	public static final String CONFIG_HTTP_PROFILER_STALL_THRESHOLD = "http.profiler.stall_threshold";
+	public static final String CONFIG_HTTP_FEED_HISTORY = "http.feed.history";
+	public static final String CONFIG_HTTP_FEED_HEARTBEAT = "http.feed.heartbeat";
+	public static final String CONFIG_HTTP_BODY_MAX_SIZE = "http.body.max_size";
+	public static final String CONFIG_HTTP_RENDERING_POOL_SIZE = "http.rendering.pool_size";
+	public static final String CONFIG_HTTP_RENDERING_INLINE_THRESHOLD = "http.rendering.inline_threshold";
+	public static final String CONFIG_HTTP_RENDERING_QUEUE_LIMIT = "http.rendering.queue_limit";
+	public static final String CONFIG_HTTP_RENDERING_TIMEOUT = "http.rendering.timeout";
+
+	static final long DEFAULT_WIKI_DB_QUEUE_TIMEOUT = 30_000;
+	private static final int DEFAULT_ADMISSION_MAX_READS = 256;
+	private static final int DEFAULT_ADMISSION_MAX_WRITES = 64;
+	private static final int DEFAULT_ADMISSION_MAX_BACKUPS = 2;
+	private static final int DEFAULT_ADMISSION_RETRY_AFTER = 1;
+	private static final double DEFAULT_TRACING_SAMPLE_RATE = 0.01;
+	private static final double DEFAULT_ACCESS_LOG_SAMPLE_RATE = 0.1;
+	static final long DEFAULT_PROFILER_STALL_THRESHOLD = 20;
+	private static final int DEFAULT_FEED_HISTORY = 1000;
+	private static final long DEFAULT_FEED_HEARTBEAT = 30_000;
+	private static final String FEED_WEBSOCKET_PATH = "/api/feed/ws";
+	private static final String ADMIN_PERMISSION = "admin";
+	private static final long DEFAULT_BODY_MAX_SIZE = 8 * 1024 * 1024;
+	static final int DEFAULT_RENDERING_INLINE_THRESHOLD = 16 * 1024;
+	static final int DEFAULT_RENDERING_QUEUE_LIMIT = 64;
+	static final long DEFAULT_RENDERING_TIMEOUT = 5_000;
+
+	private HttpSharedResources shared;
 
 	private FreeMarkerTemplateEngine freeMarkerTemplateEngine;
 
-	private WebClient webClient;
+	private AdmissionController admissionController;
+
+	private PageChangeFeed feed;
 
 	@Override
 	public void start(Promise<Void> promise) throws Exception {
-		wikiDbQueue = config().getString(CONFIG_WIKI_DB_QUEUE, "wikidb.queue");
-		dbService = WikiDatabaseService.createProxy(vertx.getDelegate(), wikiDbQueue);
+		shared = HttpSharedResources.acquire(vertx, config());
+		freeMarkerTemplateEngine = shared.templateEngine;
 
-		JDBCClient client = JDBCClient.createShared(vertx,
-				new JsonObject().put("url", config().getString(CONFIG_WIKIDB_JDBC_URL, DEFAULT_WIKIDB_JDBC_URL))
-						.put("driver_class",
-								config().getString(CONFIG_WIKIDB_JDBC_DRIVER_CLASS, DEFAULT_WIKIDB_JDBC_DRIVER_CLASS))
-						.put("max_pool_size",
-								config().getInteger(CONFIG_WIKIDB_JDBC_MAX_POOL_SIZE, DEFAULT_JDBC_MAX_POOL_SIZE)));
+		Map<RouteClass, Integer> admissionLimits = new EnumMap<>(RouteClass.class);
+		admissionLimits.put(RouteClass.READ, config().getInteger(CONFIG_HTTP_ADMISSION_MAX_READS, DEFAULT_ADMISSION_MAX_READS));
+		admissionLimits.put(RouteClass.WRITE, config().getInteger(CONFIG_HTTP_ADMISSION_MAX_WRITES, DEFAULT_ADMISSION_MAX_WRITES));
+		admissionLimits.put(RouteClass.BACKUP, config().getInteger(CONFIG_HTTP_ADMISSION_MAX_BACKUPS, DEFAULT_ADMISSION_MAX_BACKUPS));
+		admissionController = new AdmissionController(admissionLimits,
+				config().getInteger(CONFIG_HTTP_ADMISSION_RETRY_AFTER, DEFAULT_ADMISSION_RETRY_AFTER));
 
-		JDBCAuth auth = JDBCAuth.create(vertx, client);
+		feed = new PageChangeFeed(config().getInteger(CONFIG_HTTP_FEED_HISTORY, DEFAULT_FEED_HISTORY));
+		vertx.eventBus().<JsonObject>consumer(WIKIDB_PAGE_EVENTS_ADDRESS, message -> feed.publish(message.body()));
+		vertx.setPeriodic(config().getLong(CONFIG_HTTP_FEED_HEARTBEAT, DEFAULT_FEED_HEARTBEAT), timer -> feed.heartbeat());
+
+		JDBCAuth auth = shared.auth;
 
 		HttpServer server = vertx.createHttpServer(new HttpServerOptions().setSsl(true)
 				.setKeyStoreOptions(new JksOptions().setPath("server-keystore.jks").setPassword("secret")));
@@ -86,24 +115,37 @@ public class HttpServerVerticle extends AbstractVerticle {
 
 
 		
-		router.route().handler(BodyHandler.create());
-		router.route().handler(SessionHandler.create(LocalSessionStore.create(vertx)));
+		final AccessLog accessLog = new AccessLog(config().getDouble(CONFIG_HTTP_ACCESS_LOG_SAMPLE_RATE, DEFAULT_ACCESS_LOG_SAMPLE_RATE),
+				config().getJsonObject(CONFIG_HTTP_ACCESS_LOG_ROUTE_SAMPLE_RATES, new JsonObject()));
+		router.route().handler(RequestTrace.handler(config().getDouble(CONFIG_HTTP_TRACING_SAMPLE_RATE, DEFAULT_TRACING_SAMPLE_RATE),
+				shared.profiler, accessLog));
+		long maxBodySize = config().getLong(CONFIG_HTTP_BODY_MAX_SIZE, DEFAULT_BODY_MAX_SIZE);
+		router.route().handler(PageUploadHandler.skipBodyHandler(BodyHandler.create().setBodyLimit(maxBodySize)));
+		router.route().handler(RequestTrace.begin("session"));
+		router.route().handler(SessionHandler.create(shared.sessionStore));
 		router.route().handler(UserSessionHandler.create(auth));
+		router.route().handler(RequestTrace.end("session"));
 		
 		AuthHandler authHandler = RedirectAuthHandler.create(auth, "/login");
 		router.route("/").handler(authHandler);
 		router.route("/wiki/*").handler(authHandler);
 		router.route("/action/*").handler(authHandler);
 
-		router.get("/").handler(this::indexHandler);
-		router.get("/wiki/:page").handler(this::pageRenderingHandler);
-		router.post().handler(BodyHandler.create());
-		router.post("/save").handler(this::pageUpdateHandler);
-		router.post("/create").handler(this::pageCreateHandler);
-		router.post("/delete").handler(this::pageDeletionHandler);
-		router.get("/backup").handler(this::backupHandler);
-
-		router.get("/login").handler(this::loginHandler);
+		router.get("/").handler(admissionController.handler(RouteClass.READ));
+		router.get("/wiki/*").handler(admissionController.handler(RouteClass.READ));
+		router.post("/save").handler(admissionController.handler(RouteClass.WRITE));
+		router.post("/delete").handler(admissionController.handler(RouteClass.WRITE));
+		router.route("/action/backup*").handler(admissionController.handler(RouteClass.BACKUP));
+
+		router.get("/").handler(RequestTrace.profiled("indexHandler", this::indexHandler));
+		router.get("/wiki/:page").handler(RequestTrace.profiled("pageRenderingHandler", this::pageRenderingHandler));
+		router.post("/save").handler(RequestTrace.profiled("pageUpdateHandler", this::pageUpdateHandler));
+		router.post("/create").handler(RequestTrace.profiled("pageCreateHandler", this::pageCreateHandler));
+		router.post("/delete").handler(RequestTrace.profiled("pageDeletionHandler", this::pageDeletionHandler));
+		router.get("/action/backup").handler(RequestTrace.profiled("backupHandler", this::backupHandler));
+		router.get("/action/backup/:id").handler(RequestTrace.profiled("backupStatusHandler", this::backupStatusHandler));
+
+		router.get("/login").handler(RequestTrace.profiled("loginHandler", this::loginHandler));
 		router.post("/login-auth").handler(FormLoginHandler.create(auth));
 
 		router.get("/logout").handler(context -> {
@@ -114,15 +156,23 @@ public class HttpServerVerticle extends AbstractVerticle {
 
 		Router apiRouter = Router.router(vertx);
 		
-		JWTAuth jwtAuth = JWTAuth.create(vertx, new JWTAuthOptions()
-			      .addPubSecKey(new PubSecKeyOptions()
-			        .setAlgorithm("HS256")
-			        .setPublicKey("secret")
-			        .setSymmetric(true)));
+		JWTAuth jwtAuth = shared.jwtAuth;
+		apiRouter.get("/feed").handler(this::apiFeed);
 		apiRouter.route().handler(JWTAuthHandler.create(jwtAuth, "/api/token"));
+		apiRouter.get("/pages*").handler(admissionController.handler(RouteClass.READ));
+		apiRouter.post("/pages*").handler(admissionController.handler(RouteClass.WRITE));
+		apiRouter.put("/pages*").handler(admissionController.handler(RouteClass.WRITE));
+		apiRouter.patch("/pages*").handler(admissionController.handler(RouteClass.WRITE));
+		apiRouter.delete("/pages*").handler(admissionController.handler(RouteClass.WRITE));
+		apiRouter.route("/backups*").handler(admissionController.handler(RouteClass.BACKUP));
+		apiRouter.route("/imports*").handler(admissionController.handler(RouteClass.BACKUP));
+		apiRouter.route("/exports*").handler(admissionController.handler(RouteClass.BACKUP));
+		// thread dumps stop the world, and metrics describe the whole deployment
+		apiRouter.get("/metrics").handler(this::requireAdmin);
+		apiRouter.get("/profiler").handler(this::requireAdmin);
 		
-		apiRouter.get("/token").handler(context -> {
-			LOGGER.info(String.format("headers: %s", context.request().headers()));
+		apiRouter.get("/token").handler(RequestTrace.profiled("apiToken", context -> {
+			LOGGER.debug("token requested by {}", context.request().getHeader("login"));
 			final JsonObject authObject = new JsonObject()
 					.put("username", context.request().headers().get("login"))
 					.put("password", context.request().headers().get("password"))
@@ -132,46 +182,73 @@ public class HttpServerVerticle extends AbstractVerticle {
 				final Single<Boolean> userCanCreate = user.rxIsAuthorized("create");
 				final Single<Boolean> userCanUpdate = user.rxIsAuthorized("update");
 				final Single<Boolean> userCanDelete = user.rxIsAuthorized("delete");
+				final Single<Boolean> userIsAdmin = user.rxIsAuthorized("role:admin");
 				
-				return Single.zip(userCanCreate, userCanUpdate, userCanDelete, (resCreate, resUpdate, resDelete) -> {
-					LOGGER.info(String.format("create: %s| update: %s | delete: %s", resCreate, resUpdate, resDelete)); 
+				return Single.zip(userCanCreate, userCanUpdate, userCanDelete, userIsAdmin, (resCreate, resUpdate, resDelete, resAdmin) -> {
+					LOGGER.debug("create: {} | update: {} | delete: {} | admin: {}", resCreate, resUpdate, resDelete, resAdmin);
 					return jwtAuth.generateToken(new JsonObject()
 							.put("username", context.request().getHeader("login"))
-							.put("canCreate", (Boolean) context.get("userCanCreate"))
-							.put("canUpdate", (Boolean) context.get("userCanUpdate"))
-							.put("canDelete", (Boolean) context.get("userCanDelete"))
+							.put("canCreate", resCreate)
+							.put("canUpdate", resUpdate)
+							.put("canDelete", resDelete)
+							// checked by isAuthorized on the users of the API
+							.put("permissions", resAdmin ? new JsonArray().add(ADMIN_PERMISSION) : new JsonArray())
 						  );
 				});
 			}).subscribe(token -> context.response().putHeader("Content-Type", "text/plain").end(token), t -> context.fail(401));
-		});
+		}));
 			
 		
 		
-		apiRouter.get("/pages").handler(this::apiRoot);
-		apiRouter.get("/pages/:id").handler(this::apiGetPage);
-		apiRouter.post().handler(BodyHandler.create());
-		apiRouter.post("/pages").handler(this::apiCreatePage);
-		apiRouter.put().handler(BodyHandler.create());
-		apiRouter.put("/pages/:id").handler(this::apiUpdatePage);
-		apiRouter.delete("/pages/:id").handler(this::apiDeletePage);
+		apiRouter.get("/pages").handler(RequestTrace.profiled("apiRoot", this::apiRoot));
+		apiRouter.get("/pages/names").handler(RequestTrace.profiled("apiPageNames", this::apiPageNames));
+		apiRouter.get("/pages/backlinks").handler(RequestTrace.profiled("apiBacklinks", this::apiBacklinks));
+		apiRouter.get("/pages/orphans").handler(RequestTrace.profiled("apiOrphanPages", this::apiOrphanPages));
+		apiRouter.get("/pages/:id").handler(RequestTrace.profiled("apiGetPage", this::apiGetPage));
+		apiRouter.get("/pages/:id/history").handler(RequestTrace.profiled("apiPageHistory", this::apiPageHistory));
+		apiRouter.get("/pages/:id/revisions/:revision").handler(RequestTrace.profiled("apiPageRevision", this::apiPageRevision));
+		apiRouter.get("/pages/:id/diff").handler(RequestTrace.profiled("apiPageDiff", this::apiPageDiff));
+		PageUploadHandler pageUploadHandler = new PageUploadHandler(maxBodySize);
+		apiRouter.post("/pages").handler(pageUploadHandler);
+		apiRouter.post("/pages").handler(RequestTrace.profiled("apiCreatePage", this::apiCreatePage));
+		apiRouter.post("/backups").handler(RequestTrace.profiled("apiStartBackup", this::apiStartBackup));
+		apiRouter.get("/backups/:id").handler(RequestTrace.profiled("backupStatusHandler", this::backupStatusHandler));
+		apiRouter.post("/imports").handler(RequestTrace.profiled("apiStartImport", this::apiStartImport));
+		apiRouter.get("/imports/:id").handler(RequestTrace.profiled("apiImportStatus", this::apiImportStatus));
+		apiRouter.post("/exports").handler(RequestTrace.profiled("apiStartExport", this::apiStartExport));
+		apiRouter.get("/exports/:id").handler(RequestTrace.profiled("apiExportStatus", this::apiExportStatus));
+		apiRouter.put("/pages/:id").handler(pageUploadHandler);
+		apiRouter.put("/pages/:id").handler(RequestTrace.profiled("apiUpdatePage", this::apiUpdatePage));
+		apiRouter.patch("/pages/:id").handler(RequestTrace.profiled("apiPatchPage", this::apiPatchPage));
+		apiRouter.delete("/pages/:id").handler(RequestTrace.profiled("apiDeletePage", this::apiDeletePage));
+		apiRouter.get("/metrics").handler(RequestTrace.profiled("apiMetrics", this::apiMetrics));
+		apiRouter.get("/profiler").handler(this::apiProfiler);
 		router.mountSubRouter("/api", apiRouter);
 
-		freeMarkerTemplateEngine = FreeMarkerTemplateEngine.create(vertx);
-
 		int portNumber = config().getInteger(CONFIG_HTTP_SERVER_PORT, 8080);
+		server.websocketHandler(this::feedWebSocketHandler);
 		server.requestHandler(router).listen(portNumber, ar -> {
 			if (ar.succeeded()) {
 				LOGGER.info("HTTP server running on port " + portNumber);
 				promise.complete();
 			} else {
 				LOGGER.error("Could not start HTTP server", ar.cause());
+				HttpSharedResources.release(vertx);
 				promise.fail(ar.cause());
 			}
 		});
-		webClient = WebClient.create(vertx, new WebClientOptions().setSsl(true).setUserAgent("vert-x3"));
 
 	}
 
+	@Override
+	public void stop() {
+		HttpSharedResources.release(vertx);
+	}
+
+	private WikiDatabaseService dbService(RoutingContext context) {
+		return shared.dbService(RequestTrace.of(context));
+	}
+
 	private void loginHandler(RoutingContext context) {
 		context.put("title", "Login");
 		freeMarkerTemplateEngine.render(context.data(), "templates/login.ftl", ar -> {
@@ -186,16 +263,16 @@ public class HttpServerVerticle extends AbstractVerticle {
 	}
 
 	private void indexHandler(RoutingContext context) {
-		context.user().isAuthorized("create", res -> {
+		RequestTrace trace = RequestTrace.of(context);
+		context.user().isAuthorized("create", trace.timed("authz", res -> {
 			boolean canCreatePage = res.succeeded() && res.result();
-			dbService.fetchAllPages(reply -> {
-				LOGGER.info("response received from Database for indexHandler");
+			dbService(context).fetchAllPages(trace.timed("db", reply -> {
 				if (reply.succeeded()) {
 					context.put("title", "Wiki Home");
 					context.put("pages", reply.result().getList());
 					context.put("canCreatePage", canCreatePage);
 					context.put("username", context.user().principal().getString("username"));
-					freeMarkerTemplateEngine.render(context.data(), "templates/index.ftl", ar -> {
+					freeMarkerTemplateEngine.render(context.data(), "templates/index.ftl", trace.timed("template", ar -> {
 						if (ar.succeeded()) {
 							context.response().putHeader("Content-Type", "text/html");
 							context.response().end(ar.result());
@@ -203,22 +280,30 @@ public class HttpServerVerticle extends AbstractVerticle {
 							LOGGER.error("indexHandler Error", ar.cause());
 							context.fail(ar.cause());
 						}
-					});
+					}));
 				} else {
 					LOGGER.error("indexHandler Error", reply.cause());
 					context.fail(reply.cause());
 				}
-			});
-		});
+			}));
+		}));
 
 	}
 
+	private static final int DEFAULT_PAGE_NAMES_LIMIT = 20;
+	private static final int MAX_PAGE_NAMES_LIMIT = 1000;
+	private static final int MAX_PAGES_BY_IDS = 500;
+
+	private static final List<String> PAGE_FIELDS = Arrays.asList("id", "name", "updated", "markdown", "html");
+	private static final List<String> DEFAULT_PAGES_FIELDS = Arrays.asList("id", "name");
+
 	private static final String EMPTY_PAGE_MARKDOWN = "# A new page\n" + "\n" + "Feel-free to write in Markdown!\n";
 
 	private void pageRenderingHandler(RoutingContext context) {
 
 		String requestedPage = context.request().getParam("page");
-		dbService.fetchPage(requestedPage, reply -> {
+		RequestTrace trace = RequestTrace.of(context);
+		dbService(context).fetchPage(requestedPage, trace.timed("db", reply -> {
 
 			if (reply.succeeded()) {
 				JsonObject body = (JsonObject) reply.result();
@@ -229,22 +314,37 @@ public class HttpServerVerticle extends AbstractVerticle {
 				context.put("id", body.getInteger("id", -1));
 				context.put("newPage", found ? "no" : "yes");
 				context.put("rawContent", rawContent);
-				context.put("content", Processor.process(rawContent));
 				context.put("timestamp", new Date().toString());
-
-				freeMarkerTemplateEngine.render(context.data(), "templates/page.ftl", ar -> {
-					if (ar.succeeded()) {
-						context.response().putHeader("Content-Type", "text/html");
-						context.response().end(ar.result());
-					} else {
-						context.fail(ar.cause());
-					}
-				});
+				if (body.containsKey("html")) {
+					context.put("content", body.getString("html"));
+					renderPageTemplate(context);
+				} else {
+					shared.renderer.render(rawContent, trace.timed("markdown", html -> {
+						if (html.succeeded()) {
+							context.put("content", html.result());
+							renderPageTemplate(context);
+						} else {
+							LOGGER.warn("could not render page " + requestedPage, html.cause());
+							context.fail(503);
+						}
+					}));
+				}
 
 			} else {
 				context.fail(reply.cause());
 			}
-		});
+		}));
+	}
+
+	private void renderPageTemplate(RoutingContext context) {
+		freeMarkerTemplateEngine.render(context.data(), "templates/page.ftl", RequestTrace.of(context).timed("template", ar -> {
+			if (ar.succeeded()) {
+				context.response().putHeader("Content-Type", "text/html");
+				context.response().end(ar.result());
+			} else {
+				context.fail(ar.cause());
+			}
+		}));
 	}
 
 	private void pageUpdateHandler(RoutingContext context) {
@@ -265,9 +365,9 @@ public class HttpServerVerticle extends AbstractVerticle {
 		};
 
 		if ("yes".equals(context.request().getParam("newPage"))) {
-			dbService.createPage(title, markdown, handler);
+			dbService(context).createPage(title, markdown, handler);
 		} else {
-			dbService.savePage(Integer.valueOf(id), markdown, handler);
+			dbService(context).savePage(Integer.valueOf(id), markdown, handler);
 		}
 
 	}
@@ -284,47 +384,32 @@ public class HttpServerVerticle extends AbstractVerticle {
 	}
 
 	private void backupHandler(RoutingContext context) {
-		LOGGER.info("in backupHandler");
-		dbService.fetchAllPagesData(reply -> {
-			if (reply.succeeded()) {
-				JsonArray filesObject = new JsonArray();
-
-				JsonObject payload = new JsonObject().put("files", filesObject).put("language", "plaintext")
-						.put("title", "vertx-wiki-backup").put("public", true);
-
-				reply.result().forEach(page -> {
-					filesObject.add(new JsonObject().put("name", page.getString("NAME")).put("content",
-							page.getString("CONTENT")));
-				});
-
-				webClient.post(443, "snippets.glot.io", "/snippets").putHeader("Content-Type", "application/json")
-						.as(BodyCodec.jsonObject()).sendJsonObject(payload, postBackup -> {
-							LOGGER.info(String.format("reponse : %s", postBackup.result().body()));
-							if (postBackup.succeeded()) {
-								final HttpResponse<JsonObject> responsePost = postBackup.result();
-								JsonObject body = responsePost.body();
-								if (HttpStatusClass.SUCCESS.contains(responsePost.statusCode())) {
-									String url = String.format("https://glot.io/snippets/%s", body.getString("id"));
-									context.put("backup_gist_url", url);
-									indexHandler(context);
-								} else {
-									final StringBuilder message = new StringBuilder();
-									message.append("Could not backup the wiki: ");
-									if (!body.isEmpty()) {
-										message.append(System.getProperty("line.separator"))
-												.append(body.encodePrettily());
-									}
-									LOGGER.error(message.toString());
-									context.fail(502);
-								}
-							} else {
-								LOGGER.error("could not post snippet to Glot.io", postBackup.cause());
-								context.fail(postBackup.cause());
-							}
-						});
+		context.user().isAuthorized("create", isAllowedResultHandler -> {
+			if (!(isAllowedResultHandler.succeeded() && isAllowedResultHandler.result())) {
+				context.response().setStatusCode(403).end();
+				return;
+			}
+			JsonObject options = new JsonObject().put("incremental",
+					"true".equals(context.request().getParam("incremental")));
+			dbService(context).startBackup(options, reply -> {
+				if (reply.succeeded()) {
+					context.put("backup_job", reply.result().getString("id"));
+					indexHandler(context);
+				} else {
+					LOGGER.error("could not start backup", reply.cause());
+					context.fail(reply.cause());
+				}
+			});
+		});
+	}
 
+	private void backupStatusHandler(RoutingContext context) {
+		dbService(context).fetchBackupStatus(context.request().getParam("id"), reply -> {
+			if (reply.succeeded()) {
+				context.response().setStatusCode(reply.result().getBoolean("found") ? 200 : 404);
+				context.response().putHeader("Content-Type", "application/json");
+				context.response().end(reply.result().encode());
 			} else {
-				LOGGER.error("failed at fetching data to backup");
 				context.fail(reply.cause());
 			}
 		});
@@ -334,7 +419,7 @@ public class HttpServerVerticle extends AbstractVerticle {
 		context.user().isAuthorized("delete", isDeletableResultHandler -> {
 			if (isDeletableResultHandler.succeeded() && isDeletableResultHandler.result()) {
 				String id = context.request().getParam("id");
-				dbService.deletePage(Integer.valueOf(id), reply -> {
+				dbService(context).deletePage(Integer.valueOf(id), reply -> {
 					if (reply.succeeded()) {
 						context.response().setStatusCode(303);
 						context.response().putHeader("Location", "/");
@@ -349,12 +434,39 @@ public class HttpServerVerticle extends AbstractVerticle {
 		});
 	}
 
+	/**
+	 * Fields requested with the {@code fields} parameter (comma-separated), or the given defaults;
+	 * {@code null} after answering 400 when a field is unknown.
+	 */
+	private List<String> requestedFields(RoutingContext context, List<String> defaults) {
+		String fieldsParam = context.request().getParam("fields");
+		if (fieldsParam == null) {
+			return defaults;
+		}
+		List<String> fields = Arrays.stream(fieldsParam.split(",")).map(String::trim).filter(field -> !field.isEmpty())
+				.distinct().collect(Collectors.toList());
+		if (fields.isEmpty() || !PAGE_FIELDS.containsAll(fields)) {
+			context.response().setStatusCode(400);
+			context.response().putHeader("Content-Type", "application/json");
+			context.response().end(new JsonObject().put("success", false)
+					.put("error", "fields must be a subset of " + String.join(",", PAGE_FIELDS)).encode());
+			return null;
+		}
+		return fields;
+	}
+
 	private void apiRoot(RoutingContext context) {
-		dbService.fetchAllPagesData(allPagesDataHandler -> {
+		if (context.request().getParam("ids") != null) {
+			apiGetPagesByIds(context);
+			return;
+		}
+		List<String> fields = requestedFields(context, DEFAULT_PAGES_FIELDS);
+		if (fields == null) {
+			return;
+		}
+		dbService(context).fetchPagesFields(fields, RequestTrace.of(context).timed("db", allPagesDataHandler -> {
 			if (allPagesDataHandler.succeeded()) {
-				List<JsonObject> pages = allPagesDataHandler.result().stream().map(element -> new JsonObject()
-						.put("id", element.getInteger("ID")).put("name", element.getString("NAME")))
-						.collect(Collectors.toList());
+				List<JsonObject> pages = allPagesDataHandler.result();
 				final JsonObject responseOK = new JsonObject().put("success", true).put("pages", pages);
 				context.response().setStatusCode(200).putHeader("Content-Type", "application/json")
 						.end(responseOK.encode());
@@ -366,20 +478,129 @@ public class HttpServerVerticle extends AbstractVerticle {
 						.end(responseFailed.encode());
 				LOGGER.error("API: could not fetch all pages data from database", allPagesDataHandler.cause());
 			}
+		}));
+	}
+
+	// GET /api/pages?ids=3,1,2: the pages in the order of the ids, and the ids of the missing ones
+	private void apiGetPagesByIds(RoutingContext context) {
+		List<Integer> ids;
+		try {
+			ids = Arrays.stream(context.request().getParam("ids").split(",")).map(String::trim).filter(id -> !id.isEmpty())
+					.map(Integer::valueOf).collect(Collectors.toList());
+		} catch (NumberFormatException e) {
+			ids = null;
+		}
+		if (ids == null || ids.isEmpty() || ids.size() > MAX_PAGES_BY_IDS) {
+			context.response().setStatusCode(400);
+			context.response().putHeader("Content-Type", "application/json");
+			context.response().end(new JsonObject().put("success", false)
+					.put("error", "ids must be a list of 1 to " + MAX_PAGES_BY_IDS + " comma-separated page ids").encode());
+			return;
+		}
+		List<String> fields = requestedFields(context, PAGE_FIELDS);
+		if (fields == null) {
+			return;
+		}
+		dbService(context).fetchPagesByIds(ids, fields, RequestTrace.of(context).timed("db", reply -> {
+			JsonObject response = new JsonObject();
+			if (reply.succeeded()) {
+				response.put("success", true).mergeIn(reply.result());
+				context.response().setStatusCode(200);
+			} else {
+				response.put("success", false).put("error", reply.cause().getMessage());
+				context.response().setStatusCode(500);
+			}
+			context.response().putHeader("Content-Type", "application/json");
+			context.response().end(response.encode());
+		}));
+	}
+
+	private void apiPageNames(RoutingContext context) {
+		String prefix = context.request().getParam("prefix");
+		String limitParam = context.request().getParam("limit");
+		int limit;
+		try {
+			limit = Math.min(limitParam == null ? DEFAULT_PAGE_NAMES_LIMIT : Integer.parseInt(limitParam), MAX_PAGE_NAMES_LIMIT);
+		} catch (NumberFormatException e) {
+			limit = 0;
+		}
+		if (limit < 1) {
+			context.response().setStatusCode(400);
+			context.response().putHeader("Content-Type", "application/json");
+			context.response().end(new JsonObject().put("success", false).put("error", "The limit must be a positive integer").encode());
+			return;
+		}
+		dbService(context).fetchPageNames(prefix == null ? "" : prefix, limit, reply -> {
+			JsonObject response = new JsonObject();
+			if (reply.succeeded()) {
+				response.put("success", true).put("names", reply.result());
+				context.response().setStatusCode(200);
+			} else {
+				response.put("success", false).put("error", reply.cause().getMessage());
+				context.response().setStatusCode(500);
+			}
+			context.response().putHeader("Content-Type", "application/json");
+			context.response().end(response.encode());
 		});
 	}
 
+	private void apiBacklinks(RoutingContext context) {
+		String name = context.request().getParam("name");
+		if (name == null) {
+			context.response().setStatusCode(400);
+			context.response().putHeader("Content-Type", "application/json");
+			context.response().end(new JsonObject().put("success", false).put("error", "Missing page name").encode());
+			return;
+		}
+		dbService(context).fetchBacklinks(name, reply -> apiNames(context, reply));
+	}
+
+	private void apiOrphanPages(RoutingContext context) {
+		dbService(context).fetchOrphanPages(reply -> apiNames(context, reply));
+	}
+
+	private void apiNames(RoutingContext context, AsyncResult<JsonArray> reply) {
+		JsonObject response = new JsonObject();
+		if (reply.succeeded()) {
+			response.put("success", true).put("names", reply.result());
+			context.response().setStatusCode(200);
+		} else {
+			response.put("success", false).put("error", reply.cause().getMessage());
+			context.response().setStatusCode(500);
+		}
+		context.response().putHeader("Content-Type", "application/json");
+		context.response().end(response.encode());
+	}
+
 	private void apiGetPage(RoutingContext context) {
 		int id = Integer.valueOf(context.request().getParam("id"));
-		dbService.fetchPageById(id, reply -> {
+		if (context.request().getParam("fields") != null) {
+			apiGetPageFields(context, id);
+			return;
+		}
+		RequestTrace trace = RequestTrace.of(context);
+		dbService(context).fetchPageById(id, trace.timed("db", reply -> {
 			JsonObject response = new JsonObject();
 			if (reply.succeeded()) {
 				JsonObject dbObject = reply.result();
 				if (dbObject.getBoolean("found")) {
 					JsonObject payload = new JsonObject().put("name", dbObject.getString("name"))
-							.put("id", dbObject.getInteger("id")).put("markdown", dbObject.getString("content"))
-							.put("html", Processor.process(dbObject.getString("content")));
-					response.put("success", true).put("page", payload);
+							.put("id", dbObject.getInteger("id")).put("markdown", dbObject.getString("content"));
+					if (!dbObject.containsKey("html")) {
+						shared.renderer.render(dbObject.getString("content"), trace.timed("markdown", html -> {
+							if (html.succeeded()) {
+								response.put("success", true).put("page", payload.put("html", html.result()));
+								context.response().setStatusCode(200);
+							} else {
+								response.put("success", false).put("error", html.cause().getMessage());
+								context.response().setStatusCode(503);
+							}
+							context.response().putHeader("Content-Type", "application/json");
+							context.response().end(response.encode());
+						}));
+						return;
+					}
+					response.put("success", true).put("page", payload.put("html", dbObject.getString("html")));
 					context.response().setStatusCode(200);
 				} else {
 					context.response().setStatusCode(404);
@@ -391,15 +612,98 @@ public class HttpServerVerticle extends AbstractVerticle {
 			}
 			context.response().putHeader("Content-Type", "application/json");
 			context.response().end(response.encode());
-		});
+		}));
+	}
+
+	private void apiPageHistory(RoutingContext context) {
+		int id = Integer.valueOf(context.request().getParam("id"));
+		dbService(context).fetchPageHistory(id, RequestTrace.of(context).timed("db", reply -> {
+			JsonObject response = new JsonObject();
+			if (reply.succeeded()) {
+				response.put("success", true).put("revisions", reply.result());
+				context.response().setStatusCode(200);
+			} else {
+				response.put("success", false).put("error", reply.cause().getMessage());
+				context.response().setStatusCode(500);
+			}
+			context.response().putHeader("Content-Type", "application/json");
+			context.response().end(response.encode());
+		}));
+	}
+
+	private void apiPageRevision(RoutingContext context) {
+		int id = Integer.valueOf(context.request().getParam("id"));
+		int revision = Integer.valueOf(context.request().getParam("revision"));
+		dbService(context).fetchPageRevision(id, revision, RequestTrace.of(context).timed("db",
+				reply -> apiRevisionReply(context, reply, "revision", "There is no revision " + revision + " of page " + id)));
+	}
+
+	private void apiPageDiff(RoutingContext context) {
+		int id = Integer.valueOf(context.request().getParam("id"));
+		String from = context.request().getParam("from");
+		String to = context.request().getParam("to");
+		if (from == null || to == null) {
+			context.response().setStatusCode(400);
+			context.response().putHeader("Content-Type", "application/json");
+			context.response().end(new JsonObject().put("success", false).put("error", "Missing from or to revision").encode());
+			return;
+		}
+		dbService(context).fetchPageDiff(id, Integer.valueOf(from), Integer.valueOf(to), RequestTrace.of(context).timed("db",
+				reply -> apiRevisionReply(context, reply, "diff", "There is no revision " + from + " or " + to + " of page " + id)));
+	}
+
+	private void apiRevisionReply(RoutingContext context, AsyncResult<JsonObject> reply, String key, String notFound) {
+		JsonObject response = new JsonObject();
+		if (reply.succeeded()) {
+			JsonObject result = reply.result();
+			if (result.getBoolean("found")) {
+				result.remove("found");
+				response.put("success", true).put(key, result);
+				context.response().setStatusCode(200);
+			} else {
+				context.response().setStatusCode(404);
+				response.put("success", false).put("error", notFound);
+			}
+		} else {
+			response.put("success", false).put("error", reply.cause().getMessage());
+			context.response().setStatusCode(500);
+		}
+		context.response().putHeader("Content-Type", "application/json");
+		context.response().end(response.encode());
+	}
+
+	private void apiGetPageFields(RoutingContext context, int id) {
+		List<String> fields = requestedFields(context, PAGE_FIELDS);
+		if (fields == null) {
+			return;
+		}
+		dbService(context).fetchPageFields(id, fields, RequestTrace.of(context).timed("db", reply -> {
+			JsonObject response = new JsonObject();
+			if (reply.succeeded()) {
+				JsonObject page = reply.result();
+				if (page.getBoolean("found")) {
+					page.remove("found");
+					response.put("success", true).put("page", page);
+					context.response().setStatusCode(200);
+				} else {
+					context.response().setStatusCode(404);
+					response.put("success", false).put("error", "There is no page with ID " + id);
+				}
+			} else {
+				response.put("success", false).put("error", reply.cause().getMessage());
+				context.response().setStatusCode(500);
+			}
+			context.response().putHeader("Content-Type", "application/json");
+			context.response().end(response.encode());
+		}));
 	}
 
 	private void apiCreatePage(RoutingContext context) {
-		JsonObject page = context.getBodyAsJson();
+		JsonObject page = context.get(PageUploadHandler.PAGE_KEY);
 		if (!validateJsonPageDocument(context, page, "name", "markdown")) {
 			return;
 		}
-		dbService.createPage(page.getString("name"), page.getString("markdown"), reply -> {
+		dbService(context).createPage(page.getString("name"), page.getString("markdown"), reply -> {
 			if (reply.succeeded()) {
 				context.response().setStatusCode(201);
 				context.response().putHeader("Content-Type", "application/json");
@@ -413,20 +717,248 @@ public class HttpServerVerticle extends AbstractVerticle {
 		});
 	}
 
+	// the options of a backup or export job, all optional; null once a malformed body is answered with a 400
+	private JsonObject jobOptions(RoutingContext context) {
+		try {
+			return context.getBody().length() == 0 ? new JsonObject() : context.getBodyAsJson();
+		} catch (DecodeException e) {
+			context.response().setStatusCode(400);
+			context.response().putHeader("Content-Type", "application/json");
+			context.response().end(new JsonObject().put("success", false).put("error", "Bad request payload").encode());
+			return null;
+		}
+	}
+
+	private void apiStartBackup(RoutingContext context) {
+		JsonObject options = jobOptions(context);
+		if (options == null) {
+			return;
+		}
+		dbService(context).startBackup(options, reply -> {
+			JsonObject response = new JsonObject();
+			if (reply.succeeded()) {
+				response.put("success", true).put("backup", reply.result());
+				context.response().setStatusCode(202);
+			} else {
+				response.put("success", false).put("error", reply.cause().getMessage());
+				context.response().setStatusCode(409);
+			}
+			context.response().putHeader("Content-Type", "application/json");
+			context.response().end(response.encode());
+		});
+	}
+
+	private void apiStartImport(RoutingContext context) {
+		JsonObject options;
+		try {
+			options = context.getBody().length() == 0 ? null : context.getBodyAsJson();
+		} catch (DecodeException e) {
+			options = null;
+		}
+		if (!validateJsonPageDocument(context, options, "file")) {
+			return;
+		}
+		dbService(context).startImport(options, reply -> {
+			JsonObject response = new JsonObject();
+			if (reply.succeeded()) {
+				response.put("success", true).put("import", reply.result());
+				context.response().setStatusCode(202);
+			} else {
+				response.put("success", false).put("error", reply.cause().getMessage());
+				context.response().setStatusCode(409);
+			}
+			context.response().putHeader("Content-Type", "application/json");
+			context.response().end(response.encode());
+		});
+	}
+
+	private void apiImportStatus(RoutingContext context) {
+		dbService(context).fetchImportStatus(context.request().getParam("id"), reply -> {
+			if (reply.succeeded()) {
+				context.response().setStatusCode(reply.result().getBoolean("found") ? 200 : 404);
+				context.response().putHeader("Content-Type", "application/json");
+				context.response().end(reply.result().encode());
+			} else {
+				context.fail(reply.cause());
+			}
+		});
+	}
+
+	private void apiStartExport(RoutingContext context) {
+		JsonObject options = jobOptions(context);
+		if (options == null) {
+			return;
+		}
+		dbService(context).startExport(options, reply -> {
+			JsonObject response = new JsonObject();
+			if (reply.succeeded()) {
+				response.put("success", true).put("export", reply.result());
+				context.response().setStatusCode(202);
+			} else {
+				response.put("success", false).put("error", reply.cause().getMessage());
+				context.response().setStatusCode(409);
+			}
+			context.response().putHeader("Content-Type", "application/json");
+			context.response().end(response.encode());
+		});
+	}
+
+	private void apiExportStatus(RoutingContext context) {
+		dbService(context).fetchExportStatus(context.request().getParam("id"), reply -> {
+			if (reply.succeeded()) {
+				context.response().setStatusCode(reply.result().getBoolean("found") ? 200 : 404);
+				context.response().putHeader("Content-Type", "application/json");
+				context.response().end(reply.result().encode());
+			} else {
+				context.fail(reply.cause());
+			}
+		});
+	}
+
+	private void apiMetrics(RoutingContext context) {
+		JsonObject metrics = new JsonObject().put("instance", deploymentID()).put("admission",
+				admissionController.metrics()).put("feed", feed.metrics()).put("rendering", shared.renderer.metrics())
+				.put("logging", AccountingAsyncAppender.allMetrics());
+		dbService(context).fetchStatistics(reply -> {
+			if (reply.succeeded()) {
+				metrics.put("database", reply.result());
+			} else {
+				metrics.put("database", new JsonObject().put("error", reply.cause().getMessage()));
+			}
+			context.response().setStatusCode(200).putHeader("Content-Type", "application/json").end(metrics.encode());
+		});
+	}
+
+	private void requireAdmin(RoutingContext context) {
+		context.user().isAuthorized(ADMIN_PERMISSION, authorized -> {
+			if (authorized.succeeded() && authorized.result()) {
+				context.next();
+			} else {
+				context.response().setStatusCode(403);
+				context.response().putHeader("Content-Type", "application/json");
+				context.response().end(new JsonObject().put("success", false).put("error", "Administrators only").encode());
+			}
+		});
+	}
+
+	private void apiProfiler(RoutingContext context) {
+		context.response().setStatusCode(200).putHeader("Content-Type", "application/json")
+				.end(shared.profiler.snapshot().encode());
+	}
+
+	// routed before the JWT handler: EventSource clients cannot set an Authorization header either
+	private void apiFeed(RoutingContext context) {
+		String authorization = context.request().getHeader("Authorization");
+		String token = authorization != null && authorization.startsWith("Bearer ") ? authorization.substring("Bearer ".length())
+				: context.request().getParam("token");
+		if (token == null) {
+			context.fail(401);
+			return;
+		}
+		shared.jwtAuth.authenticate(new JsonObject().put("jwt", token), ar -> {
+			if (context.response().closed()) {
+				return;
+			}
+			if (ar.succeeded()) {
+				context.setUser(ar.result());
+				String lastEventId = context.request().getHeader("Last-Event-ID");
+				feed.subscribe(context.response(), parseSequence(lastEventId != null ? lastEventId : context.request().getParam("since")));
+			} else {
+				context.fail(401);
+			}
+		});
+	}
+
+	// WebSocket clients cannot set an Authorization header, hence the token query parameter
+	private void feedWebSocketHandler(ServerWebSocket webSocket) {
+		if (!FEED_WEBSOCKET_PATH.equals(webSocket.path())) {
+			webSocket.reject();
+			return;
+		}
+		Map<String, List<String>> params = new QueryStringDecoder(webSocket.uri()).parameters();
+		String token = params.containsKey("token") ? params.get("token").get(0) : null;
+		Long since = params.containsKey("since") ? parseSequence(params.get("since").get(0)) : null;
+		if (token == null) {
+			webSocket.close();
+			return;
+		}
+		shared.jwtAuth.authenticate(new JsonObject().put("jwt", token), ar -> {
+			if (ar.succeeded()) {
+				feed.subscribe(webSocket, since);
+			} else {
+				webSocket.close();
+			}
+		});
+	}
+
+	private static Long parseSequence(String sequence) {
+		try {
+			return sequence == null ? null : Long.valueOf(sequence);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
 	private void apiUpdatePage(RoutingContext context) {
 		int id = Integer.valueOf(context.request().getParam("id"));
-		JsonObject page = context.getBodyAsJson();
+		JsonObject page = context.get(PageUploadHandler.PAGE_KEY);
 		if (!validateJsonPageDocument(context, page, "markdown")) {
 			return;
 		}
-		dbService.savePage(id, page.getString("markdown"), reply -> {
+		dbService(context).savePage(id, page.getString("markdown"), reply -> {
 			handleSimpleDbReply(context, reply);
 		});
 	}
 
+	// PATCH /api/pages/:id with {"base": <updated time the delta applies to>, "delta": [<PageDelta operations>]}
+	private void apiPatchPage(RoutingContext context) {
+		int id = Integer.valueOf(context.request().getParam("id"));
+		JsonObject patch;
+		try {
+			patch = context.getBodyAsJson();
+		} catch (DecodeException e) {
+			patch = null;
+		}
+		if (patch == null || !(patch.getValue("base") instanceof Number) || !(patch.getValue("delta") instanceof JsonArray)) {
+			context.response().setStatusCode(400);
+			context.response().putHeader("Content-Type", "application/json");
+			context.response().end(new JsonObject().put("success", false).put("error", "Expected a base and a delta").encode());
+			return;
+		}
+		dbService(context).patchPage(id, patch.getLong("base"), patch.getJsonArray("delta"), RequestTrace.of(context).timed("db", reply -> {
+			JsonObject response = new JsonObject();
+			if (reply.succeeded()) {
+				JsonObject result = reply.result();
+				switch (result.getString("status")) {
+				case "patched":
+					response.put("success", true).put("updated", result.getLong("updated"));
+					context.response().setStatusCode(200);
+					break;
+				case "conflict":
+					response.put("success", false).put("error", "Page " + id + " was updated since " + patch.getLong("base"))
+							.put("updated", result.getLong("updated"));
+					context.response().setStatusCode(409);
+					break;
+				case "invalid":
+					response.put("success", false).put("error", result.getString("error"));
+					context.response().setStatusCode(422);
+					break;
+				default:
+					response.put("success", false).put("error", "There is no page with ID " + id);
+					context.response().setStatusCode(404);
+				}
+			} else {
+				response.put("success", false).put("error", reply.cause().getMessage());
+				context.response().setStatusCode(500);
+			}
+			context.response().putHeader("Content-Type", "application/json");
+			context.response().end(response.encode());
+		}));
+	}
+
 	private void apiDeletePage(RoutingContext context) {
 		int id = Integer.valueOf(context.request().getParam("id"));
-		dbService.deletePage(id, reply -> {
+		dbService(context).deletePage(id, reply -> {
 			handleSimpleDbReply(context, reply);
 		});
 	}
@@ -445,8 +977,8 @@ public class HttpServerVerticle extends AbstractVerticle {
 	}
 
 	private boolean validateJsonPageDocument(RoutingContext context, JsonObject page, String... expectedKeys) {
-		if (!Arrays.stream(expectedKeys).allMatch(page::containsKey)) {
-			LOGGER.error("Bad page creation JSON payload: " + page.encodePrettily() + " from "
+		if (page == null || !Arrays.stream(expectedKeys).allMatch(page::containsKey)) {
+			LOGGER.error("Bad page creation JSON payload: " + (page == null ? "none" : page.encodePrettily()) + " from "
 					+ context.request().remoteAddress());
 			context.response().setStatusCode(400);
 			context.response().putHeader("Content-Type", "application/json");
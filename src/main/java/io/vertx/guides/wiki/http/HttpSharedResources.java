@@ -0,0 +1,106 @@
+package io.vertx.guides.wiki.http;
+
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_JDBC_DRIVER_CLASS;
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_JDBC_MAX_POOL_SIZE;
+import static io.vertx.guides.wiki.database.DatabaseConstants.CONFIG_WIKIDB_JDBC_URL;
+import static io.vertx.guides.wiki.database.DatabaseConstants.DEFAULT_JDBC_MAX_POOL_SIZE;
+import static io.vertx.guides.wiki.database.DatabaseConstants.DEFAULT_WIKIDB_JDBC_DRIVER_CLASS;
+import static io.vertx.guides.wiki.database.DatabaseConstants.DEFAULT_WIKIDB_JDBC_URL;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.vertx.core.Handler;
+import io.vertx.core.eventbus.DeliveryContext;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.PubSecKeyOptions;
+import io.vertx.ext.auth.jwt.JWTAuthOptions;
+import io.vertx.guides.wiki.database.WikiDatabaseService;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.ext.auth.jdbc.JDBCAuth;
+import io.vertx.reactivex.ext.auth.jwt.JWTAuth;
+import io.vertx.reactivex.ext.jdbc.JDBCClient;
+import io.vertx.reactivex.ext.web.sstore.ClusteredSessionStore;
+import io.vertx.reactivex.ext.web.sstore.LocalSessionStore;
+import io.vertx.reactivex.ext.web.sstore.SessionStore;
+import io.vertx.reactivex.ext.web.templ.freemarker.FreeMarkerTemplateEngine;
+
+/**
+ * Thread-safe components used by every {@link HttpServerVerticle} instance of a Vert.x instance.
+ * They are built by the first instance to start, from its configuration, and dropped when the last
+ * instance stops, so deploying more instances does not multiply them.
+ */
+final class HttpSharedResources {
+
+	private static final Map<io.vertx.core.Vertx, HttpSharedResources> REGISTRY = new ConcurrentHashMap<>();
+
+	final WikiDatabaseService dbService;
+	private final io.vertx.core.Vertx vertx;
+	private final Handler<DeliveryContext<Object>> tracePropagator;
+	final JDBCAuth auth;
+	final JWTAuth jwtAuth;
+	final SessionStore sessionStore;
+	final FreeMarkerTemplateEngine templateEngine;
+	final EventLoopProfiler profiler;
+	final MarkdownRenderingExecutor renderer;
+
+	private int references;
+
+	private HttpSharedResources(Vertx vertx, JsonObject config) {
+		this.vertx = vertx.getDelegate();
+		final String dbQueue = config.getString(HttpServerVerticle.CONFIG_WIKI_DB_QUEUE, "wikidb.queue");
+		dbService = WikiDatabaseService.createProxy(this.vertx, dbQueue, new DeliveryOptions().setSendTimeout(
+				config.getLong(HttpServerVerticle.CONFIG_WIKI_DB_QUEUE_TIMEOUT, HttpServerVerticle.DEFAULT_WIKI_DB_QUEUE_TIMEOUT)));
+		tracePropagator = RequestTrace.propagator(dbQueue);
+		this.vertx.eventBus().addOutboundInterceptor(tracePropagator);
+
+		JDBCClient client = JDBCClient.createShared(vertx,
+				new JsonObject().put("url", config.getString(CONFIG_WIKIDB_JDBC_URL, DEFAULT_WIKIDB_JDBC_URL))
+						.put("driver_class", config.getString(CONFIG_WIKIDB_JDBC_DRIVER_CLASS, DEFAULT_WIKIDB_JDBC_DRIVER_CLASS))
+						.put("max_pool_size", config.getInteger(CONFIG_WIKIDB_JDBC_MAX_POOL_SIZE, DEFAULT_JDBC_MAX_POOL_SIZE)));
+		auth = JDBCAuth.create(vertx, client);
+
+		jwtAuth = JWTAuth.create(vertx, new JWTAuthOptions()
+				.addPubSecKey(new PubSecKeyOptions()
+						.setAlgorithm("HS256")
+						.setPublicKey("secret")
+						.setSymmetric(true)));
+
+		sessionStore = vertx.isClustered() ? ClusteredSessionStore.create(vertx) : LocalSessionStore.create(vertx);
+		templateEngine = FreeMarkerTemplateEngine.create(vertx);
+		profiler = new EventLoopProfiler(config.getLong(HttpServerVerticle.CONFIG_HTTP_PROFILER_STALL_THRESHOLD,
+				HttpServerVerticle.DEFAULT_PROFILER_STALL_THRESHOLD));
+		renderer = new MarkdownRenderingExecutor(this.vertx,
+				config.getInteger(HttpServerVerticle.CONFIG_HTTP_RENDERING_POOL_SIZE, Runtime.getRuntime().availableProcessors()),
+				config.getInteger(HttpServerVerticle.CONFIG_HTTP_RENDERING_INLINE_THRESHOLD, HttpServerVerticle.DEFAULT_RENDERING_INLINE_THRESHOLD),
+				config.getInteger(HttpServerVerticle.CONFIG_HTTP_RENDERING_QUEUE_LIMIT, HttpServerVerticle.DEFAULT_RENDERING_QUEUE_LIMIT),
+				config.getLong(HttpServerVerticle.CONFIG_HTTP_RENDERING_TIMEOUT, HttpServerVerticle.DEFAULT_RENDERING_TIMEOUT));
+	}
+
+	/** The shared proxy, whose next call carries the context of the given trace. */
+	WikiDatabaseService dbService(RequestTrace trace) {
+		trace.propagateToNextCall();
+		return dbService;
+	}
+
+	static HttpSharedResources acquire(Vertx vertx, JsonObject config) {
+		return REGISTRY.compute(vertx.getDelegate(), (key, resources) -> {
+			final HttpSharedResources acquired = resources == null ? new HttpSharedResources(vertx, config) : resources;
+			acquired.references++;
+			return acquired;
+		});
+	}
+
+	static void release(Vertx vertx) {
+		REGISTRY.computeIfPresent(vertx.getDelegate(), (key, resources) -> {
+			if (--resources.references > 0) {
+				return resources;
+			}
+			resources.vertx.eventBus().removeOutboundInterceptor(resources.tracePropagator);
+			resources.profiler.close();
+			resources.renderer.close();
+			return null;
+		});
+	}
+}
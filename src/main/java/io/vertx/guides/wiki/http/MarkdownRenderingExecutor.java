@@ -0,0 +1,117 @@
+package io.vertx.guides.wiki.http;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.json.JsonObject;
+import io.vertx.guides.wiki.database.MarkdownRenderer;
+
+/**
+ * Renders Markdown for the HTTP verticles. Pages below the inline threshold are rendered on the
+ * calling event loop, where a worker hop would cost more than the rendering itself; larger pages
+ * go to a dedicated worker pool, so that they cannot hold an event loop nor starve the shared
+ * worker pool. Renderings beyond the queue limit are rejected, and a rendering still running after
+ * the timeout is reported as failed (it completes in the background, still counted in the queue).
+ * Shared by all the HTTP verticles of a Vert.x instance, hence thread-safe.
+ */
+final class MarkdownRenderingExecutor {
+
+	static final String POOL_NAME = "wiki-markdown";
+
+	private final Vertx vertx;
+	private final WorkerExecutor executor;
+	private final int inlineThreshold;
+	private final int queueLimit;
+	private final long timeoutMillis;
+
+	private final AtomicInteger pending = new AtomicInteger();
+	private final LongAdder inline = new LongAdder();
+	private final LongAdder offloaded = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder timedOut = new LongAdder();
+	private final LongAdder queueWaitNanos = new LongAdder();
+	private final AtomicLong maxQueueWaitNanos = new AtomicLong();
+	private final LongAdder renderNanos = new LongAdder();
+	private final AtomicLong maxRenderNanos = new AtomicLong();
+
+	MarkdownRenderingExecutor(Vertx vertx, int poolSize, int inlineThreshold, int queueLimit, long timeoutMillis) {
+		this.vertx = vertx;
+		this.executor = vertx.createSharedWorkerExecutor(POOL_NAME, poolSize);
+		this.inlineThreshold = inlineThreshold;
+		this.queueLimit = queueLimit;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * Renders the given Markdown with the {@link MarkdownRenderer}, calling the handler on the calling
+	 * context. A missing Markdown renders as an empty page.
+	 */
+	void render(String markdown, Handler<AsyncResult<String>> resultHandler) {
+		if (markdown == null || markdown.length() < inlineThreshold) {
+			inline.increment();
+			resultHandler.handle(Future.succeededFuture(MarkdownRenderer.render(markdown)));
+			return;
+		}
+		if (pending.incrementAndGet() > queueLimit) {
+			pending.decrementAndGet();
+			rejected.increment();
+			resultHandler.handle(Future.failedFuture(new RejectedExecutionException("Markdown rendering queue full")));
+			return;
+		}
+		offloaded.increment();
+		final long enqueuedAt = System.nanoTime();
+		// timer and result handlers both run on the calling context
+		final boolean[] done = { false };
+		final long timer = vertx.setTimer(timeoutMillis, id -> {
+			done[0] = true;
+			timedOut.increment();
+			resultHandler.handle(Future.failedFuture(new TimeoutException("Markdown rendering took more than " + timeoutMillis + " ms")));
+		});
+		executor.<String>executeBlocking(promise -> {
+			final long startedAt = System.nanoTime();
+			record(queueWaitNanos, maxQueueWaitNanos, startedAt - enqueuedAt);
+			try {
+				promise.complete(MarkdownRenderer.render(markdown));
+			} finally {
+				record(renderNanos, maxRenderNanos, System.nanoTime() - startedAt);
+			}
+		}, false, ar -> {
+			pending.decrementAndGet();
+			if (!done[0]) {
+				done[0] = true;
+				vertx.cancelTimer(timer);
+				resultHandler.handle(ar);
+			}
+		});
+	}
+
+	private static void record(LongAdder total, AtomicLong max, long nanos) {
+		total.add(nanos);
+		max.accumulateAndGet(nanos, Math::max);
+	}
+
+	JsonObject metrics() {
+		final long offloadedCount = Math.max(1, offloaded.sum());
+		return new JsonObject().put("inlineThreshold", inlineThreshold).put("queueLimit", queueLimit)
+				.put("pending", pending.get()).put("inline", inline.sum()).put("offloaded", offloaded.sum())
+				.put("rejected", rejected.sum()).put("timedOut", timedOut.sum())
+				.put("avgQueueWaitMs", millis(queueWaitNanos.sum() / offloadedCount)).put("maxQueueWaitMs", millis(maxQueueWaitNanos.get()))
+				.put("avgRenderMs", millis(renderNanos.sum() / offloadedCount)).put("maxRenderMs", millis(maxRenderNanos.get()));
+	}
+
+	void close() {
+		executor.close();
+	}
+
+	private static double millis(long nanos) {
+		return Math.round(nanos / 10_000.0) / 100.0;
+	}
+}
@@ -0,0 +1,160 @@
+package io.vertx.guides.wiki.http;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.buffer.Buffer;
+import io.vertx.reactivex.core.http.HttpServerResponse;
+import io.vertx.reactivex.core.http.ServerWebSocket;
+
+/**
+ * Fans the page events published by the database service out to the SSE and WebSocket clients of
+ * one {@link HttpServerVerticle} instance. The last events are kept so that a reconnecting client
+ * can resume from the sequence number it last saw, which every database node draws from the same
+ * counter; a client too far behind receives a {@code reset} event and must reload. Subscribers cost
+ * a map entry each, writes only happen on events and heartbeats, and a subscriber that cannot keep
+ * up is disconnected (it can resume).
+ * Instances are confined to the event loop of their verticle.
+ */
+class PageChangeFeed {
+
+	private interface Subscriber {
+		boolean writeQueueFull();
+
+		void send(JsonObject event);
+
+		void heartbeat();
+
+		void close();
+	}
+
+	private final Deque<JsonObject> history = new ArrayDeque<>();
+	private final int historySize;
+	private final Map<Object, Subscriber> subscribers = new LinkedHashMap<>();
+	private long lastSeq;
+	private long dropped;
+
+	PageChangeFeed(int historySize) {
+		this.historySize = historySize;
+	}
+
+	void publish(JsonObject event) {
+		final JsonObject change = new JsonObject().put("seq", event.getLong("seq")).put("type", event.getString("type"))
+				.put("id", event.getInteger("id")).put("name", event.getString("name"));
+		lastSeq = Math.max(lastSeq, change.getLong("seq"));
+		remember(change);
+		final List<Map.Entry<Object, Subscriber>> slow = new ArrayList<>();
+		subscribers.entrySet().forEach(entry -> {
+			if (entry.getValue().writeQueueFull()) {
+				slow.add(entry);
+			} else {
+				entry.getValue().send(change);
+			}
+		});
+		slow.forEach(entry -> {
+			subscribers.remove(entry.getKey());
+			dropped++;
+			entry.getValue().close();
+		});
+	}
+
+	/*
+	 * Sequence numbers are drawn before the events are published, possibly by other nodes, so events
+	 * can arrive slightly out of order: the history stays sorted so that resuming replays every event
+	 * after the given one (a client may see an event twice, never miss one still in the history).
+	 */
+	private void remember(JsonObject change) {
+		final Deque<JsonObject> later = new ArrayDeque<>();
+		while (!history.isEmpty() && history.peekLast().getLong("seq") > change.getLong("seq")) {
+			later.addFirst(history.removeLast());
+		}
+		history.addLast(change);
+		history.addAll(later);
+		if (history.size() > historySize) {
+			history.removeFirst();
+		}
+	}
+
+	void heartbeat() {
+		subscribers.values().forEach(Subscriber::heartbeat);
+	}
+
+	void subscribe(HttpServerResponse response, Long since) {
+		response.setChunked(true).putHeader("Content-Type", "text/event-stream").putHeader("Cache-Control", "no-cache");
+		final Subscriber subscriber = new Subscriber() {
+			@Override
+			public boolean writeQueueFull() {
+				return response.writeQueueFull();
+			}
+
+			@Override
+			public void send(JsonObject event) {
+				response.write("id: " + event.getLong("seq") + "\nevent: " + event.getString("type") + "\ndata: "
+						+ event.encode() + "\n\n");
+			}
+
+			@Override
+			public void heartbeat() {
+				response.write(":\n\n");
+			}
+
+			@Override
+			public void close() {
+				response.end();
+			}
+		};
+		response.closeHandler(v -> subscribers.remove(response));
+		// sends the headers of the stream now rather than with the first event or heartbeat
+		response.write(": subscribed\n\n");
+		register(response, subscriber, since);
+	}
+
+	void subscribe(ServerWebSocket webSocket, Long since) {
+		final Subscriber subscriber = new Subscriber() {
+			@Override
+			public boolean writeQueueFull() {
+				return webSocket.writeQueueFull();
+			}
+
+			@Override
+			public void send(JsonObject event) {
+				webSocket.writeTextMessage(event.encode());
+			}
+
+			@Override
+			public void heartbeat() {
+				webSocket.writePing(Buffer.buffer());
+			}
+
+			@Override
+			public void close() {
+				webSocket.close();
+			}
+		};
+		webSocket.closeHandler(v -> subscribers.remove(webSocket));
+		register(webSocket, subscriber, since);
+	}
+
+	private void register(Object connection, Subscriber subscriber, Long since) {
+		if (since != null) {
+			final JsonObject oldest = history.peekFirst();
+			if (since > lastSeq || (oldest != null && since < oldest.getLong("seq") - 1)
+					|| (oldest == null && since < lastSeq)) {
+				subscriber.send(new JsonObject().put("seq", lastSeq).put("type", "reset"));
+			} else {
+				history.stream().filter(event -> event.getLong("seq") > since).forEach(subscriber::send);
+			}
+		}
+		subscribers.put(connection, subscriber);
+	}
+
+	JsonObject metrics() {
+		return new JsonObject().put("subscribers", subscribers.size()).put("lastSeq", lastSeq).put("history", history.size())
+				.put("dropped", dropped);
+	}
+}
@@ -0,0 +1,118 @@
+package io.vertx.guides.wiki.http;
+
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.parsetools.JsonEventType;
+import io.vertx.reactivex.core.http.HttpServerRequest;
+import io.vertx.reactivex.core.parsetools.JsonParser;
+import io.vertx.reactivex.ext.web.RoutingContext;
+
+/**
+ * Reads the JSON page document of the API create and update requests as it arrives, instead of
+ * buffering the body: only the top-level string fields are kept, and requests whose declared or
+ * received size exceeds the limit are answered with a 413 as soon as this is known, the rest of
+ * their body being discarded as it arrives. Page uploads are paused by {@link #skipBodyHandler}
+ * until this handler runs, so that no data is lost while the authentication handlers are at work;
+ * those answered before reaching it have their body read and discarded, for the connection to go on.
+ */
+class PageUploadHandler implements Handler<RoutingContext> {
+
+	static final String PAGE_KEY = "uploadedPage";
+	private static final String READING_KEY = "uploadReading";
+
+	private final long maxSize;
+
+	PageUploadHandler(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	static boolean isPageUpload(HttpServerRequest request) {
+		final String path = request.path();
+		return (request.method() == HttpMethod.POST && "/api/pages".equals(path))
+				|| (request.method() == HttpMethod.PUT && path.startsWith("/api/pages/"));
+	}
+
+	/** Body handler that leaves page uploads to this handler. */
+	static Handler<RoutingContext> skipBodyHandler(Handler<RoutingContext> bodyHandler) {
+		return context -> {
+			if (isPageUpload(context.request())) {
+				final HttpServerRequest request = context.request();
+				request.pause();
+				context.addBodyEndHandler(v -> {
+					if (context.get(READING_KEY) == null && !request.isEnded()) {
+						request.handler(buffer -> {
+						}).resume();
+					}
+				});
+				context.next();
+			} else {
+				bodyHandler.handle(context);
+			}
+		};
+	}
+
+	@Override
+	public void handle(RoutingContext context) {
+		final HttpServerRequest request = context.request();
+		context.put(READING_KEY, true);
+		final String contentLength = request.getHeader("Content-Length");
+		final JsonObject page = new JsonObject();
+		final JsonParser parser = JsonParser.newParser();
+		final long[] received = { 0 };
+		final int[] depth = { 0 };
+		final boolean[] failed = { false };
+		if (contentLength != null) {
+			try {
+				if (Long.parseLong(contentLength) > maxSize) {
+					failed[0] = true;
+					reject(context, 413, "Page document larger than " + maxSize + " bytes");
+				}
+			} catch (NumberFormatException e) {
+				failed[0] = true;
+				reject(context, 400, "Invalid Content-Length");
+			}
+		}
+		parser.handler(event -> {
+			if (event.type() == JsonEventType.START_OBJECT || event.type() == JsonEventType.START_ARRAY) {
+				depth[0]++;
+			} else if (event.type() == JsonEventType.END_OBJECT || event.type() == JsonEventType.END_ARRAY) {
+				depth[0]--;
+			} else if (depth[0] == 1 && event.fieldName() != null && event.isString()) {
+				page.put(event.fieldName(), event.stringValue());
+			}
+		});
+		parser.exceptionHandler(t -> {
+			failed[0] = true;
+			reject(context, 400, "Bad request payload");
+		});
+		request.handler(buffer -> {
+			if (failed[0]) {
+				return;
+			}
+			received[0] += buffer.length();
+			if (received[0] > maxSize) {
+				failed[0] = true;
+				reject(context, 413, "Page document larger than " + maxSize + " bytes");
+				return;
+			}
+			parser.handle(buffer);
+		});
+		request.endHandler(v -> {
+			if (failed[0]) {
+				return;
+			}
+			parser.end();
+			if (!failed[0]) {
+				context.put(PAGE_KEY, page);
+				context.next();
+			}
+		});
+		request.resume();
+	}
+
+	private static void reject(RoutingContext context, int statusCode, String error) {
+		context.response().setStatusCode(statusCode).putHeader("Content-Type", "application/json")
+				.end(new JsonObject().put("success", false).put("error", error).encode());
+	}
+}
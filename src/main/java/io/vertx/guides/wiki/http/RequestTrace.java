@@ -0,0 +1,159 @@
+package io.vertx.guides.wiki.http;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.eventbus.DeliveryContext;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.ext.web.RoutingContext;
+
+/**
+ * Timing breakdown of one HTTP request. Every request gets a {@code Server-Timing} response header;
+ * sampled requests are also exported, one JSON line per trace, through the {@code TRACES} logger.
+ * The trace context travels to the database service in a W3C {@code traceparent} message header,
+ * added by an event bus interceptor to the next call sent for the trace, and completed requests go
+ * to the {@link AccessLog}.
+ * A trace is confined to the event loop of the request.
+ */
+final class RequestTrace {
+
+	static final Logger TRACES = LoggerFactory.getLogger("io.vertx.guides.wiki.traces");
+
+	static final String TRACEPARENT_HEADER = "traceparent";
+	static final String SENT_AT_HEADER = "trace-sent-at";
+
+	private static final String CONTEXT_KEY = "trace";
+
+	private static final ThreadLocal<RequestTrace> CALLING = new ThreadLocal<>();
+
+	private final String traceId;
+	private final String spanId;
+	private final boolean sampled;
+	private final long startedAt = System.currentTimeMillis();
+	private final long startNanos = System.nanoTime();
+	private final List<String> names = new ArrayList<>();
+	private final List<Long> durations = new ArrayList<>();
+	private final Map<String, Long> open = new HashMap<>();
+	private final EventLoopProfiler profiler;
+	private String route = "unrouted";
+
+	private RequestTrace(boolean sampled, EventLoopProfiler profiler) {
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		this.traceId = String.format("%016x%016x", random.nextLong(), random.nextLong());
+		this.spanId = String.format("%016x", random.nextLong());
+		this.sampled = sampled;
+		this.profiler = profiler;
+	}
+
+	static Handler<RoutingContext> handler(double sampleRate, EventLoopProfiler profiler, AccessLog accessLog) {
+		return context -> {
+			final RequestTrace trace = new RequestTrace(ThreadLocalRandom.current().nextDouble() < sampleRate, profiler);
+			context.put(CONTEXT_KEY, trace);
+			context.addHeadersEndHandler(v -> context.response().putHeader("Server-Timing", trace.serverTiming()));
+			if (trace.sampled) {
+				context.addBodyEndHandler(v -> TRACES.info(trace.toJson(context).encode()));
+			}
+			if (accessLog.enabled()) {
+				context.addBodyEndHandler(v -> accessLog.log(context, trace.route, millis(System.nanoTime() - trace.startNanos)));
+			}
+			context.next();
+		};
+	}
+
+	static RequestTrace of(RoutingContext context) {
+		return context.get(CONTEXT_KEY);
+	}
+
+	/** Route handlers opening and closing a span around the handlers routed between them. */
+	static Handler<RoutingContext> begin(String name) {
+		return context -> {
+			of(context).open.put(name, System.nanoTime());
+			context.next();
+		};
+	}
+
+	static Handler<RoutingContext> end(String name) {
+		return context -> {
+			final RequestTrace trace = of(context);
+			final Long start = trace.open.remove(name);
+			if (start != null) {
+				trace.record(name, start);
+			}
+			context.next();
+		};
+	}
+
+	/** Route handler running the given one under the profiler, which attributes its callbacks to it too. */
+	static Handler<RoutingContext> profiled(String route, Handler<RoutingContext> handler) {
+		return context -> {
+			final RequestTrace trace = of(context);
+			trace.route = route;
+			trace.profiler.run(route, handler, context);
+		};
+	}
+
+	/** Handler recording the time spent until the given result handler is called. */
+	<T> Handler<AsyncResult<T>> timed(String name, Handler<AsyncResult<T>> handler) {
+		final long start = System.nanoTime();
+		return ar -> {
+			record(name, start);
+			profiler.run(route + "/" + name, handler, ar);
+		};
+	}
+
+	void record(String name, long startNanos) {
+		names.add(name);
+		durations.add(System.nanoTime() - startNanos);
+	}
+
+	/** Makes this trace the one carried by the next message sent from this thread to the database service. */
+	void propagateToNextCall() {
+		CALLING.set(this);
+	}
+
+	/** Outbound event bus interceptor adding the calling trace, if any, to the messages sent to the given address. */
+	static <T> Handler<DeliveryContext<T>> propagator(String address) {
+		return delivery -> {
+			final RequestTrace trace = CALLING.get();
+			if (trace != null && address.equals(delivery.message().address())) {
+				CALLING.remove();
+				delivery.message().headers()
+						.add(TRACEPARENT_HEADER, "00-" + trace.traceId + "-" + trace.spanId + (trace.sampled ? "-01" : "-00"))
+						.add(SENT_AT_HEADER, String.valueOf(System.currentTimeMillis()));
+			}
+			delivery.next();
+		};
+	}
+
+	private String serverTiming() {
+		final StringBuilder header = new StringBuilder();
+		for (int i = 0; i < names.size(); i++) {
+			header.append(names.get(i)).append(";dur=").append(millis(durations.get(i))).append(", ");
+		}
+		return header.append("total;dur=").append(millis(System.nanoTime() - startNanos)).toString();
+	}
+
+	private JsonObject toJson(RoutingContext context) {
+		final JsonArray spans = new JsonArray();
+		for (int i = 0; i < names.size(); i++) {
+			spans.add(new JsonObject().put("name", names.get(i)).put("durationMs", millis(durations.get(i))));
+		}
+		return new JsonObject().put("traceId", traceId).put("spanId", spanId)
+				.put("name", context.request().method() + " " + context.request().path())
+				.put("status", context.response().getStatusCode()).put("startedAt", startedAt)
+				.put("durationMs", millis(System.nanoTime() - startNanos)).put("spans", spans);
+	}
+
+	private static double millis(long nanos) {
+		return Math.round(nanos / 10_000.0) / 100.0;
+	}
+}
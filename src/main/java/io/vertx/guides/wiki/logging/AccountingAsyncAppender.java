@@ -0,0 +1,71 @@
+package io.vertx.guides.wiki.logging;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Logback asynchronous appender accounting for the events it drops: logging threads only put
+ * events in a bounded queue, written out by the worker thread of the appender. With
+ * {@code neverBlock}, events finding the queue full are dropped, as are events at INFO level and
+ * below once the queue is filled beyond its discarding threshold. Appenders register themselves
+ * when started, so that their counts show in the metrics of the wiki.
+ */
+public class AccountingAsyncAppender extends AsyncAppender {
+
+	private static final Map<String, AccountingAsyncAppender> APPENDERS = new ConcurrentHashMap<>();
+
+	private final LongAdder appended = new LongAdder();
+	private final LongAdder discarded = new LongAdder();
+	private final LongAdder overflowed = new LongAdder();
+
+	@Override
+	public void start() {
+		super.start();
+		if (isStarted()) {
+			APPENDERS.put(getName(), this);
+		}
+	}
+
+	@Override
+	public void stop() {
+		APPENDERS.remove(getName(), this);
+		final long dropped = discarded.sum() + overflowed.sum();
+		if (dropped > 0) {
+			addWarn("Dropped " + dropped + " of " + appended.sum() + " events");
+		}
+		super.stop();
+	}
+
+	// the same checks as the base class, which does not report the events it drops
+	@Override
+	protected void append(ILoggingEvent event) {
+		if (isStarted()) {
+			appended.increment();
+			final int remaining = getRemainingCapacity();
+			if (remaining < getDiscardingThreshold() && isDiscardable(event)) {
+				discarded.increment();
+			} else if (remaining == 0 && isNeverBlock()) {
+				overflowed.increment();
+			}
+		}
+		super.append(event);
+	}
+
+	JsonObject metrics() {
+		return new JsonObject().put("appended", appended.sum()).put("discarded", discarded.sum())
+				.put("overflowed", overflowed.sum()).put("queued", getNumberOfElementsInQueue())
+				.put("queueSize", getQueueSize());
+	}
+
+	/** Counts of the started appenders, by name. */
+	public static JsonObject allMetrics() {
+		final JsonObject metrics = new JsonObject();
+		APPENDERS.forEach((name, appender) -> metrics.put(name, appender.metrics()));
+		return metrics;
+	}
+}
@@ -16,9 +16,11 @@
     </div>
   </#if>
     <h1 class="display-4">${title}</h1>
+  <#if !exported??>
     <div class="float-right">
       <a class="btn btn-outline-danger" href="/logout" role="button" aria-pressed="true">Logout (${username})</a>
     </div>
+  </#if>
   </div>
 
   <div class="col-md-12 mt-1">
@@ -34,14 +36,15 @@
   </#list>
 
   <#if canCreatePage>
-    <#if backup_gist_url?has_content>
+    <#if backup_job?has_content>
       <div class="alert alert-success" role="alert">
-        Successfully created a backup:
-        <a href="${backup_gist_url}" class="alert-link">${backup_gist_url}</a>
+        Backup started:
+        <a href="/action/backup/${backup_job}" class="alert-link">follow its progress</a>
       </div>
     <#else>
       <p>
         <a class="btn btn-outline-secondary btn-sm" href="/action/backup" role="button" aria-pressed="true">Backup</a>
+        <a class="btn btn-outline-secondary btn-sm" href="/action/backup?incremental=true" role="button" aria-pressed="true">Incremental backup</a>
       </p>
     </#if>
   </#if>
@@ -7,8 +7,10 @@
   <div class="col-md-12 mt-1">
       <span class="float-right">
         <a class="btn btn-outline-primary" href="/" role="button" aria-pressed="true">Home</a>
+      <#if !exported??>
         <button class="btn btn-outline-warning" type="button" data-toggle="collapse"
                 data-target="#editor" aria-expanded="false" aria-controls="editor">Edit</button>
+      </#if>
       </span>
     <h1 class="display-4">
       <span class="text-muted">{</span>
@@ -21,6 +23,7 @@
   ${content}
   </div>
 
+  <#if !exported??>
   <div class="col-md-12 collapsable collapse clearfix" id="editor">
     <form action="/save" method="post">
       <div class="form-group">
@@ -35,6 +38,7 @@
     </#if>
     </form>
   </div>
+  </#if>
 
  
   <div class="col-md-12 mt-1">
@@ -1,5 +1,7 @@
 package io.vertx.guides.wiki;
 
+import java.util.Collections;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -9,6 +11,10 @@ import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.net.JksOptions;
@@ -28,8 +34,13 @@ import io.vertx.guides.wiki.http.HttpServerVerticle;
 @RunWith(VertxUnitRunner.class)
 public class ApiTest {
 
+	private static final int MAX_BODY_SIZE = 1024;
+	private static final int MAX_INFLIGHT_WRITES = 1;
+
 	private Vertx vertx;
 	private WebClient webClient;
+	private JsonObject httpConf;
+	private String httpDeploymentId;
 
 	@Before
 	public void prepare(TestContext context) {
@@ -37,7 +48,12 @@ public class ApiTest {
 
 		final JsonObject databaseConf = new JsonObject()
 				.put(DatabaseConstants.CONFIG_WIKIDB_JDBC_URL, "jdbc:hsqldb:mem:testdb;shutdown=true")
-				.put(DatabaseConstants.CONFIG_WIKIDB_JDBC_MAX_POOL_SIZE, 4);
+				.put(DatabaseConstants.CONFIG_WIKIDB_JDBC_MAX_POOL_SIZE, 4)
+				// pages are rendered when read, by the renderer of the HTTP verticle
+				.put(DatabaseConstants.CONFIG_WIKIDB_RENDER_ON_WRITE, false);
+
+		httpConf = new JsonObject().put(HttpServerVerticle.CONFIG_HTTP_BODY_MAX_SIZE, MAX_BODY_SIZE)
+				.put(HttpServerVerticle.CONFIG_HTTP_ADMISSION_MAX_WRITES, MAX_INFLIGHT_WRITES);
 
 		Promise<String> authInitializedPromise = Promise.promise();
 
@@ -53,9 +69,9 @@ public class ApiTest {
 		
 		wikiDatabasePromise.compose((t) -> {
 			Promise<String> httpServerVerticle = Promise.promise();
-			vertx.deployVerticle(new HttpServerVerticle(), httpServerVerticle);
+			vertx.deployVerticle(new HttpServerVerticle(), new DeploymentOptions().setConfig(httpConf), httpServerVerticle);
 			return httpServerVerticle.future();
-		}).setHandler(context.asyncAssertSuccess());
+		}).setHandler(context.asyncAssertSuccess(id -> httpDeploymentId = id));
 		
 		
 		webClient = WebClient.create(vertx,
@@ -129,6 +145,236 @@ public class ApiTest {
 		async.awaitSuccess(5000);
 	}
 
+	@Test
+	public void pageNamesLimit(TestContext context) {
+		Async async = context.async();
+		fetchToken().compose(token -> {
+			Promise<HttpResponse<JsonObject>> notANumber = Promise.promise();
+			webClient.get("/api/pages/names?limit=abc").as(BodyCodec.jsonObject()).putHeader("Authorization", token)
+					.expect(ResponsePredicate.SC_BAD_REQUEST).send(notANumber);
+			return notANumber.future().compose(resp -> {
+				Promise<HttpResponse<JsonObject>> negative = Promise.promise();
+				webClient.get("/api/pages/names?limit=-1").as(BodyCodec.jsonObject()).putHeader("Authorization", token)
+						.expect(ResponsePredicate.SC_BAD_REQUEST).send(negative);
+				return negative.future();
+			}).compose(resp -> {
+				Promise<HttpResponse<JsonObject>> valid = Promise.promise();
+				webClient.get("/api/pages/names?limit=5").as(BodyCodec.jsonObject()).putHeader("Authorization", token)
+						.expect(ResponsePredicate.SC_SUCCESS).send(valid);
+				return valid.future();
+			});
+		}).setHandler(context.asyncAssertSuccess(resp -> {
+			context.assertTrue(resp.body().getBoolean("success"));
+			async.complete();
+		}));
+		async.awaitSuccess(5000);
+	}
+
+	@Test
+	public void jobsRejectBadBodies(TestContext context) {
+		Async async = context.async();
+		fetchToken().compose(token -> {
+			Promise<HttpResponse<JsonObject>> empty = Promise.promise();
+			webClient.post("/api/imports").as(BodyCodec.jsonObject()).putHeader("Authorization", token)
+					.expect(ResponsePredicate.SC_BAD_REQUEST).send(empty);
+			return empty.future().compose(resp -> {
+				Promise<HttpResponse<JsonObject>> invalid = Promise.promise();
+				webClient.post("/api/imports").as(BodyCodec.jsonObject()).putHeader("Authorization", token)
+						.expect(ResponsePredicate.SC_BAD_REQUEST).sendBuffer(Buffer.buffer("{not json"), invalid);
+				return invalid.future();
+			}).compose(resp -> {
+				Promise<HttpResponse<JsonObject>> invalidBackup = Promise.promise();
+				webClient.post("/api/backups").as(BodyCodec.jsonObject()).putHeader("Authorization", token)
+						.expect(ResponsePredicate.SC_BAD_REQUEST).sendBuffer(Buffer.buffer("{not json"), invalidBackup);
+				return invalidBackup.future();
+			}).compose(resp -> {
+				Promise<HttpResponse<JsonObject>> invalidExport = Promise.promise();
+				webClient.post("/api/exports").as(BodyCodec.jsonObject()).putHeader("Authorization", token)
+						.expect(ResponsePredicate.SC_BAD_REQUEST).sendBuffer(Buffer.buffer("{not json"), invalidExport);
+				return invalidExport.future();
+			});
+		}).setHandler(context.asyncAssertSuccess(resp -> {
+			context.assertFalse(resp.body().getBoolean("success"));
+			async.complete();
+		}));
+		async.awaitSuccess(5000);
+	}
+
+	@Test
+	public void pageUploads(TestContext context) {
+		Async async = context.async();
+		// one connection, which a request left unread would stall
+		WebClient client = WebClient.create(vertx, new WebClientOptions().setDefaultHost("localhost").setSsl(true)
+				.setTrustOptions(new JksOptions().setPath("server-keystore.jks").setPassword("secret"))
+				.setDefaultPort(8080).setMaxPoolSize(1).setKeepAlive(true));
+		JsonObject page = new JsonObject().put("name", "Uploaded").put("markdown", "# Uploaded");
+		JsonObject largePage = new JsonObject().put("name", "Large").put("markdown", String.join("", Collections.nCopies(MAX_BODY_SIZE, "x")));
+		fetchToken().compose(token -> {
+			Promise<HttpResponse<Buffer>> unauthenticated = Promise.promise();
+			client.post("/api/pages").expect(ResponsePredicate.status(401)).sendJsonObject(page, unauthenticated);
+			return unauthenticated.future().compose(resp -> {
+				Promise<HttpResponse<Buffer>> unrouted = Promise.promise();
+				client.put("/api/pages/1/2").putHeader("Authorization", token).expect(ResponsePredicate.SC_NOT_FOUND)
+						.sendJsonObject(page, unrouted);
+				return unrouted.future();
+			}).compose(resp -> {
+				Promise<HttpResponse<Buffer>> tooLarge = Promise.promise();
+				client.post("/api/pages").putHeader("Authorization", token).expect(ResponsePredicate.status(413))
+						.sendJsonObject(largePage, tooLarge);
+				return tooLarge.future();
+			}).compose(resp -> {
+				Promise<HttpResponse<Buffer>> malformed = Promise.promise();
+				client.post("/api/pages").putHeader("Authorization", token).expect(ResponsePredicate.SC_BAD_REQUEST)
+						.sendBuffer(Buffer.buffer("{\"name\": \"Broken\", "), malformed);
+				return malformed.future();
+			}).compose(resp -> {
+				Promise<HttpResponse<JsonObject>> created = Promise.promise();
+				client.post("/api/pages").as(BodyCodec.jsonObject()).putHeader("Authorization", token)
+						.expect(ResponsePredicate.SC_SUCCESS).sendJsonObject(page, created);
+				return created.future();
+			});
+		}).setHandler(context.asyncAssertSuccess(resp -> {
+			context.assertTrue(resp.body().getBoolean("success"));
+			async.complete();
+		}));
+		async.awaitSuccess(5000);
+	}
+
+	@Test
+	public void admissionControl(TestContext context) {
+		Async async = context.async();
+		HttpClient httpClient = createHttpClient();
+		JsonObject page = new JsonObject().put("name", "Admitted").put("markdown", "# Admitted");
+		fetchToken().compose(token -> {
+			// an upload whose body is not over holds the only write permit
+			Promise<Integer> heldStatus = Promise.promise();
+			HttpClientRequest held = startUpload(httpClient, token, heldStatus);
+			return awaitWritesInFlight(token, MAX_INFLIGHT_WRITES).compose(full -> {
+				Promise<HttpResponse<JsonObject>> rejected = Promise.promise();
+				webClient.post("/api/pages").as(BodyCodec.jsonObject()).putHeader("Authorization", token)
+						.expect(ResponsePredicate.status(503)).sendJsonObject(page, rejected);
+				return rejected.future();
+			}).compose(resp -> {
+				context.assertEquals("1", resp.getHeader("Retry-After"));
+				context.assertFalse(resp.body().getBoolean("success"));
+				held.end("\"markdown\": \"# Held\"}");
+				return heldStatus.future();
+			}).compose(status -> {
+				context.assertEquals(201, status);
+				return awaitWritesInFlight(token, 0);
+			}).compose(released -> {
+				// the permit of an upload whose client goes away is released as well
+				HttpClientRequest abandoned = startUpload(httpClient, token, Promise.promise());
+				return awaitWritesInFlight(token, MAX_INFLIGHT_WRITES).compose(full -> {
+					abandoned.reset();
+					return awaitWritesInFlight(token, 0);
+				});
+			}).compose(released -> {
+				Promise<HttpResponse<JsonObject>> admitted = Promise.promise();
+				webClient.post("/api/pages").as(BodyCodec.jsonObject()).putHeader("Authorization", token)
+						.expect(ResponsePredicate.SC_SUCCESS).sendJsonObject(page, admitted);
+				return admitted.future();
+			});
+		}).setHandler(context.asyncAssertSuccess(resp -> {
+			context.assertTrue(resp.body().getBoolean("success"));
+			async.complete();
+		}));
+		async.awaitSuccess(5000);
+	}
+
+	@Test
+	public void renderingRejections(TestContext context) {
+		Async async = context.async();
+		// every page is offloaded to a rendering queue that admits none
+		JsonObject rejectingConf = httpConf.copy().put(HttpServerVerticle.CONFIG_HTTP_RENDERING_INLINE_THRESHOLD, 1)
+				.put(HttpServerVerticle.CONFIG_HTTP_RENDERING_QUEUE_LIMIT, 0);
+		JsonObject page = new JsonObject().put("name", "Unrendered").put("markdown", "# Unrendered");
+		fetchToken().compose(token -> {
+			Promise<Void> undeployed = Promise.promise();
+			vertx.undeploy(httpDeploymentId, undeployed);
+			return undeployed.future().compose(v -> {
+				Promise<String> redeployed = Promise.promise();
+				vertx.deployVerticle(new HttpServerVerticle(), new DeploymentOptions().setConfig(rejectingConf), redeployed);
+				return redeployed.future();
+			}).compose(id -> {
+				Promise<HttpResponse<JsonObject>> created = Promise.promise();
+				webClient.post("/api/pages").as(BodyCodec.jsonObject()).putHeader("Authorization", token)
+						.expect(ResponsePredicate.SC_SUCCESS).sendJsonObject(page, created);
+				return created.future();
+			}).compose(resp -> {
+				Promise<HttpResponse<JsonObject>> pages = Promise.promise();
+				webClient.get("/api/pages").as(BodyCodec.jsonObject()).putHeader("Authorization", token)
+						.expect(ResponsePredicate.SC_SUCCESS).send(pages);
+				return pages.future();
+			}).compose(resp -> {
+				int id = resp.body().getJsonArray("pages").getJsonObject(0).getInteger("id");
+				Promise<HttpResponse<JsonObject>> rejected = Promise.promise();
+				webClient.get("/api/pages/" + id).as(BodyCodec.jsonObject()).putHeader("Authorization", token)
+						.expect(ResponsePredicate.status(503)).send(rejected);
+				return rejected.future();
+			});
+		}).setHandler(context.asyncAssertSuccess(resp -> {
+			context.assertFalse(resp.body().getBoolean("success"));
+			async.complete();
+		}));
+		async.awaitSuccess(5000);
+	}
+
+	@Test
+	public void feedSubscription(TestContext context) {
+		Async async = context.async();
+		HttpClient httpClient = createHttpClient();
+		fetchToken().setHandler(context.asyncAssertSuccess(token -> {
+			httpClient.get("/api/feed", unauthenticated -> {
+				context.assertEquals(401, unauthenticated.statusCode());
+				// as sent by EventSource clients, which cannot set an Authorization header
+				httpClient.get("/api/feed?token=" + token.substring("Bearer ".length()), response -> {
+					context.assertEquals(200, response.statusCode());
+					context.assertEquals("text/event-stream", response.getHeader("Content-Type"));
+					response.handler(chunk -> {
+						context.assertTrue(chunk.toString().startsWith(":"));
+						response.request().connection().close();
+						async.complete();
+					});
+				}).end();
+			}).end();
+		}));
+		async.awaitSuccess(5000);
+	}
+
+	private HttpClient createHttpClient() {
+		return vertx.createHttpClient(new HttpClientOptions().setDefaultHost("localhost").setSsl(true)
+				.setTrustOptions(new JksOptions().setPath("server-keystore.jks").setPassword("secret")).setDefaultPort(8080));
+	}
+
+	private HttpClientRequest startUpload(HttpClient httpClient, String token, Promise<Integer> status) {
+		HttpClientRequest request = httpClient.post("/api/pages", response -> status.tryComplete(response.statusCode()));
+		request.exceptionHandler(status::tryFail);
+		request.setChunked(true).putHeader("Authorization", token).putHeader("Content-Type", "application/json")
+				.write("{\"name\": \"Held\", ");
+		return request;
+	}
+
+	private Future<Void> awaitWritesInFlight(String token, int expected) {
+		Promise<Void> promise = Promise.promise();
+		vertx.setPeriodic(20, timer -> webClient.get("/api/metrics").as(BodyCodec.jsonObject()).putHeader("Authorization", token)
+				.send(ar -> {
+					if (ar.succeeded() && ar.result().body().getJsonObject("admission").getJsonObject("write")
+							.getInteger("inFlight") == expected) {
+						vertx.cancelTimer(timer);
+						promise.tryComplete();
+					}
+				}));
+		return promise.future();
+	}
+
+	private Future<String> fetchToken() {
+		Promise<HttpResponse<String>> promise = Promise.promise();
+		webClient.get("/api/token").as(BodyCodec.string()).putHeader("login", "root").putHeader("password", "admin")
+				.expect(ResponsePredicate.SC_SUCCESS).send(promise);
+		return promise.future().map(response -> "Bearer " + response.body());
+	}
+
 	@After
 	public void close(TestContext context) {
 		vertx.close(context.asyncAssertSuccess());
@@ -0,0 +1,52 @@
+package io.vertx.guides.wiki;
+
+import java.util.Arrays;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Helpers of the benchmarks, the {@code *Benchmark} classes run by {@code mvn test -Pbenchmarks}
+ * rather than with the tests. Their sizes are read from {@code benchmark.*} system properties so
+ * that a run can be repeated at another scale, and each one prints a line of JSON per measurement.
+ */
+public final class Benchmarks {
+
+	private Benchmarks() {
+	}
+
+	public static int size(String name, int defaultValue) {
+		return Integer.getInteger("benchmark." + name, defaultValue);
+	}
+
+	/** The given percentile (between 0 and 1) of durations in nanoseconds. */
+	public static long percentile(long[] nanos, double percentile) {
+		if (nanos.length == 0) {
+			return 0;
+		}
+		final long[] sorted = nanos.clone();
+		Arrays.sort(sorted);
+		final int index = (int) Math.ceil(percentile * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+	}
+
+	/** The given percentile (between 0 and 1) of durations in nanoseconds, in milliseconds. */
+	public static double percentileMillis(long[] nanos, double percentile) {
+		return millis(percentile(nanos, percentile));
+	}
+
+	public static double millis(long nanos) {
+		return Math.round(nanos / 10_000.0) / 100.0;
+	}
+
+	public static double micros(long nanos) {
+		return Math.round(nanos / 10.0) / 100.0;
+	}
+
+	public static double perSecond(long count, long nanos) {
+		return Math.round(count * 1e10 / Math.max(1, nanos)) / 10.0;
+	}
+
+	public static void report(String benchmark, JsonObject results) {
+		System.out.println(benchmark + " " + results.encode());
+	}
+}
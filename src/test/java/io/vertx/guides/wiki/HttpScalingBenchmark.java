@@ -0,0 +1,149 @@
+package io.vertx.guides.wiki;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Verticle;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.JksOptions;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.ext.web.client.WebClientOptions;
+import io.vertx.ext.web.client.predicate.ResponsePredicate;
+import io.vertx.ext.web.codec.BodyCodec;
+import io.vertx.guides.wiki.database.DatabaseConstants;
+import io.vertx.guides.wiki.database.WikiDatabaseVerticle;
+import io.vertx.guides.wiki.http.AuthInitializerVerticle;
+import io.vertx.guides.wiki.http.HttpServerVerticle;
+
+/**
+ * Measures the page API with 1 to N {@link HttpServerVerticle} instances, N being the number of
+ * cores unless {@code benchmark.http.max_instances} says otherwise. Each step reports the requests
+ * per second, the latency percentiles and the heap retained by the HTTP verticles. The load is
+ * generated in the same process, from a Vert.x instance of its own.
+ */
+@RunWith(VertxUnitRunner.class)
+public class HttpScalingBenchmark {
+
+	private static final int MAX_INSTANCES = Benchmarks.size("http.max_instances", Runtime.getRuntime().availableProcessors());
+	private static final int REQUESTS = Benchmarks.size("http.requests", 20_000);
+	private static final int CONCURRENCY = Benchmarks.size("http.concurrency", 64);
+
+	@Test
+	public void scaling(TestContext context) {
+		final List<Integer> steps = new ArrayList<>();
+		for (int instances = 1; instances < MAX_INSTANCES; instances *= 2) {
+			steps.add(instances);
+		}
+		steps.add(MAX_INSTANCES);
+		final Vertx clientVertx = Vertx.vertx();
+		final WebClient webClient = WebClient.create(clientVertx, new WebClientOptions().setDefaultHost("localhost").setDefaultPort(8080)
+				.setSsl(true).setTrustOptions(new JksOptions().setPath("server-keystore.jks").setPassword("secret"))
+				.setMaxPoolSize(CONCURRENCY));
+		for (int instances : steps) {
+			measure(context, webClient, instances);
+		}
+		webClient.close();
+		clientVertx.close(context.asyncAssertSuccess());
+	}
+
+	private void measure(TestContext context, WebClient webClient, int instances) {
+		final Vertx vertx = Vertx.vertx();
+		final JsonObject databaseConf = new JsonObject()
+				.put(DatabaseConstants.CONFIG_WIKIDB_JDBC_URL, "jdbc:hsqldb:mem:scaling" + instances + ";shutdown=true")
+				.put(DatabaseConstants.CONFIG_WIKIDB_JDBC_MAX_POOL_SIZE, 16);
+		final JsonObject httpConf = new JsonObject().put(MainVerticle.CONFIG_HTTP_SERVER_INSTANCES, instances)
+				.put(HttpServerVerticle.CONFIG_HTTP_ADMISSION_MAX_READS, CONCURRENCY);
+		final long[] heapBefore = { 0 };
+		final Async async = context.async();
+		deploy(vertx, new AuthInitializerVerticle(), new DeploymentOptions().setConfig(databaseConf))
+				.compose(id -> deploy(vertx, new WikiDatabaseVerticle(), new DeploymentOptions().setConfig(databaseConf)))
+				.compose(id -> {
+					heapBefore[0] = usedHeap();
+					final Promise<String> deployed = Promise.promise();
+					vertx.deployVerticle(HttpServerVerticle.class.getName(), new DeploymentOptions().setConfig(httpConf).setInstances(instances), deployed);
+					return deployed.future();
+				})
+				.compose(id -> {
+					final Promise<HttpResponse<String>> token = Promise.promise();
+					webClient.get("/api/token").as(BodyCodec.string()).putHeader("login", "root").putHeader("password", "admin")
+							.expect(ResponsePredicate.SC_SUCCESS).send(token);
+					return token.future();
+				})
+				.compose(token -> {
+					final String authorization = "Bearer " + token.body();
+					final Promise<HttpResponse<JsonObject>> created = Promise.promise();
+					webClient.post("/api/pages").as(BodyCodec.jsonObject()).putHeader("Authorization", authorization)
+							.expect(ResponsePredicate.SC_SUCCESS)
+							.sendJsonObject(new JsonObject().put("name", "Scaling").put("markdown", "# A *page*"), created);
+					return created.future().compose(page -> load(webClient, authorization));
+				})
+				.setHandler(context.asyncAssertSuccess(latencies -> {
+					final long[] requests = Arrays.copyOf(latencies, REQUESTS);
+					Benchmarks.report("http-scaling", new JsonObject().put("instances", instances).put("requests", REQUESTS)
+							.put("concurrency", CONCURRENCY)
+							.put("requestsPerSecond", Benchmarks.perSecond(REQUESTS, latencies[REQUESTS]))
+							.put("p50Ms", Benchmarks.percentileMillis(requests, 0.5))
+							.put("p99Ms", Benchmarks.percentileMillis(requests, 0.99))
+							.put("httpHeapMb", Math.round((usedHeap() - heapBefore[0]) / 10_000.0) / 100.0));
+					vertx.close(context.asyncAssertSuccess(v -> async.complete()));
+				}));
+		async.awaitSuccess(300_000);
+	}
+
+	/** The latency of each request, followed by the duration of the whole run. */
+	private static Future<long[]> load(WebClient webClient, String authorization) {
+		final Promise<long[]> done = Promise.promise();
+		final long[] latencies = new long[REQUESTS + 1];
+		final int[] issued = { 0 };
+		final int[] completed = { 0 };
+		final long start = System.nanoTime();
+		final Runnable[] next = { null };
+		next[0] = () -> {
+			if (issued[0] == REQUESTS) {
+				return;
+			}
+			final int request = issued[0]++;
+			final long sentAt = System.nanoTime();
+			webClient.get("/api/pages/0").putHeader("Authorization", authorization).expect(ResponsePredicate.SC_SUCCESS).send(ar -> {
+				if (ar.failed()) {
+					done.tryFail(ar.cause());
+					return;
+				}
+				latencies[request] = System.nanoTime() - sentAt;
+				if (++completed[0] == REQUESTS) {
+					latencies[REQUESTS] = System.nanoTime() - start;
+					done.complete(latencies);
+				} else {
+					next[0].run();
+				}
+			});
+		};
+		for (int client = 0; client < CONCURRENCY; client++) {
+			next[0].run();
+		}
+		return done.future();
+	}
+
+	private static Future<String> deploy(Vertx vertx, Verticle verticle, DeploymentOptions options) {
+		final Promise<String> deployed = Promise.promise();
+		vertx.deployVerticle(verticle, options, deployed);
+		return deployed.future();
+	}
+
+	private static long usedHeap() {
+		System.gc();
+		return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+	}
+}
@@ -0,0 +1,141 @@
+package io.vertx.guides.wiki;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.guides.wiki.database.DatabaseConstants;
+import io.vertx.guides.wiki.database.WikiDatabaseService;
+import io.vertx.guides.wiki.database.WikiDatabaseVerticle;
+
+/**
+ * Compares the JDBC execution modes: many concurrent page reads are issued while slow blocking
+ * tasks hold the shared worker pool, as other {@code executeBlocking} users would. Each mode
+ * reports its throughput, its latency percentiles and the live and peak thread counts.
+ */
+@RunWith(VertxUnitRunner.class)
+public class JdbcExecutionBenchmark {
+
+	private static final int PAGES = Benchmarks.size("jdbc.pages", 200);
+	private static final int CALLS = Benchmarks.size("jdbc.calls", 5000);
+	private static final int CONCURRENCY = Benchmarks.size("jdbc.concurrency", 200);
+	private static final int BLOCKING_TASKS = Benchmarks.size("jdbc.blocking_tasks", 40);
+	private static final long BLOCKING_TASK_MILLIS = 50;
+
+	private Vertx vertx;
+
+	@Test
+	public void sharedExecution(TestContext context) {
+		run(context, DatabaseConstants.JDBC_EXECUTION_SHARED);
+	}
+
+	@Test
+	public void dedicatedExecution(TestContext context) {
+		run(context, DatabaseConstants.JDBC_EXECUTION_DEDICATED);
+	}
+
+	private void run(TestContext context, String execution) {
+		vertx = Vertx.vertx();
+		final JsonObject config = new JsonObject()
+				.put(DatabaseConstants.CONFIG_WIKIDB_JDBC_URL, "jdbc:hsqldb:mem:" + execution + ";shutdown=true")
+				.put(DatabaseConstants.CONFIG_WIKIDB_JDBC_MAX_POOL_SIZE, 16)
+				.put(DatabaseConstants.CONFIG_WIKIDB_JDBC_EXECUTION, execution)
+				.put(DatabaseConstants.CONFIG_WIKIDB_SCHEDULING_QUEUE_LIMIT, CONCURRENCY);
+		final Async async = context.async();
+		vertx.deployVerticle(new WikiDatabaseVerticle(), WikiDatabaseVerticle.deploymentOptions(config), context.asyncAssertSuccess(id -> {
+			final WikiDatabaseService dbService = WikiDatabaseService.createProxy(vertx, DatabaseConstants.CONFIG_WIKIDB_QUEUE);
+			createPages(dbService, 0).compose(v -> pageIds(dbService)).setHandler(context.asyncAssertSuccess(ids -> {
+				final AtomicBoolean loaded = new AtomicBoolean(true);
+				for (int task = 0; task < BLOCKING_TASKS; task++) {
+					blockingLoad(loaded);
+				}
+				final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+				threads.resetPeakThreadCount();
+				final long[] latencies = new long[CALLS];
+				final int[] issued = { 0 };
+				final int[] completed = { 0 };
+				final long start = System.nanoTime();
+				final Runnable[] next = { null };
+				next[0] = () -> {
+					if (issued[0] == CALLS) {
+						return;
+					}
+					final int call = issued[0]++;
+					final long sentAt = System.nanoTime();
+					dbService.fetchPageFields(ids.get(call % ids.size()), Arrays.asList("id", "name", "markdown"), context.asyncAssertSuccess(page -> {
+						latencies[call] = System.nanoTime() - sentAt;
+						if (++completed[0] == CALLS) {
+							final long elapsed = System.nanoTime() - start;
+							loaded.set(false);
+							Benchmarks.report("jdbc-execution", new JsonObject().put("execution", execution).put("calls", CALLS)
+									.put("concurrency", CONCURRENCY).put("blockingTasks", BLOCKING_TASKS)
+									.put("callsPerSecond", Benchmarks.perSecond(CALLS, elapsed))
+									.put("p50Ms", Benchmarks.percentileMillis(latencies, 0.5))
+									.put("p99Ms", Benchmarks.percentileMillis(latencies, 0.99))
+									.put("threads", threads.getThreadCount()).put("peakThreads", threads.getPeakThreadCount()));
+							async.complete();
+						} else {
+							next[0].run();
+						}
+					}));
+				};
+				vertx.runOnContext(v -> {
+					for (int client = 0; client < CONCURRENCY; client++) {
+						next[0].run();
+					}
+				});
+			}));
+		}));
+		async.awaitSuccess(300_000);
+	}
+
+	private static Future<Void> createPages(WikiDatabaseService dbService, int page) {
+		if (page == PAGES) {
+			return Future.succeededFuture();
+		}
+		final Promise<Void> created = Promise.promise();
+		dbService.createPage("Page " + page, "Some *content* of page " + page, created);
+		return created.future().compose(v -> createPages(dbService, page + 1));
+	}
+
+	private static Future<List<Integer>> pageIds(WikiDatabaseService dbService) {
+		final Promise<List<JsonObject>> pages = Promise.promise();
+		dbService.fetchPagesFields(Arrays.asList("id"), pages);
+		return pages.future().map(list -> list.stream().map(page -> page.getInteger("id")).collect(Collectors.toList()));
+	}
+
+	// a slow task of the shared worker pool, submitted again until the measurement ends
+	private void blockingLoad(AtomicBoolean loaded) {
+		vertx.executeBlocking(promise -> {
+			try {
+				Thread.sleep(BLOCKING_TASK_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			promise.complete();
+		}, false, done -> {
+			if (loaded.get()) {
+				blockingLoad(loaded);
+			}
+		});
+	}
+
+	@After
+	public void finish(TestContext context) {
+		vertx.close(context.asyncAssertSuccess());
+	}
+}
@@ -1,12 +1,36 @@
 package io.vertx.guides.wiki;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
@@ -26,16 +50,34 @@ public class PersistenceTest {
 	
 	
 	
+	private Path backupDirectory;
+	private Buffer backupTargetReceived;
+	
 	@Before
-	public void prepare(TestContext context) throws InterruptedException {
+	public void prepare(TestContext context) throws InterruptedException, IOException {
 		vertx = Vertx.vertx();
+		backupDirectory = Files.createTempDirectory("wiki-backups");
+		backupTargetReceived = Buffer.buffer();
 		
-		final JsonObject databaseConf = new JsonObject()
-											.put(DatabaseConstants.CONFIG_WIKIDB_JDBC_URL, "jdbc:hsqldb:mem:testdb;shutdown=true")
-											.put(DatabaseConstants.CONFIG_WIKIDB_JDBC_MAX_POOL_SIZE, 4);
+		// the backup target listens on a free port, given to the database service once known
+		Promise<HttpServer> backupTarget = Promise.promise();
+		vertx.createHttpServer().requestHandler(request -> {
+			request.handler(backupTargetReceived::appendBuffer);
+			request.endHandler(end -> request.response().setStatusCode(201).end());
+		}).listen(0, backupTarget);
 		
-		vertx.deployVerticle(new WikiDatabaseVerticle(), new DeploymentOptions().setConfig(databaseConf), 
-															context.asyncAssertSuccess(result -> 
+		backupTarget.future().compose(server -> {
+			final JsonObject databaseConf = new JsonObject()
+												.put(DatabaseConstants.CONFIG_WIKIDB_JDBC_URL, "jdbc:hsqldb:mem:testdb;shutdown=true")
+												.put(DatabaseConstants.CONFIG_WIKIDB_JDBC_MAX_POOL_SIZE, 4)
+												.put(DatabaseConstants.CONFIG_WIKIDB_BACKUP_DIRECTORY, backupDirectory.toString())
+												.put(DatabaseConstants.CONFIG_WIKIDB_EXPORT_DIRECTORY, backupDirectory.resolve("site").toString())
+												.put(DatabaseConstants.CONFIG_WIKIDB_BACKUP_HTTP_HOST, "localhost")
+												.put(DatabaseConstants.CONFIG_WIKIDB_BACKUP_HTTP_PORT, server.actualPort());
+			Promise<String> deployed = Promise.promise();
+			vertx.deployVerticle(new WikiDatabaseVerticle(), new DeploymentOptions().setConfig(databaseConf), deployed);
+			return deployed.future();
+		}).setHandler(context.asyncAssertSuccess(result -> 
 															dbService = WikiDatabaseService.createProxy(vertx, DatabaseConstants.CONFIG_WIKIDB_QUEUE)));
 
 	}
@@ -59,6 +101,7 @@ public class PersistenceTest {
 				context.assertTrue(fetchedPageJsonContent.getBoolean("found"));
 				context.assertTrue(fetchedPageJsonContent.containsKey("id"));
 				context.assertEquals("Some content", fetchedPageJsonContent.getString("rawContent"));
+				context.assertEquals("<p>Some content</p>", fetchedPageJsonContent.getString("html").trim());
 				dbService.savePage(fetchedPageJsonContent.getInteger("id"),"Yo!", savePageHandler -> {
 					dbService.fetchAllPages(context.asyncAssertSuccess(fetchAllPagesHandler -> {
 						context.assertEquals(1, fetchAllPagesHandler.size());
@@ -79,6 +122,413 @@ public class PersistenceTest {
 		async.awaitSuccess(5000);
 	}
 	
+	@Test
+	public void pageNamesPrefixLookup(final TestContext context) {
+		Async async = context.async();
+		dbService.createPage("Vertx", "v", context.asyncAssertSuccess(v1 -> {
+			dbService.createPage("Verticle", "v", context.asyncAssertSuccess(v2 -> {
+				dbService.createPage("Event bus", "e", context.asyncAssertSuccess(v3 -> {
+					dbService.fetchPageNames("Ver", 10, context.asyncAssertSuccess(names -> {
+						context.assertEquals(2, names.size());
+						context.assertEquals("Verticle", names.getString(0));
+						context.assertEquals("Vertx", names.getString(1));
+						dbService.fetchAllPages(context.asyncAssertSuccess(allPages -> {
+							context.assertEquals("Event bus", allPages.getString(0));
+							async.complete();
+						}));
+					}));
+				}));
+			}));
+		}));
+		async.awaitSuccess(5000);
+	}
+
+	@Test
+	public void sparseFieldsets(final TestContext context) {
+		Async async = context.async();
+		dbService.createPage("Sparse", "Some *content*", context.asyncAssertSuccess(created -> {
+			dbService.fetchPagesFields(Arrays.asList("name"), context.asyncAssertSuccess(pages -> {
+				context.assertEquals(1, pages.size());
+				context.assertEquals(new JsonObject().put("name", "Sparse"), pages.get(0));
+				dbService.fetchPage("Sparse", context.asyncAssertSuccess(page -> {
+					dbService.fetchPageFields(page.getInteger("id"), Arrays.asList("id", "html"), context.asyncAssertSuccess(fields -> {
+						context.assertEquals(page.getInteger("id"), fields.getInteger("id"));
+						context.assertEquals("<p>Some <em>content</em></p>", fields.getString("html").trim());
+						context.assertFalse(fields.containsKey("markdown"));
+						async.complete();
+					}));
+				}));
+			}));
+		}));
+		async.awaitSuccess(5000);
+	}
+
+	@Test
+	public void pagesByIds(final TestContext context) {
+		Async async = context.async();
+		dbService.createPage("First", "one", context.asyncAssertSuccess(first -> {
+			dbService.createPage("Second", "two", context.asyncAssertSuccess(second -> {
+				dbService.fetchPage("First", context.asyncAssertSuccess(firstPage -> {
+					dbService.fetchPage("Second", context.asyncAssertSuccess(secondPage -> {
+						int firstId = firstPage.getInteger("id");
+						int secondId = secondPage.getInteger("id");
+						dbService.fetchPagesByIds(Arrays.asList(secondId, 999, firstId, secondId), Arrays.asList("name", "markdown"),
+								context.asyncAssertSuccess(result -> {
+									context.assertEquals(new JsonArray()
+											.add(new JsonObject().put("name", "Second").put("markdown", "two"))
+											.add(new JsonObject().put("name", "First").put("markdown", "one")), result.getJsonArray("pages"));
+									context.assertEquals(new JsonArray().add(999), result.getJsonArray("missing"));
+									async.complete();
+								}));
+					}));
+				}));
+			}));
+		}));
+		async.awaitSuccess(5000);
+	}
+
+	@Test
+	public void shardedStorage(final TestContext context) {
+		Async async = context.async();
+		final JsonObject shardedConf = new JsonObject()
+				.put(DatabaseConstants.CONFIG_WIKIDB_JDBC_URL, "jdbc:hsqldb:mem:shardeddb;shutdown=true")
+				.put(DatabaseConstants.CONFIG_WIKIDB_JDBC_MAX_POOL_SIZE, 2)
+				.put(DatabaseConstants.CONFIG_WIKIDB_BACKUP_DIRECTORY, backupDirectory.toString())
+				.put(DatabaseConstants.CONFIG_WIKIDB_SHARDS, 3);
+		vertx.undeploy(vertx.deploymentIDs().iterator().next(), context.asyncAssertSuccess(undeployed -> {
+			vertx.deployVerticle(new WikiDatabaseVerticle(), new DeploymentOptions().setConfig(shardedConf), context.asyncAssertSuccess(deployed -> {
+				dbService.createPage("Alpha", "Linked", context.asyncAssertSuccess(alpha -> {
+					dbService.createPage("Beta", "Alone", context.asyncAssertSuccess(beta -> {
+						dbService.createPage("Gamma", "See [Alpha](/wiki/Alpha)", context.asyncAssertSuccess(gamma -> {
+							dbService.fetchAllPages(context.asyncAssertSuccess(names -> {
+								context.assertEquals(new JsonArray().add("Alpha").add("Beta").add("Gamma"), names);
+								dbService.fetchPage("Gamma", context.asyncAssertSuccess(page -> {
+									dbService.fetchPageById(page.getInteger("id"), context.asyncAssertSuccess(byId -> {
+										context.assertEquals("Gamma", byId.getString("name"));
+										dbService.fetchOrphanPages(context.asyncAssertSuccess(orphans -> {
+											context.assertEquals(new JsonArray().add("Beta").add("Gamma"), orphans);
+											dbService.fetchStatistics(context.asyncAssertSuccess(statistics -> {
+												context.assertEquals(3, statistics.getInteger("pages"));
+												context.assertEquals(3, statistics.getJsonArray("shards").size());
+												async.complete();
+											}));
+										}));
+									}));
+								}));
+							}));
+						}));
+					}));
+				}));
+			}));
+		}));
+		async.awaitSuccess(5000);
+	}
+
+	@Test
+	public void deflatedContent(final TestContext context) {
+		Async async = context.async();
+		// no shutdown on close: the rows written with the plain encoding outlive the first deployment
+		final JsonObject plainConf = new JsonObject()
+				.put(DatabaseConstants.CONFIG_WIKIDB_JDBC_URL, "jdbc:hsqldb:mem:deflatedb")
+				.put(DatabaseConstants.CONFIG_WIKIDB_JDBC_MAX_POOL_SIZE, 2)
+				.put(DatabaseConstants.CONFIG_WIKIDB_BACKUP_DIRECTORY, backupDirectory.toString());
+		final JsonObject deflateConf = plainConf.copy().put(DatabaseConstants.CONFIG_WIKIDB_CONTENT_ENCODING, "deflate");
+		vertx.undeploy(vertx.deploymentIDs().iterator().next(), context.asyncAssertSuccess(undeployed -> {
+			vertx.deployVerticle(new WikiDatabaseVerticle(), new DeploymentOptions().setConfig(plainConf), context.asyncAssertSuccess(plain -> {
+				dbService.createPage("Plain", "Some *plain* content", context.asyncAssertSuccess(created -> {
+					vertx.undeploy(plain, context.asyncAssertSuccess(plainUndeployed -> {
+						vertx.deployVerticle(new WikiDatabaseVerticle(), new DeploymentOptions().setConfig(deflateConf), context.asyncAssertSuccess(deflate -> {
+							vertx.setPeriodic(50, timer -> dbService.fetchStatistics(context.asyncAssertSuccess(statistics -> {
+								JsonObject migration = statistics.getJsonObject("contentEncoding");
+								if (migration.getBoolean("running") || migration.getLong("rewrittenRows") < 1L) {
+									return;
+								}
+								vertx.cancelTimer(timer);
+								context.assertEquals("deflate", migration.getString("encoding"));
+								dbService.createPage("Deflated", "Some *deflated* content", context.asyncAssertSuccess(deflated -> {
+									dbService.fetchPage("Deflated", context.asyncAssertSuccess(page -> {
+										context.assertEquals("Some *deflated* content", page.getString("rawContent"));
+										dbService.savePage(page.getInteger("id"), "Saved *deflated* content", context.asyncAssertSuccess(saved -> {
+											dbService.fetchPage("Deflated", context.asyncAssertSuccess(savedPage -> {
+												context.assertEquals("Saved *deflated* content", savedPage.getString("rawContent"));
+												dbService.fetchPage("Plain", context.asyncAssertSuccess(migrated -> {
+													context.assertEquals("Some *plain* content", migrated.getString("rawContent"));
+													context.assertEquals("<p>Some <em>plain</em> content</p>", migrated.getString("html").trim());
+													assertStoredDeflated(context, "Plain", "Some *plain* content");
+													assertStoredDeflated(context, "Deflated", "Saved *deflated* content");
+													async.complete();
+												}));
+											}));
+										}));
+									}));
+								}));
+							})));
+						}));
+					}));
+				}));
+			}));
+		}));
+		async.awaitSuccess(5000);
+	}
+
+	private static void assertStoredDeflated(TestContext context, String name, String markdown) {
+		try (Connection connection = DriverManager.getConnection("jdbc:hsqldb:mem:deflatedb", "SA", "");
+				PreparedStatement statement = connection.prepareStatement("select Content, ContentEncoding from Pages where Name = ?")) {
+			statement.setString(1, name);
+			try (ResultSet row = statement.executeQuery()) {
+				context.assertTrue(row.next());
+				context.assertEquals("deflate", row.getString(2));
+				String stored = row.getString(1);
+				context.assertNotEquals(markdown, stored);
+				try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(stored)))) {
+					context.assertEquals(markdown, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+				}
+			}
+		} catch (SQLException | IOException e) {
+			context.fail(e);
+		}
+	}
+
+	@Test
+	public void workloadScheduling(final TestContext context) {
+		Async async = context.async();
+		dbService.createPage("Scheduled", "Some content", context.asyncAssertSuccess(created -> {
+			dbService.fetchPagesFields(Arrays.asList("id"), context.asyncAssertSuccess(pages -> {
+				dbService.fetchStatistics(context.asyncAssertSuccess(statistics -> {
+					JsonObject scheduling = statistics.getJsonObject("scheduling");
+					context.assertEquals(1L, scheduling.getJsonObject("interactive").getLong("completed"));
+					context.assertEquals(1L, scheduling.getJsonObject("bulk").getLong("completed"));
+					context.assertEquals(0, scheduling.getJsonObject("bulk").getInteger("running"));
+					async.complete();
+				}));
+			}));
+		}));
+		async.awaitSuccess(5000);
+	}
+
+	@Test
+	public void backlinksAndOrphans(final TestContext context) {
+		Async async = context.async();
+		dbService.createPage("Target", "Nothing here", context.asyncAssertSuccess(target -> {
+			dbService.createPage("Source", "See [the target](/wiki/Target)", context.asyncAssertSuccess(source -> {
+				dbService.fetchBacklinks("Target", context.asyncAssertSuccess(backlinks -> {
+					context.assertEquals(new JsonArray().add("Source"), backlinks);
+					dbService.fetchOrphanPages(context.asyncAssertSuccess(orphans -> {
+						context.assertEquals(new JsonArray().add("Source"), orphans);
+						async.complete();
+					}));
+				}));
+			}));
+		}));
+		async.awaitSuccess(5000);
+	}
+
+	@Test
+	public void concurrentSaves(final TestContext context) {
+		Async async = context.async();
+		dbService.createPage("Contended", "zero", context.asyncAssertSuccess(created -> {
+			dbService.fetchPage("Contended", context.asyncAssertSuccess(page -> {
+				int id = page.getInteger("id");
+				Async saves = context.async(2);
+				dbService.savePage(id, "one", context.asyncAssertSuccess(saved -> saves.countDown()));
+				dbService.savePage(id, "two", context.asyncAssertSuccess(saved -> saves.countDown()));
+				saves.handler(done -> dbService.fetchPageHistory(id, context.asyncAssertSuccess(history -> {
+					context.assertEquals(3, history.size());
+					dbService.fetchPage("Contended", context.asyncAssertSuccess(latest -> {
+						context.assertEquals("two", latest.getString("rawContent"));
+						async.complete();
+					}));
+				})));
+			}));
+		}));
+		async.awaitSuccess(5000);
+	}
+
+	@Test
+	public void revisionHistory(final TestContext context) {
+		Async async = context.async();
+		dbService.createPage("History", "one\ntwo", context.asyncAssertSuccess(created -> {
+			dbService.fetchPage("History", context.asyncAssertSuccess(page -> {
+				int id = page.getInteger("id");
+				dbService.savePage(id, "one\n2", context.asyncAssertSuccess(saved -> {
+					dbService.savePage(id, "one\n2\nthree", context.asyncAssertSuccess(savedAgain -> {
+						dbService.fetchPageHistory(id, context.asyncAssertSuccess(history -> {
+							context.assertEquals(3, history.size());
+							context.assertEquals(3, history.getJsonObject(0).getInteger("revision"));
+							context.assertTrue(history.getJsonObject(2).getBoolean("snapshot"));
+							dbService.fetchPageRevision(id, 2, context.asyncAssertSuccess(revision -> {
+								context.assertEquals("one\n2", revision.getString("markdown"));
+								dbService.fetchPageDiff(id, 1, 3, context.asyncAssertSuccess(diff -> {
+									context.assertEquals(new JsonArray().add(" one").add("-two").add("+2").add("+three"),
+											diff.getJsonArray("lines"));
+									async.complete();
+								}));
+							}));
+						}));
+					}));
+				}));
+			}));
+		}));
+		async.awaitSuccess(5000);
+	}
+
+	@Test
+	public void deltaUpdates(final TestContext context) {
+		Async async = context.async();
+		dbService.createPage("Patched", "one\ntwo\nthree", context.asyncAssertSuccess(created -> {
+			dbService.fetchPage("Patched", context.asyncAssertSuccess(page -> {
+				int id = page.getInteger("id");
+				dbService.fetchPageFields(id, Arrays.asList("updated"), context.asyncAssertSuccess(fields -> {
+					long base = fields.getLong("updated");
+					JsonArray delta = new JsonArray().add(1).add(-1).add("deux").add(1);
+					dbService.patchPage(id, base, delta, context.asyncAssertSuccess(patched -> {
+						context.assertEquals("patched", patched.getString("status"));
+						dbService.patchPage(id, base - 1, delta, context.asyncAssertSuccess(conflict -> {
+							context.assertEquals("conflict", conflict.getString("status"));
+							dbService.patchPage(id, patched.getLong("updated"), new JsonArray().add(1), context.asyncAssertSuccess(invalid -> {
+								context.assertEquals("invalid", invalid.getString("status"));
+								dbService.fetchPageById(id, context.asyncAssertSuccess(saved -> {
+									context.assertEquals("one\ndeux\nthree", saved.getString("content"));
+									async.complete();
+								}));
+							}));
+						}));
+					}));
+				}));
+			}));
+		}));
+		async.awaitSuccess(5000);
+	}
+
+	@Test
+	public void pageEventsAreSequenced(final TestContext context) {
+		Async async = context.async();
+		vertx.eventBus().<JsonObject>consumer(DatabaseConstants.WIKIDB_PAGE_EVENTS_ADDRESS, message -> {
+			JsonObject event = message.body();
+			if ("deleted".equals(event.getString("type"))) {
+				context.assertEquals(2L, event.getLong("seq"));
+				context.assertEquals("Feed", event.getString("name"));
+				async.complete();
+			}
+		});
+		dbService.createPage("Feed", "Some content", context.asyncAssertSuccess(created -> {
+			dbService.fetchPage("Feed", context.asyncAssertSuccess(page -> {
+				dbService.deletePage(page.getInteger("id"), context.asyncAssertSuccess());
+			}));
+		}));
+		async.awaitSuccess(5000);
+	}
+
+	@Test
+	public void staticSiteExport(final TestContext context) {
+		Async async = context.async();
+		dbService.createPage("Exported", "Some *content*", context.asyncAssertSuccess(created -> {
+			dbService.startExport(new JsonObject(), context.asyncAssertSuccess(job -> {
+				vertx.setPeriodic(50, timer -> dbService.fetchExportStatus(job.getString("id"), context.asyncAssertSuccess(status -> {
+					if (!"running".equals(status.getString("status"))) {
+						vertx.cancelTimer(timer);
+						context.assertEquals("succeeded", status.getString("status"));
+						context.assertEquals(1L, status.getLong("pages"));
+						try {
+							Path page = backupDirectory.resolve("site").resolve("wiki").resolve("Exported.html");
+							context.assertTrue(new String(Files.readAllBytes(page), StandardCharsets.UTF_8).contains("<em>content</em>"));
+							context.assertTrue(Files.exists(page.resolveSibling("Exported.html.gz")));
+							context.assertTrue(new String(Files.readAllBytes(backupDirectory.resolve("site").resolve("index.html")),
+									StandardCharsets.UTF_8).contains("/wiki/Exported"));
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+						async.complete();
+					}
+				})));
+			}));
+		}));
+		async.awaitSuccess(5000);
+	}
+
+	@Test
+	public void backupToHttpTarget(final TestContext context) {
+		Async async = context.async();
+		dbService.createPage("Backup", "Some content", context.asyncAssertSuccess(created -> {
+			dbService.startBackup(new JsonObject().put("target", "http"), context.asyncAssertSuccess(job -> {
+				vertx.setPeriodic(50, timer -> dbService.fetchBackupStatus(job.getString("id"), context.asyncAssertSuccess(status -> {
+					if (!"running".equals(status.getString("status"))) {
+						vertx.cancelTimer(timer);
+						context.assertEquals("succeeded", status.getString("status"));
+						context.assertEquals(1L, status.getLong("pages"));
+						JsonObject page = new JsonObject(gunzip(backupTargetReceived).trim());
+						context.assertEquals("Backup", page.getString("name"));
+						context.assertEquals("Some content", page.getString("content"));
+						async.complete();
+					}
+				})));
+			}));
+		}));
+		async.awaitSuccess(5000);
+	}
+	
+	@Test
+	public void importDump(final TestContext context) throws IOException {
+		Async async = context.async();
+		try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(backupDirectory.resolve("dump.ndjson.gz")))) {
+			for (int i = 0; i < 25; i++) {
+				out.write(new JsonObject().put("name", "Imported " + i).put("content", "# Page " + i).encode().getBytes(StandardCharsets.UTF_8));
+				out.write('\n');
+			}
+			out.write("not json\n".getBytes(StandardCharsets.UTF_8));
+		}
+		JsonObject options = new JsonObject().put("file", "dump.ndjson.gz").put("batchSize", 10).put("parallelism", 2);
+		dbService.startImport(options, context.asyncAssertSuccess(job -> {
+			vertx.setPeriodic(50, timer -> dbService.fetchImportStatus(job.getString("id"), context.asyncAssertSuccess(status -> {
+				if (!"running".equals(status.getString("status"))) {
+					vertx.cancelTimer(timer);
+					context.assertEquals("succeeded", status.getString("status"));
+					context.assertEquals(25L, status.getLong("records"));
+					context.assertEquals(1L, status.getLong("rejected"));
+					dbService.fetchPage("Imported 7", context.asyncAssertSuccess(page -> {
+						context.assertEquals("# Page 7", page.getString("rawContent"));
+						dbService.fetchPageNames("Imported", 100, context.asyncAssertSuccess(names -> {
+							context.assertEquals(25, names.size());
+							async.complete();
+						}));
+					}));
+				}
+			})));
+		}));
+		async.awaitSuccess(5000);
+	}
+	
+	@Test
+	public void importRejectsTruncatedDump(final TestContext context) throws IOException {
+		Async async = context.async();
+		ByteArrayOutputStream dump = new ByteArrayOutputStream();
+		try (OutputStream out = new GZIPOutputStream(dump)) {
+			out.write(new JsonObject().put("name", "Truncated").put("content", "# Truncated").encode().getBytes(StandardCharsets.UTF_8));
+			out.write('\n');
+		}
+		byte[] bytes = dump.toByteArray();
+		// the size of the trailer is missing
+		Files.write(backupDirectory.resolve("truncated.ndjson.gz"), Arrays.copyOf(bytes, bytes.length - 4));
+		dbService.startImport(new JsonObject().put("file", "truncated.ndjson.gz"), context.asyncAssertSuccess(job -> {
+			vertx.setPeriodic(50, timer -> dbService.fetchImportStatus(job.getString("id"), context.asyncAssertSuccess(status -> {
+				if (!"running".equals(status.getString("status"))) {
+					vertx.cancelTimer(timer);
+					context.assertEquals("failed", status.getString("status"));
+					async.complete();
+				}
+			})));
+		}));
+		async.awaitSuccess(5000);
+	}
+	
+	private static String gunzip(Buffer buffer) {
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(buffer.getBytes()))) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
 	@After
 	public void finish(TestContext context) {
 		vertx.close(context.asyncAssertSuccess());
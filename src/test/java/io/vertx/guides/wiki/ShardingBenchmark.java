@@ -0,0 +1,149 @@
+package io.vertx.guides.wiki;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.guides.wiki.database.DatabaseConstants;
+import io.vertx.guides.wiki.database.WikiDatabaseService;
+import io.vertx.guides.wiki.database.WikiDatabaseVerticle;
+
+/**
+ * Measures file databases of 1 to {@code benchmark.sharding.max_shards} shards: concurrent page
+ * creations, routed to one shard each, then concurrent name lookups and sequential page listings,
+ * which are scattered to every shard. Every commit is synced and the log is small, so that file
+ * syncs and checkpoints weigh on the writes as they do on a busy wiki.
+ */
+@RunWith(VertxUnitRunner.class)
+public class ShardingBenchmark {
+
+	private static final int MAX_SHARDS = Benchmarks.size("sharding.max_shards", 4);
+	private static final int PAGES = Benchmarks.size("sharding.pages", 5000);
+	private static final int LOOKUPS = Benchmarks.size("sharding.lookups", 20_000);
+	private static final int LISTINGS = Benchmarks.size("sharding.listings", 100);
+	private static final int CONCURRENCY = Benchmarks.size("sharding.concurrency", 64);
+	private static final int WRITE_DELAY = Benchmarks.size("sharding.write_delay", 0);
+	private static final int LOG_SIZE = Benchmarks.size("sharding.log_size", 1);
+
+	@Test
+	public void scaling(TestContext context) throws IOException {
+		for (int shards = 1; shards <= MAX_SHARDS; shards *= 2) {
+			measure(context, shards);
+		}
+	}
+
+	private void measure(TestContext context, int shards) throws IOException {
+		final Path directory = Files.createTempDirectory("wiki-shards");
+		final JsonObject config = new JsonObject()
+				.put(DatabaseConstants.CONFIG_WIKIDB_JDBC_URL, "jdbc:hsqldb:file:" + directory.resolve("wiki") + ";shutdown=true")
+				.put(DatabaseConstants.CONFIG_WIKIDB_JDBC_MAX_POOL_SIZE, 8)
+				.put(DatabaseConstants.CONFIG_WIKIDB_SHARDS, shards)
+				.put(DatabaseConstants.CONFIG_WIKIDB_STORAGE_WRITE_DELAY, WRITE_DELAY)
+				.put(DatabaseConstants.CONFIG_WIKIDB_STORAGE_LOG_SIZE, LOG_SIZE)
+				.put(DatabaseConstants.CONFIG_WIKIDB_SCHEDULING_QUEUE_LIMIT, CONCURRENCY)
+				.put(DatabaseConstants.CONFIG_WIKIDB_BACKUP_DIRECTORY, directory.resolve("backups").toString());
+		final JsonObject results = new JsonObject().put("shards", shards).put("pages", PAGES).put("concurrency", CONCURRENCY);
+		final Vertx vertx = Vertx.vertx();
+		final Async async = context.async();
+		final Promise<String> deployed = Promise.promise();
+		vertx.deployVerticle(new WikiDatabaseVerticle(), new DeploymentOptions().setConfig(config), deployed);
+		deployed.future().map(id -> WikiDatabaseService.createProxy(vertx, DatabaseConstants.CONFIG_WIKIDB_QUEUE)).compose(dbService ->
+			load(vertx, PAGES, CONCURRENCY, page -> {
+				final Promise<Void> created = Promise.promise();
+				dbService.createPage("Page " + page, "Content of *page* " + page, created);
+				return created.future();
+			}).compose(writes -> {
+				report(results, "write", writes);
+				return load(vertx, LOOKUPS, CONCURRENCY, lookup -> {
+					final Promise<JsonObject> page = Promise.promise();
+					dbService.fetchPage("Page " + (lookup * 7919 % PAGES), page);
+					return page.future();
+				});
+			}).compose(lookups -> {
+				report(results, "lookup", lookups);
+				return load(vertx, LISTINGS, 1, listing -> {
+					final Promise<JsonArray> pages = Promise.promise();
+					dbService.fetchAllPages(pages);
+					return pages.future().map(list -> {
+						if (list.size() != PAGES) {
+							throw new IllegalStateException(list.size() + " pages listed instead of " + PAGES);
+						}
+						return list;
+					});
+				});
+			})
+		).setHandler(context.asyncAssertSuccess(listings -> {
+			report(results, "listing", listings);
+			Benchmarks.report("sharding", results);
+			vertx.close(context.asyncAssertSuccess(v -> async.complete()));
+		}));
+		async.awaitSuccess(600_000);
+		delete(directory);
+	}
+
+	/** Runs the calls from a fixed number of clients: the latency of each, then the whole duration. */
+	private static Future<long[]> load(Vertx vertx, int calls, int concurrency, IntFunction<Future<?>> call) {
+		final Promise<long[]> done = Promise.promise();
+		final long[] latencies = new long[calls + 1];
+		final int[] issued = { 0 };
+		final int[] completed = { 0 };
+		final Runnable[] next = { null };
+		vertx.runOnContext(v -> {
+			final long start = System.nanoTime();
+			next[0] = () -> {
+				if (issued[0] == calls) {
+					return;
+				}
+				final int index = issued[0]++;
+				final long sentAt = System.nanoTime();
+				call.apply(index).setHandler(ar -> {
+					if (ar.failed()) {
+						done.tryFail(ar.cause());
+						return;
+					}
+					latencies[index] = System.nanoTime() - sentAt;
+					if (++completed[0] == calls) {
+						latencies[calls] = System.nanoTime() - start;
+						done.complete(latencies);
+					} else {
+						next[0].run();
+					}
+				});
+			};
+			for (int client = 0; client < concurrency; client++) {
+				next[0].run();
+			}
+		});
+		return done.future();
+	}
+
+	private static void report(JsonObject results, String operation, long[] latencies) {
+		final int calls = latencies.length - 1;
+		final long[] durations = Arrays.copyOf(latencies, calls);
+		results.put(operation + "sPerSecond", Benchmarks.perSecond(calls, latencies[calls]))
+				.put(operation + "P50Ms", Benchmarks.percentileMillis(durations, 0.5))
+				.put(operation + "P99Ms", Benchmarks.percentileMillis(durations, 0.99));
+	}
+
+	private static void delete(Path directory) throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+}
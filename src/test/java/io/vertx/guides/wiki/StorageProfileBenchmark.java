@@ -0,0 +1,141 @@
+package io.vertx.guides.wiki;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.guides.wiki.database.DatabaseConstants;
+import io.vertx.guides.wiki.database.WikiDatabaseService;
+import io.vertx.guides.wiki.database.WikiDatabaseVerticle;
+
+/**
+ * Fills a file database with each storage profile, then restarts it. Reports the write latency of
+ * the filling, the startup time and heap retained by the database after the restart, and the size
+ * of its files. The dataset is {@code benchmark.storage.pages} pages of
+ * {@code benchmark.storage.page_size} characters.
+ */
+@RunWith(VertxUnitRunner.class)
+public class StorageProfileBenchmark {
+
+	private static final int PAGES = Benchmarks.size("storage.pages", 5000);
+	private static final int PAGE_SIZE = Benchmarks.size("storage.page_size", 8 * 1024);
+
+	@Test
+	public void memoryProfile(TestContext context) throws IOException {
+		run(context, "memory");
+	}
+
+	@Test
+	public void cachedProfile(TestContext context) throws IOException {
+		run(context, "cached");
+	}
+
+	@Test
+	public void cachedWithLobStoreProfile(TestContext context) throws IOException {
+		run(context, "cached-with-lob-store");
+	}
+
+	private void run(TestContext context, String profile) throws IOException {
+		final Path directory = Files.createTempDirectory("wiki-storage");
+		final JsonObject config = new JsonObject()
+				.put(DatabaseConstants.CONFIG_WIKIDB_JDBC_URL, "jdbc:hsqldb:file:" + directory.resolve("wiki") + ";shutdown=true")
+				.put(DatabaseConstants.CONFIG_WIKIDB_JDBC_MAX_POOL_SIZE, 4)
+				.put(DatabaseConstants.CONFIG_WIKIDB_STORAGE_PROFILE, profile);
+		final String content = page(PAGE_SIZE);
+		final long[] latencies = new long[PAGES];
+		final JsonObject results = new JsonObject().put("profile", profile).put("pages", PAGES).put("pageSize", PAGE_SIZE);
+
+		final Vertx filling = Vertx.vertx();
+		final Async filled = context.async();
+		deploy(filling, config).compose(dbService -> {
+			final long start = System.nanoTime();
+			return createPages(dbService, content, latencies, 0).map(v -> System.nanoTime() - start);
+		}).setHandler(context.asyncAssertSuccess(elapsed -> {
+			results.put("writesPerSecond", Benchmarks.perSecond(PAGES, elapsed))
+					.put("writeP50Ms", Benchmarks.percentileMillis(latencies, 0.5))
+					.put("writeP99Ms", Benchmarks.percentileMillis(latencies, 0.99));
+			// closing the last connection shuts the database down, with a checkpoint
+			filling.close(context.asyncAssertSuccess(v -> filled.complete()));
+		}));
+		filled.awaitSuccess(600_000);
+
+		final long heapBefore = usedHeap();
+		final Vertx restarted = Vertx.vertx();
+		final Async started = context.async();
+		final long start = System.nanoTime();
+		deploy(restarted, config).compose(dbService -> {
+			final Promise<JsonObject> page = Promise.promise();
+			dbService.fetchPage("Page " + (PAGES - 1), page);
+			return page.future();
+		}).setHandler(context.asyncAssertSuccess(page -> {
+			context.assertTrue(page.getBoolean("found"));
+			results.put("startupMs", Benchmarks.millis(System.nanoTime() - start))
+					.put("heapMb", Math.round((usedHeap() - heapBefore) / 10_000.0) / 100.0)
+					.put("filesMb", Math.round(size(directory) / 10_000.0) / 100.0);
+			restarted.close(context.asyncAssertSuccess(v -> started.complete()));
+		}));
+		started.awaitSuccess(600_000);
+		Benchmarks.report("storage-profile", results);
+		delete(directory);
+	}
+
+	private static Future<WikiDatabaseService> deploy(Vertx vertx, JsonObject config) {
+		final Promise<String> deployed = Promise.promise();
+		vertx.deployVerticle(new WikiDatabaseVerticle(), new DeploymentOptions().setConfig(config), deployed);
+		return deployed.future().map(id -> WikiDatabaseService.createProxy(vertx, DatabaseConstants.CONFIG_WIKIDB_QUEUE));
+	}
+
+	private static Future<Void> createPages(WikiDatabaseService dbService, String content, long[] latencies, int page) {
+		if (page == PAGES) {
+			return Future.succeededFuture();
+		}
+		final Promise<Void> created = Promise.promise();
+		final long sentAt = System.nanoTime();
+		dbService.createPage("Page " + page, content, created);
+		return created.future().compose(v -> {
+			latencies[page] = System.nanoTime() - sentAt;
+			return createPages(dbService, content, latencies, page + 1);
+		});
+	}
+
+	private static String page(int size) {
+		final StringBuilder page = new StringBuilder(size + 64);
+		for (int line = 0; page.length() < size; line++) {
+			page.append("Line ").append(line).append(" of a *page*, with a [link](/wiki/Page").append(line % 100).append(").\n");
+		}
+		return page.toString();
+	}
+
+	private static long usedHeap() {
+		System.gc();
+		return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+	}
+
+	private static long size(Path directory) {
+		try (Stream<Path> files = Files.walk(directory)) {
+			return files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void delete(Path directory) throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package io.vertx.guides.wiki.http;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.guides.wiki.Benchmarks;
+
+/**
+ * Renders a mix of small and large pages on one event loop, at a fixed arrival rate, once with
+ * every page rendered inline and once through the {@link MarkdownRenderingExecutor}. Latencies run
+ * from the scheduled arrival of each rendering, so the time a blocked event loop delays arrivals
+ * is counted; the tail latency of the small pages is the figure to compare.
+ */
+@RunWith(VertxUnitRunner.class)
+public class MarkdownRenderingBenchmark {
+
+	private static final int RENDERINGS = Benchmarks.size("markdown.renderings", 3000);
+	private static final int LARGE_EVERY = Benchmarks.size("markdown.large_every", 50);
+	private static final int SMALL_SIZE = Benchmarks.size("markdown.small_size", 2 * 1024);
+	private static final int LARGE_SIZE = Benchmarks.size("markdown.large_size", 512 * 1024);
+	private static final int INLINE_THRESHOLD = 16 * 1024;
+	private static final int POOL_SIZE = 4;
+	private static final long INTERVAL_MILLIS = 1;
+
+	private static final String SMALL_PAGE = page(SMALL_SIZE);
+	private static final String LARGE_PAGE = page(LARGE_SIZE);
+
+	private Vertx vertx;
+
+	@Before
+	public void prepare() {
+		vertx = Vertx.vertx();
+	}
+
+	@Test
+	public void inlineRendering(TestContext context) {
+		run(context, "inline", Integer.MAX_VALUE);
+	}
+
+	@Test
+	public void boundedExecutor(TestContext context) {
+		run(context, "executor", INLINE_THRESHOLD);
+	}
+
+	private void run(TestContext context, String mode, int inlineThreshold) {
+		final MarkdownRenderingExecutor renderer = new MarkdownRenderingExecutor(vertx, POOL_SIZE, inlineThreshold, RENDERINGS, 60_000);
+		final long intervalNanos = TimeUnit.MILLISECONDS.toNanos(INTERVAL_MILLIS);
+		final long[] latencies = new long[RENDERINGS];
+		final Async async = context.async();
+		vertx.runOnContext(v -> {
+			final long start = System.nanoTime();
+			final int[] issued = { 0 };
+			final int[] completed = { 0 };
+			vertx.setPeriodic(INTERVAL_MILLIS, timer -> {
+				// catches up with the arrivals a blocked event loop delayed
+				while (issued[0] < RENDERINGS && start + issued[0] * intervalNanos <= System.nanoTime()) {
+					final int rendering = issued[0]++;
+					final long arrival = start + rendering * intervalNanos;
+					renderer.render(isLarge(rendering) ? LARGE_PAGE : SMALL_PAGE, context.asyncAssertSuccess(html -> {
+						latencies[rendering] = System.nanoTime() - arrival;
+						if (++completed[0] == RENDERINGS) {
+							report(mode, latencies, renderer.metrics());
+							renderer.close();
+							async.complete();
+						}
+					}));
+				}
+				if (issued[0] == RENDERINGS) {
+					vertx.cancelTimer(timer);
+				}
+			});
+		});
+		async.awaitSuccess(300_000);
+	}
+
+	private static void report(String mode, long[] latencies, JsonObject metrics) {
+		final long[] small = new long[RENDERINGS - RENDERINGS / LARGE_EVERY];
+		final long[] large = new long[RENDERINGS / LARGE_EVERY];
+		int smallCount = 0;
+		int largeCount = 0;
+		for (int rendering = 0; rendering < RENDERINGS; rendering++) {
+			if (isLarge(rendering)) {
+				large[largeCount++] = latencies[rendering];
+			} else {
+				small[smallCount++] = latencies[rendering];
+			}
+		}
+		Benchmarks.report("markdown-rendering", new JsonObject().put("mode", mode).put("renderings", RENDERINGS)
+				.put("largeEvery", LARGE_EVERY).put("smallSize", SMALL_SIZE).put("largeSize", LARGE_SIZE)
+				.put("smallP50Ms", Benchmarks.percentileMillis(small, 0.5)).put("smallP99Ms", Benchmarks.percentileMillis(small, 0.99))
+				.put("smallMaxMs", Benchmarks.percentileMillis(small, 1))
+				.put("largeP50Ms", Benchmarks.percentileMillis(large, 0.5)).put("largeP99Ms", Benchmarks.percentileMillis(large, 0.99))
+				.put("allP99Ms", Benchmarks.percentileMillis(latencies, 0.99))
+				.put("executor", metrics));
+	}
+
+	private static boolean isLarge(int rendering) {
+		return rendering % LARGE_EVERY == LARGE_EVERY - 1;
+	}
+
+	private static String page(int size) {
+		final StringBuilder page = new StringBuilder(size + 128);
+		for (int section = 0; page.length() < size; section++) {
+			page.append("## Section ").append(section).append("\n\nSome *emphasis*, some **strong** text, a [link](http://example.com/")
+					.append(section).append(") and `code`.\n\n* an item\n* another item\n\n");
+		}
+		return page.toString();
+	}
+
+	@After
+	public void finish(TestContext context) {
+		vertx.close(context.asyncAssertSuccess());
+	}
+}
@@ -0,0 +1,99 @@
+package io.vertx.guides.wiki.http;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+@RunWith(VertxUnitRunner.class)
+public class MarkdownRenderingExecutorTest {
+
+	private static final int INLINE_THRESHOLD = 100;
+	private static final String SMALL_PAGE = "Some *content*";
+	private static final String LARGE_PAGE = String.join("", Collections.nCopies(INLINE_THRESHOLD, "x"));
+
+	private Vertx vertx;
+	private MarkdownRenderingExecutor renderer;
+
+	@Before
+	public void prepare() {
+		vertx = Vertx.vertx();
+		renderer = new MarkdownRenderingExecutor(vertx, 1, INLINE_THRESHOLD, 1, 200);
+	}
+
+	@Test
+	public void inlineAndOffloadedRenderings(TestContext context) {
+		Async async = context.async();
+		vertx.runOnContext(v -> {
+			final Thread eventLoop = Thread.currentThread();
+			final boolean[] rendered = { false };
+			renderer.render(SMALL_PAGE, context.asyncAssertSuccess(html -> {
+				context.assertEquals("<p>Some <em>content</em></p>", html.trim());
+				rendered[0] = true;
+			}));
+			context.assertTrue(rendered[0], "small pages are rendered before render returns");
+			renderer.render(null, context.asyncAssertSuccess(html -> context.assertEquals("", html)));
+			renderer.render(LARGE_PAGE, context.asyncAssertSuccess(html -> {
+				context.assertEquals("<p>" + LARGE_PAGE + "</p>", html.trim());
+				context.assertEquals(eventLoop, Thread.currentThread());
+				JsonObject metrics = renderer.metrics();
+				context.assertEquals(2L, metrics.getLong("inline"));
+				context.assertEquals(1L, metrics.getLong("offloaded"));
+				context.assertEquals(0, metrics.getInteger("pending"));
+				async.complete();
+			}));
+			context.assertEquals(1, renderer.metrics().getInteger("pending"), "large pages are rendered by the pool");
+		});
+		async.awaitSuccess(5000);
+	}
+
+	@Test
+	public void queueLimitAndTimeout(TestContext context) {
+		Async async = context.async();
+		final CountDownLatch poolBlocked = new CountDownLatch(1);
+		// the rendering pool is a shared one: a task holding its only thread keeps renderings queued
+		final WorkerExecutor pool = vertx.createSharedWorkerExecutor(MarkdownRenderingExecutor.POOL_NAME, 1);
+		pool.executeBlocking(promise -> {
+			try {
+				poolBlocked.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			promise.complete();
+		}, false, context.asyncAssertSuccess());
+		vertx.runOnContext(v -> {
+			renderer.render(LARGE_PAGE, queued -> {
+				context.assertTrue(queued.failed());
+				context.assertTrue(queued.cause() instanceof TimeoutException);
+				context.assertEquals(1L, renderer.metrics().getLong("timedOut"));
+				poolBlocked.countDown();
+				async.complete();
+			});
+			renderer.render(LARGE_PAGE, rejected -> {
+				context.assertTrue(rejected.failed());
+				context.assertTrue(rejected.cause() instanceof RejectedExecutionException);
+				context.assertEquals(1L, renderer.metrics().getLong("rejected"));
+			});
+		});
+		async.awaitSuccess(5000);
+	}
+
+	@After
+	public void finish(TestContext context) {
+		renderer.close();
+		vertx.close(context.asyncAssertSuccess());
+	}
+}